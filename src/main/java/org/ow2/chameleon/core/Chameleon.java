@@ -27,8 +27,12 @@ import org.osgi.framework.launch.Framework;
 import org.ow2.chameleon.core.activators.*;
 import org.ow2.chameleon.core.hook.HookManager;
 import org.ow2.chameleon.core.services.Stability;
+import org.ow2.chameleon.core.utils.DeploymentSnapshot;
 import org.ow2.chameleon.core.utils.FrameworkManager;
+import org.ow2.chameleon.core.utils.JarMetadataCache;
 import org.ow2.chameleon.core.utils.LogbackUtil;
+import org.ow2.chameleon.core.utils.StartPlanner;
+import org.ow2.chameleon.core.utils.StartupProfiler;
 import org.ow2.chameleon.core.utils.jul.JulLogManager;
 import org.slf4j.Logger;
 
@@ -72,6 +76,21 @@ public class Chameleon {
      */
     private final HookManager hooks;
 
+    /**
+     * The jar metadata cache, {@literal null} if disabled.
+     */
+    private final JarMetadataCache metadataCache;
+
+    /**
+     * The deployment snapshot, {@literal null} if the warm restart is disabled.
+     */
+    private final DeploymentSnapshot deploymentSnapshot;
+
+    /**
+     * The startup profiler, {@literal null} if disabled.
+     */
+    private final StartupProfiler profiler;
+
     /**
      * Creates a chameleon instance.
      *
@@ -86,23 +105,38 @@ public class Chameleon {
             System.setProperty("java.util.logging.manager", JulLogManager.class.getName());
         }
 
+        // The timeline starts now, it is dropped once the configuration is read if the profiler is disabled.
+        StartupProfiler timeline = new StartupProfiler();
+        StartupProfiler.Span span = timeline.span("hooks", StartupProfiler.PHASE);
         hooks = new HookManager();
         hooks.load();
         hooks.fireInitializing();
+        span.end();
 
 
+        span = timeline.span("configuration", StartupProfiler.PHASE);
         ChameleonConfiguration configuration = new ChameleonConfiguration(basedir);
         configuration.setInteractiveModeEnabled(interactive);
         configuration.initialize(userProperties);
+        span.end();
+        span = timeline.span("framework configuration", StartupProfiler.PHASE);
         configuration.initFrameworkConfiguration();
+        span.end();
 
 
+        span = timeline.span("logging", StartupProfiler.PHASE);
         logger = initializeLoggingSystem(configuration);
+        span.end();
+        profiler = enableProfiler(timeline, configuration);
 
         initializeActivatorList(configuration);
+        metadataCache = configuration.getJarMetadataCache();
+        deploymentSnapshot = configuration.getDeploymentSnapshot();
 
-        manager = new FrameworkManager(this, configuration);
+        span = StartupProfiler.begin(profiler, "framework creation", StartupProfiler.PHASE);
+        manager = new FrameworkManager(this, configuration, profiler);
         manager.addActivators(activators);
+        span.end();
     }
 
     /**
@@ -117,21 +151,36 @@ public class Chameleon {
             System.setProperty("java.util.logging.manager", JulLogManager.class.getName());
         }
 
+        // The timeline starts now, it is dropped once the configuration is read if the profiler is disabled.
+        StartupProfiler timeline = new StartupProfiler();
+        StartupProfiler.Span span = timeline.span("hooks", StartupProfiler.PHASE);
         hooks = new HookManager();
         hooks.load();
         hooks.fireInitializing();
+        span.end();
 
 
+        span = timeline.span("configuration", StartupProfiler.PHASE);
         configuration.setInteractiveModeEnabled(false);
         configuration.initialize(null);
+        span.end();
+        span = timeline.span("framework configuration", StartupProfiler.PHASE);
         configuration.initFrameworkConfiguration();
+        span.end();
 
+        span = timeline.span("logging", StartupProfiler.PHASE);
         logger = initializeLoggingSystem(configuration);
+        span.end();
+        profiler = enableProfiler(timeline, configuration);
 
         initializeActivatorList(configuration);
+        metadataCache = configuration.getJarMetadataCache();
+        deploymentSnapshot = configuration.getDeploymentSnapshot();
 
-        manager = new FrameworkManager(this, configuration);
+        span = StartupProfiler.begin(profiler, "framework creation", StartupProfiler.PHASE);
+        manager = new FrameworkManager(this, configuration, profiler);
         manager.addActivators(activators);
+        span.end();
     }
 
     /**
@@ -194,6 +243,24 @@ public class Chameleon {
         return log;
     }
 
+    /**
+     * Keeps the startup profiler if enabled in the configuration, drops it otherwise.
+     *
+     * @param timeline      the profiler recording since the beginning of the construction
+     * @param configuration chameleon's configuration
+     * @return the profiler, {@literal null} if disabled
+     */
+    private static StartupProfiler enableProfiler(StartupProfiler timeline, ChameleonConfiguration configuration) {
+        if (!configuration.getBoolean(Constants.CHAMELEON_STARTUP_PROFILER_PROPERTY, false)) {
+            return null;
+        }
+        String path = configuration.get(Constants.CHAMELEON_STARTUP_PROFILER_TRACE_PROPERTY,
+                StartupProfiler.DEFAULT_TRACE_FILE);
+        File trace = new File(path);
+        timeline.setTraceFile(trace.isAbsolute() ? trace : configuration.getRelativeFile(path));
+        return timeline;
+    }
+
     private void initializeActivatorList(ChameleonConfiguration configuration) {
         File core = configuration.getDirectory(Constants.CHAMELEON_CORE_PROPERTY, true);
         if (core == null) {
@@ -214,35 +281,54 @@ public class Chameleon {
         }
 
         activators.add(new LogActivator(logger));
-        activators.add(new CoreActivator(core, configuration.isInteractiveModeEnabled()));
+        int installThreads = configuration.getInt(Constants.CHAMELEON_CORE_INSTALL_THREADS_PROPERTY, 1);
+        StartPlanner planner = new StartPlanner(
+                StartPlanner.parseStartLevels(configuration.get(Constants.CHAMELEON_START_LEVELS_PROPERTY, null)),
+                configuration.getInt(Constants.CHAMELEON_START_THREADS_PROPERTY, installThreads));
+        activators.add(new CoreActivator(core, configuration.isInteractiveModeEnabled(), installThreads, planner,
+                configuration.getJarMetadataCache(), configuration.getDeploymentSnapshot(), profiler));
 
         // The main watcher.
-        DirectoryMonitor monitor = new DirectoryMonitor();
+        DirectoryMonitor monitor = new DirectoryMonitor(
+                configuration.getInt(Constants.CHAMELEON_MONITORING_QUIET_PERIOD_PROPERTY, 0),
+                configuration.getInt(Constants.CHAMELEON_SCAN_THREADS_PROPERTY,
+                        Runtime.getRuntime().availableProcessors()),
+                configuration.getBoolean(Constants.CHAMELEON_MONITORING_DIGEST_PROPERTY, false), profiler);
         activators.add(monitor);
 
         boolean monitoringRuntime = configuration.getBoolean(Constants.CHAMELEON_RUNTIME_MONITORING_PROPERTY, false);
         boolean monitoringApplication = configuration.getBoolean(Constants.CHAMELEON_APPLICATION_MONITORING_PROPERTY, true);
         int monitoringPeriod = configuration.getInt(Constants.CHAMELEON_MONITORING_PERIOD_PROPERTY, 2000);
         boolean autoRefresh = configuration.getBoolean(Constants.CHAMELEON_AUTO_REFRESH, true);
+        String monitoringMode = configuration.get(Constants.CHAMELEON_MONITORING_MODE_PROPERTY, "polling");
+        boolean nativeRuntime = Constants.NATIVE_MONITORING_MODE.equalsIgnoreCase(
+                configuration.get(Constants.CHAMELEON_RUNTIME_MONITORING_MODE_PROPERTY, monitoringMode));
+        boolean nativeApplication = Constants.NATIVE_MONITORING_MODE.equalsIgnoreCase(
+                configuration.get(Constants.CHAMELEON_APPLICATION_MONITORING_MODE_PROPERTY, monitoringMode));
 
         if (monitoringRuntime) {
-            monitor.add(runtime, monitoringPeriod);
+            monitor.add(runtime, monitoringPeriod, nativeRuntime);
         } else {
             monitor.add(runtime, false);
         }
 
         if (monitoringApplication) {
-            monitor.add(application, monitoringPeriod);
+            monitor.add(application, monitoringPeriod, nativeApplication);
         } else {
             monitor.add(application, false);
         }
 
         // The deployers
-        activators.add(new BundleDeployer(false, autoRefresh));
-        activators.add(new ConfigDeployer());
+        activators.add(new BundleDeployer(false, autoRefresh,
+                configuration.getBoolean(Constants.CHAMELEON_DEPLOYMENT_BATCH_PROPERTY, true), planner,
+                configuration.getJarMetadataCache(), configuration.getDeploymentSnapshot(), profiler));
+        activators.add(new ConfigDeployer(configuration.getInt(
+                Constants.CHAMELEON_CONFIGURATION_UPDATE_WINDOW_PROPERTY, (int) ConfigDeployer.DEFAULT_UPDATE_WINDOW),
+                configuration.getDeploymentSnapshot()));
 
         // Stability checker
-        activators.add(new StabilityComputation());
+        activators.add(new StabilityComputation(
+                configuration.getInt(Constants.CHAMELEON_STABILITY_QUIET_PERIOD_PROPERTY, 0)));
     }
 
     /**
@@ -254,8 +340,16 @@ public class Chameleon {
      *                                            correctly.
      */
     public Chameleon start() throws BundleException {
+        StartupProfiler.Span span = StartupProfiler.begin(profiler, "hooks configured", StartupProfiler.PHASE);
         hooks.fireConfigured(manager.configuration());
+        span.end();
         manager.start();
+        if (profiler != null) {
+            // Emits the timeline once stable.
+            profiler.attach(context());
+        }
+        // The framework storage has been cleaned (if configured), the initial deployment is done.
+        saveCaches();
         return this;
     }
 
@@ -290,12 +384,25 @@ public class Chameleon {
      */
     public Chameleon stop() throws BundleException, InterruptedException {
         logger.info("Stopping Chameleon");
+        if (profiler != null) {
+            profiler.complete();
+        }
+        saveCaches();
         manager.stop();
         logger.info("Chameleon stopped");
         hooks.fireShuttingDown();
         return this;
     }
 
+    private void saveCaches() {
+        if (metadataCache != null) {
+            metadataCache.save();
+        }
+        if (deploymentSnapshot != null) {
+            deploymentSnapshot.save();
+        }
+    }
+
     /**
      * Retrieves the bundle context of the underlying framework.
      * The framework must have been successfully started first.
@@ -22,7 +22,10 @@ package org.ow2.chameleon.core;
 import com.google.common.base.Joiner;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
+import org.ow2.chameleon.core.utils.DeploymentSnapshot;
+import org.ow2.chameleon.core.utils.JarMetadataCache;
 import org.ow2.chameleon.core.utils.JarScanner;
+import org.ow2.chameleon.core.utils.LibsExportIndex;
 import org.ow2.chameleon.core.utils.Pckg;
 import org.ow2.chameleon.core.utils.StringUtils;
 
@@ -62,6 +65,8 @@ public class ChameleonConfiguration extends HashMap<String, String> {
 
     private final File baseDirectory;
     private boolean interactiveModeEnabled;
+    private JarMetadataCache metadataCache;
+    private DeploymentSnapshot deploymentSnapshot;
 
     /**
      * Constructor for ChameleonConfiguration.
@@ -225,8 +230,9 @@ public class ChameleonConfiguration extends HashMap<String, String> {
      * Initializes the framework configuration.
      */
     public void initFrameworkConfiguration() {
-        // By default we clean the cache.
-        if (!containsKey("org.osgi.framework.storage.clean")) {
+        // By default we clean the cache, unless the warm restart is enabled.
+        boolean warmRestart = getBoolean(Constants.CHAMELEON_WARM_RESTART_PROPERTY, false);
+        if (!containsKey("org.osgi.framework.storage.clean") && !warmRestart) {
             put("org.osgi.framework.storage.clean", "onFirstInit");
         }
 
@@ -240,6 +246,22 @@ public class ChameleonConfiguration extends HashMap<String, String> {
             put("org.osgi.framework.storage", baseDirectory.getAbsolutePath() + "/chameleon-cache");
         }
 
+        // Load the deployment snapshot, used to reuse the bundles restored by the framework.
+        if (warmRestart) {
+            deploymentSnapshot = new DeploymentSnapshot(
+                    new File(get("org.osgi.framework.storage"), DeploymentSnapshot.FILE_NAME));
+            deploymentSnapshot.load();
+        }
+
+        // Load the jar metadata cache before scanning the libs directory.
+        // The file is read before the framework cleans its storage, and is written back once started.
+        if (getBoolean(Constants.CHAMELEON_METADATA_CACHE_PROPERTY, true)) {
+            metadataCache = new JarMetadataCache(
+                    new File(get("org.osgi.framework.storage"), JarMetadataCache.FILE_NAME),
+                    getBoolean(Constants.CHAMELEON_METADATA_CACHE_CHECKSUM_PROPERTY, false));
+            metadataCache.load();
+        }
+
         // Manage extra system packages.
         // It manages the lib directories.
         if (!containsKey("org.osgi.framework.system.packages.extra")) {
@@ -319,6 +341,24 @@ public class ChameleonConfiguration extends HashMap<String, String> {
         return baseDirectory.getAbsoluteFile();
     }
 
+    /**
+     * Gets the jar metadata cache created by {@link #initFrameworkConfiguration()}.
+     *
+     * @return the cache, {@literal null} if the cache is disabled or not yet created
+     */
+    public JarMetadataCache getJarMetadataCache() {
+        return metadataCache;
+    }
+
+    /**
+     * Gets the deployment snapshot created by {@link #initFrameworkConfiguration()}.
+     *
+     * @return the snapshot, {@literal null} if the warm restart is disabled or the snapshot not yet created
+     */
+    public DeploymentSnapshot getDeploymentSnapshot() {
+        return deploymentSnapshot;
+    }
+
     /**
      * Is the interactive mode enabled?
      *
@@ -363,12 +403,25 @@ public class ChameleonConfiguration extends HashMap<String, String> {
     }
 
     /**
-     * Scans the jar file of the 'libs' directory to retrieve the packages to be exported.
+     * Scans the jar file of the 'libs' directory to retrieve the packages to be exported. Unless disabled, the
+     * {@link LibsExportIndex} stored in the directory is used, so only the new and modified jars are scanned.
      *
      * @return the packages contained in the jars located in the 'libs' directory
      */
     public String scanLibsDirectory() {
         File libs = new File(baseDirectory.getAbsolutePath(), "libs");
+        if (libs.isDirectory() && getBoolean(Constants.CHAMELEON_LIBS_INDEX_PROPERTY, true)) {
+            LibsExportIndex index = new LibsExportIndex(libs, new File(libs, LibsExportIndex.FILE_NAME), metadataCache);
+            index.load();
+            try {
+                String exports = index.getExports();
+                index.save();
+                return exports;
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Cannot extract packages from the jars of " +
+                        libs.getAbsolutePath(), e);
+            }
+        }
         Set<Pckg> packages = new HashSet<Pckg>();
 
         if (libs.isDirectory()) {
@@ -376,7 +429,7 @@ public class ChameleonConfiguration extends HashMap<String, String> {
             Collection<File> jars = FileUtils.listFiles(libs, new String[]{"jar"}, true);
             for (File file : jars) {
                 try {
-                    final Set<Pckg> scan = JarScanner.scan(file);
+                    final Set<Pckg> scan = JarScanner.scan(file, metadataCache);
                     if (scan != null) {
                         // Check for null before adding.
                         packages.addAll(scan);
@@ -84,6 +84,130 @@ public class Constants {
      */
     public static final String CHAMELEON_MONITORING_PERIOD_PROPERTY = "chameleon.monitoring.period";
 
+    /**
+     * The property used to select how changes are detected in monitored directories: {@literal polling} (default)
+     * periodically scans the directories, while {@literal native} relies on the file system notifications.
+     */
+    public static final String CHAMELEON_MONITORING_MODE_PROPERTY = "chameleon.monitoring.mode";
+
+    /**
+     * The property used to select the monitoring mode of the runtime directory. If not set,
+     * {@link #CHAMELEON_MONITORING_MODE_PROPERTY} is used.
+     */
+    public static final String CHAMELEON_RUNTIME_MONITORING_MODE_PROPERTY = "chameleon.runtime.monitoring.mode";
+
+    /**
+     * The property used to select the monitoring mode of the application directory. If not set,
+     * {@link #CHAMELEON_MONITORING_MODE_PROPERTY} is used.
+     */
+    public static final String CHAMELEON_APPLICATION_MONITORING_MODE_PROPERTY = "chameleon.application.monitoring.mode";
+
+    /**
+     * The monitoring mode relying on the file system notifications.
+     */
+    public static final String NATIVE_MONITORING_MODE = "native";
+
+    /**
+     * The property used to configure the time (in milliseconds) without file events to wait before notifying the
+     * deployers. Events received during this period are delivered as a single batch. Disabled by default ({@literal
+     * 0}), the deployers being notified at the end of each check cycle.
+     */
+    public static final String CHAMELEON_MONITORING_QUIET_PERIOD_PROPERTY = "chameleon.monitoring.quiet.period";
+
+    /**
+     * The property used to configure the number of threads used to scan the monitored directories when the
+     * deployers are opened (checking whether a file is accepted may require to read it). By default, the number of
+     * available processors is used. {@literal 1} disables the parallel scan.
+     */
+    public static final String CHAMELEON_SCAN_THREADS_PROPERTY = "chameleon.scan.threads";
+
+    /**
+     * The property used to enable / disable the content digest of the monitored files (disabled by default). When
+     * enabled, change events of files whose content is byte-identical to the last deployed content are dropped.
+     */
+    public static final String CHAMELEON_MONITORING_DIGEST_PROPERTY = "chameleon.monitoring.digest";
+
+    /**
+     * The property used to enable / disable the transactional deployment of batches of bundles (enabled by
+     * default). When disabled, bundles are deployed one by one, each un-installation or update triggering a
+     * refresh.
+     */
+    public static final String CHAMELEON_DEPLOYMENT_BATCH_PROPERTY = "chameleon.deployment.batch";
+
+    /**
+     * The property used to configure the time in milliseconds during which the configuration file events are
+     * collected before being pushed to the configuration admin ({@literal 250} by default). Events concerning the
+     * same file are merged. {@literal 0} applies the events immediately, on the monitor thread.
+     */
+    public static final String CHAMELEON_CONFIGURATION_UPDATE_WINDOW_PROPERTY = "chameleon.configuration.update.window";
+
+    /**
+     * The property used to enable / disable the persistent cache of the metadata extracted from the jar files
+     * (enabled by default). The cache is stored in the OSGi storage directory.
+     */
+    public static final String CHAMELEON_METADATA_CACHE_PROPERTY = "chameleon.metadata.cache";
+
+    /**
+     * The property used to enable / disable the validation of the jar metadata cache entries using a CRC32 checksum
+     * of the jar content (disabled by default). When enabled, a jar whose modification date has changed but not its
+     * content is not re-read.
+     */
+    public static final String CHAMELEON_METADATA_CACHE_CHECKSUM_PROPERTY = "chameleon.metadata.cache.checksum";
+
+    /**
+     * The property used to enable / disable the export index of the 'libs' directory (enabled by default). The index
+     * records the packages of each jar, so only new and modified jars are scanned on startup. It can also be built
+     * at build time using {@code org.ow2.chameleon.core.utils.LibsExportIndex}.
+     */
+    public static final String CHAMELEON_LIBS_INDEX_PROPERTY = "chameleon.libs.index";
+
+    /**
+     * The property used to enable the event-driven stability computation. It configures the time in milliseconds
+     * without service events before declaring the service stability. Disabled by default ({@literal 0}), the
+     * stability checkers polling the framework state are used.
+     */
+    public static final String CHAMELEON_STABILITY_QUIET_PERIOD_PROPERTY = "chameleon.stability.quiet.period";
+
+    /**
+     * The property used to enable the warm restart (disabled by default). The OSGi storage is not cleaned on
+     * startup, and a snapshot of the deployed files is kept in it, so the bundles restored by the framework are
+     * reused when their file has not changed instead of being re-installed.
+     */
+    public static final String CHAMELEON_WARM_RESTART_PROPERTY = "chameleon.warm.restart";
+
+    /**
+     * The property used to configure the number of threads installing and starting the core bundles ({@literal 1}
+     * by default, sequential installation). With more threads, the bundles are installed concurrently and started
+     * in dependency waves.
+     */
+    public static final String CHAMELEON_CORE_INSTALL_THREADS_PROPERTY = "chameleon.core.install.threads";
+
+    /**
+     * The property used to configure the start levels of bundles, as a comma-separated list of
+     * {@code symbolic-name=level} entries. Bundles with a lower level are started first. The level can also be set
+     * using the {@code Chameleon-StartLevel} manifest header, and is {@literal 1} by default.
+     */
+    public static final String CHAMELEON_START_LEVELS_PROPERTY = "chameleon.start.levels";
+
+    /**
+     * The property used to configure the number of threads starting the independent bundles of a dependency wave
+     * (defaults to the number of threads installing the core bundles).
+     */
+    public static final String CHAMELEON_START_THREADS_PROPERTY = "chameleon.start.threads";
+
+    /**
+     * The property used to enable the startup profiler (disabled by default). The profiler records the boot phases,
+     * the internal activators and the bundle installations and starts. Once the stability is reached, it writes
+     * a Chrome trace file and logs a summary table.
+     */
+    public static final String CHAMELEON_STARTUP_PROFILER_PROPERTY = "chameleon.startup.profiler";
+
+    /**
+     * The property used to configure the trace file written by the startup profiler, relative to the base
+     * directory ({@code chameleon-startup-trace.json} by default).
+     */
+    public static final String CHAMELEON_STARTUP_PROFILER_TRACE_PROPERTY = "chameleon.startup.profiler.trace";
+
     /**
      * The property used to configure the auto-refresh of bundles after un-installations and updates.
      */
@@ -41,6 +41,13 @@ public class Main {
      */
     public static final String INTERACTIVE_ARGUMENT = "--interactive";
 
+    /**
+     * The argument enabling the training mode: Chameleon is started, stopped once stable, and the JVM exits. This
+     * mode is used by the launcher scripts to produce a class data sharing archive (AppCDS) of the classes loaded
+     * during the startup.
+     */
+    public static final String TRAINING_ARGUMENT = "--training";
+
     /**
      * Constructor to avoid creating a new Main object.
      */
@@ -52,6 +59,7 @@ public class Main {
      * Main method. Supported parameters are:
      * <ul>
      * <li>--interactive : enables interactive shell </li>
+     * <li>--training : starts Chameleon, waits for the stability, stops it and exits the JVM</li>
      * </ul>
      *
      * @param args the chameleon parameter.
@@ -65,6 +73,10 @@ public class Main {
             return;
         }
 
+        if (hasArgument(args, TRAINING_ARGUMENT)) {
+            System.exit(train(chameleon)); //NOSONAR
+        }
+
         // Register a shutdown hook to cleanup everything when stopping the JVM.
         registerShutdownHook(chameleon);
         try {
@@ -74,6 +86,34 @@ public class Main {
         }
     }
 
+    /**
+     * Runs the training mode: starts the given Chameleon instance, waits for the stability and stops it. The JVM
+     * flags producing the class data sharing archive (such as {@code -XX:ArchiveClassesAtExit}) are set by the
+     * launcher; the archive is written when the JVM exits.
+     *
+     * @param chameleon the chameleon instance, not started
+     * @return the exit code, {@literal 0} if the stability has been reached
+     */
+    static int train(Chameleon chameleon) {
+        int code = 0;
+        try {
+            chameleon.start();
+            chameleon.waitForStability();
+            LoggerFactory.getLogger(Chameleon.class).info("Training run completed, stopping Chameleon");
+        } catch (Exception e) {
+            // The classes loaded so far are still archived.
+            LoggerFactory.getLogger(Chameleon.class).error("The training run has not reached the stability", e);
+            code = 1;
+        }
+        try {
+            chameleon.stop();
+        } catch (Exception e) {
+            LoggerFactory.getLogger(Chameleon.class).error("Cannot stop the Chameleon instance", e);
+            code = 1;
+        }
+        return code;
+    }
+
     /**
      * Creates the Chameleon instance.The instance is not started.
      *
@@ -147,11 +187,22 @@ public class Main {
      * @return true if the interactive mode is enabled.
      */
     private static boolean isInteractiveModeEnabled(String[] args) {
+        return hasArgument(args, INTERACTIVE_ARGUMENT) && !hasArgument(args, TRAINING_ARGUMENT);
+    }
+
+    /**
+     * Checks whether the given argument is set.
+     *
+     * @param args     the parameters.
+     * @param argument the argument
+     * @return true if the argument is set.
+     */
+    private static boolean hasArgument(String[] args, String argument) {
         if (args == null) {
             return false;
         }
         for (String arg : args) {
-            if (INTERACTIVE_ARGUMENT.equalsIgnoreCase(arg)) {
+            if (argument.equalsIgnoreCase(arg)) {
                 return true;
             }
         }
@@ -22,21 +22,41 @@ package org.ow2.chameleon.core.activators;
 import org.osgi.framework.*;
 import org.osgi.framework.wiring.FrameworkWiring;
 import org.ow2.chameleon.core.services.AbstractDeployer;
+import org.ow2.chameleon.core.services.BatchDeployer;
 import org.ow2.chameleon.core.services.Deployer;
+import org.ow2.chameleon.core.services.ReconcilingDeployer;
 import org.ow2.chameleon.core.utils.BundleHelper;
+import org.ow2.chameleon.core.utils.DeploymentSnapshot;
+import org.ow2.chameleon.core.utils.JarMetadataCache;
+import org.ow2.chameleon.core.utils.StartPlanner;
+import org.ow2.chameleon.core.utils.StartupProfiler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Deployer installing and starting bundles.
+ * <p/>
+ * Batches of file events are handled as a single transaction: all bundles are uninstalled, updated and
+ * installed, then a single refresh is run for the affected bundles (and their dependency closure), and finally the
+ * bundles are started by a {@link StartPlanner}, by start level and in dependency order. Bundles that cannot be
+ * resolved are not started until a deployment satisfies their requirements.
+ * <p/>
+ * When a directory is opened, its content is reconciled with the bundles already installed from it (restored by
+ * the framework on a warm restart): only the difference is installed, updated or uninstalled.
  *
  * @author The OW2 Chameleon Team
  * @version $Id: 1.0.4 $Id
  */
-public class BundleDeployer extends AbstractDeployer implements BundleActivator {
+public class BundleDeployer extends AbstractDeployer implements BundleActivator, BatchDeployer,
+        ReconcilingDeployer {
     /**
      * The URL prefix to enable 'reference'.
      */
@@ -52,6 +72,36 @@ public class BundleDeployer extends AbstractDeployer implements BundleActivator
      */
     private final boolean autoRefresh;
 
+    /**
+     * Flag indicating whether batches of file events are deployed as a single transaction, or file per file.
+     */
+    private final boolean batch;
+
+    /**
+     * The planner starting the deployed bundles.
+     */
+    private final StartPlanner planner;
+
+    /**
+     * The jar metadata cache used to check the jars, {@literal null} if none.
+     */
+    private final JarMetadataCache cache;
+
+    /**
+     * The deployment snapshot, {@literal null} if the warm restart is disabled.
+     */
+    private final DeploymentSnapshot snapshot;
+
+    /**
+     * The startup profiler recording the installations, {@literal null} if disabled.
+     */
+    private final StartupProfiler profiler;
+
+    /**
+     * The maximum time (in milliseconds) to wait for the completion of a refresh.
+     */
+    private static final long REFRESH_TIMEOUT = 60000L;
+
     /**
      * The managed bundles.
      */
@@ -73,8 +123,41 @@ public class BundleDeployer extends AbstractDeployer implements BundleActivator
      * @param useReferences a boolean.
      */
     public BundleDeployer(boolean useReferences, boolean autoRefresh) {
+        this(useReferences, autoRefresh, true);
+    }
+
+    /**
+     * Creates a bundle deployer.
+     *
+     * @param useReferences whether the bundles are installed using the {@literal reference:} protocol
+     * @param autoRefresh   whether the bundles are refreshed after un-installations and updates
+     * @param batch         whether batches of file events are deployed as a single transaction
+     */
+    public BundleDeployer(boolean useReferences, boolean autoRefresh, boolean batch) {
+        this(useReferences, autoRefresh, batch, new StartPlanner(), null, null, null);
+    }
+
+    /**
+     * Creates a bundle deployer.
+     *
+     * @param useReferences whether the bundles are installed using the {@literal reference:} protocol
+     * @param autoRefresh   whether the bundles are refreshed after un-installations and updates
+     * @param batch         whether batches of file events are deployed as a single transaction
+     * @param planner       the planner starting the deployed bundles
+     * @param cache         the jar metadata cache used to check the jars, {@literal null} to read them
+     * @param snapshot      the deployment snapshot, {@literal null} if the warm restart is disabled
+     * @param profiler      the startup profiler recording the installations, {@literal null} if disabled
+     * @since 1.10.10
+     */
+    public BundleDeployer(boolean useReferences, boolean autoRefresh, boolean batch, StartPlanner planner,
+                          JarMetadataCache cache, DeploymentSnapshot snapshot, StartupProfiler profiler) {
         this.autoRefresh = autoRefresh;
         this.useReference = useReferences;
+        this.batch = batch;
+        this.planner = planner;
+        this.cache = cache;
+        this.snapshot = snapshot;
+        this.profiler = profiler;
     }
 
     /**
@@ -100,7 +183,7 @@ public class BundleDeployer extends AbstractDeployer implements BundleActivator
     @Override
     public boolean accept(File file) {
         // If the file does not exist anymore, isFile returns false.
-        return file.getName().endsWith(".jar") && (!file.isFile() || BundleHelper.isBundle(file));
+        return file.getName().endsWith(".jar") && (!file.isFile() || BundleHelper.isBundle(file, cache));
     }
 
     /**
@@ -116,14 +199,11 @@ public class BundleDeployer extends AbstractDeployer implements BundleActivator
                 LOGGER.info("Updating bundle {} - {}", bundle.getSymbolicName(), file.getAbsoluteFile());
                 try {
                     bundle.update();
+                    recordUpdate(file, bundle);
                     refresh();
-                    // Then try to start other not started bundles.
-                    tryToStartUnstartedBundles(bundle);
-                    // If the bundle we just update is not started, try to start it.
-                    // Obviously, this action is not done on fragment.
-                    if (bundle.getState() != Bundle.ACTIVE && !BundleHelper.isFragment(bundle)) {
-                        bundle.start();
-                    }
+                    // Start the updated bundle (unless it's a fragment), and the other bundles it may have
+                    // satisfied.
+                    startInDependencyOrder(Collections.singleton(bundle));
                 } catch (BundleException e) {
                     LOGGER.error("Error during bundle update {} from {}", bundle.getSymbolicName(),
                             file.getAbsoluteFile(), e);
@@ -135,20 +215,14 @@ public class BundleDeployer extends AbstractDeployer implements BundleActivator
             } else {
                 LOGGER.info("Installing bundle from {}", file.getAbsoluteFile());
                 try {
-                    Bundle bundle;
-                    if (useReference) {
-                        bundle = context.installBundle(REFERENCE_URL_PREFIX + file.toURI().toURL()
-                                .toExternalForm());
-                    } else {
-                        bundle = context.installBundle(file.toURI().toURL().toExternalForm());
-                    }
+                    List<Bundle> updated = new ArrayList<Bundle>();
+                    Bundle bundle = installBundle(file, updated);
                     bundles.put(file, bundle);
-                    if (!BundleHelper.isFragment(bundle)) {
-                        LOGGER.info("Starting bundle {} - {}", bundle.getSymbolicName(), file.getAbsoluteFile());
-                        bundle.start();
+                    if (!updated.isEmpty()) {
+                        refresh();
                     }
                     // We have installed a new bundle, let's see if it has an impact on the other one.
-                    tryToStartUnstartedBundles(bundle);
+                    startInDependencyOrder(Collections.singleton(bundle));
                 } catch (Exception e) {
                     LOGGER.error("Error during bundle installation of {}", file.getAbsoluteFile(), e);
                 }
@@ -157,27 +231,156 @@ public class BundleDeployer extends AbstractDeployer implements BundleActivator
     }
 
     /**
-     * Iterates over the set of bundles and try to start unstarted bundles.
-     * This method is called when holding the monitor lock.
+     * Installs the bundle from the given file. If a bundle is already installed from this file (restored by the
+     * framework for instance), it is reused if the file has not changed, and updated otherwise.
      *
-     * @param bundle the installed bundle triggering this attempt.
+     * @param file    the file
+     * @param updated the collection to populate with the existing bundles that have been updated
+     * @return the installed bundle
+     * @throws BundleException       if the bundle cannot be installed
+     * @throws MalformedURLException if the url of the file cannot be computed
+     */
+    private Bundle installBundle(File file, Collection<Bundle> updated) throws BundleException,
+            MalformedURLException {
+        StartupProfiler.Span span = StartupProfiler.begin(profiler, file.getName(), StartupProfiler.INSTALL);
+        try {
+            return BundleHelper.install(context, file, getLocation(file), updated, snapshot);
+        } finally {
+            span.end();
+        }
+    }
+
+    /**
+     * Computes the location of the bundle installed from the given file.
+     *
+     * @param file the file
+     * @return the location
+     * @throws MalformedURLException if the url of the file cannot be computed
+     */
+    private String getLocation(File file) throws MalformedURLException {
+        // Compute the url. if we use 'reference' prepend 'reference:'
+        if (useReference) {
+            return REFERENCE_URL_PREFIX + file.toURI().toURL().toExternalForm();
+        } else {
+            return file.toURI().toURL().toExternalForm();
+        }
+    }
+
+    /**
+     * Records the update of a bundle in the deployment snapshot, if enabled.
+     *
+     * @param file   the bundle file
+     * @param bundle the bundle
+     */
+    private void recordUpdate(File file, Bundle bundle) {
+        if (snapshot != null) {
+            snapshot.recordBundle(file, bundle);
+        }
+    }
+
+    /**
+     * Removes a file from the deployment snapshot, if enabled.
+     *
+     * @param file the bundle file
+     */
+    private void forget(File file) {
+        if (snapshot != null) {
+            snapshot.remove(file);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The batch is deployed as a single transaction: deleted bundles are uninstalled, changed bundles are updated
+     * and new bundles are installed. Then, the uninstalled and updated bundles are refreshed at once (the framework
+     * also refreshes the bundles depending on them). Finally, the bundles are started in dependency order.
      */
-    private void tryToStartUnstartedBundles(Bundle bundle) {
-        for (Bundle b : bundles.values()) {
-            if (!bundle.equals(b) && b.getState() != Bundle.ACTIVE && !BundleHelper.isFragment(b)) {
-                LOGGER.debug("Trying to start bundle {} after having installed bundle {}", b.getSymbolicName(),
-                        bundle.getSymbolicName());
+    @Override
+    public void onFilesChanged(Collection<File> created, Collection<File> changed, Collection<File> deleted) {
+        if (!batch) {
+            for (File file : deleted) {
+                onFileDelete(file);
+            }
+            for (File file : changed) {
+                onFileChange(file);
+            }
+            for (File file : created) {
+                onFileCreate(file);
+            }
+            return;
+        }
+
+        final long begin = System.currentTimeMillis();
+        synchronized (this) {
+            // The bundles to refresh (uninstalled or updated), and the bundles to start.
+            Set<Bundle> affected = new LinkedHashSet<Bundle>();
+            Set<Bundle> toStart = new LinkedHashSet<Bundle>();
+
+            for (File file : deleted) {
+                Bundle bundle = bundles.remove(file);
+                forget(file);
+                if (bundle != null) {
+                    try {
+                        LOGGER.info("Uninstalling bundle {}", bundle.getSymbolicName());
+                        bundle.uninstall();
+                        affected.add(bundle);
+                    } catch (BundleException e) {
+                        LOGGER.error("Error during the un-installation of {}", bundle.getSymbolicName(), e);
+                    }
+                }
+            }
+
+            List<File> installedOrUpdated = new ArrayList<File>(changed);
+            installedOrUpdated.addAll(created);
+            for (File file : installedOrUpdated) {
+                Bundle bundle = bundles.get(file);
                 try {
-                    b.start();
-                } catch (BundleException e) {
-                    LOGGER.debug("Failed to start bundle {} after having installed bundle {}",
-                            b.getSymbolicName(),
-                            bundle.getSymbolicName(), e);
+                    if (bundle != null) {
+                        LOGGER.info("Updating bundle {} - {}", bundle.getSymbolicName(), file.getAbsoluteFile());
+                        bundle.update();
+                        recordUpdate(file, bundle);
+                        affected.add(bundle);
+                    } else {
+                        LOGGER.info("Installing bundle from {}", file.getAbsoluteFile());
+                        bundle = installBundle(file, affected);
+                        bundles.put(file, bundle);
+                    }
+                    toStart.add(bundle);
+                } catch (Exception e) {
+                    // We catch any exception has it may be runtime exception (IllegalStateException).
+                    LOGGER.error("Error during the deployment of {}", file.getAbsoluteFile(), e);
                 }
             }
+
+            final long deployed = System.currentTimeMillis();
+            if (!affected.isEmpty()) {
+                refreshAndWait(affected);
+            }
+            final long refreshed = System.currentTimeMillis();
+
+            startInDependencyOrder(toStart);
+
+            LOGGER.info("Batch of {} created, {} changed and {} deleted bundle file(s) deployed in {} ms " +
+                            "(deployment: {} ms, refresh: {} ms, start: {} ms)",
+                    created.size(), changed.size(), deleted.size(), System.currentTimeMillis() - begin,
+                    deployed - begin, refreshed - deployed, System.currentTimeMillis() - refreshed);
         }
     }
 
+    /**
+     * Resolves and starts the given bundles using the start planner. Other managed bundles that are not started yet
+     * are also started if they can now be resolved, as the new bundles may have satisfied their requirements.
+     * This method is called when holding the monitor lock.
+     *
+     * @param toStart the bundles to start
+     */
+    private void startInDependencyOrder(Set<Bundle> toStart) {
+        Set<Bundle> candidates = new LinkedHashSet<Bundle>(toStart);
+        candidates.addAll(bundles.values());
+        planner.start(context, candidates, toStart);
+    }
+
     /**
      * {@inheritDoc}
      * <p>
@@ -186,17 +389,32 @@ public class BundleDeployer extends AbstractDeployer implements BundleActivator
      */
     @Override
     public void open(Collection<File> files) {
+        open(null, files);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The files are compared with the bundles already known by the framework (by location): unchanged bundles are
+     * reused, changed ones are updated, and the bundles installed from a file of the directory that does not exist
+     * anymore are uninstalled. Only new files are installed. The updated and uninstalled bundles are refreshed at
+     * once, then the bundles are started.
+     * This method cannot be interrupted.
+     */
+    @Override
+    public void open(File directory, Collection<File> files) {
+        final long begin = System.currentTimeMillis();
         List<Bundle> toStart = new ArrayList<Bundle>();
+        List<Bundle> affected = new ArrayList<Bundle>();
+        Set<String> locations = new HashSet<String>();
+        int installed = 0;
         for (File file : files) {
             try {
-                Bundle bundle;
-                // Compute the url. if we use 'reference' prepend 'reference:'
-                if (useReference) {
-                    bundle = context.installBundle(REFERENCE_URL_PREFIX
-                            + file.toURI().toURL().toExternalForm());
-                } else {
-                    bundle = context.installBundle(file.toURI().toURL().toExternalForm());
+                if (context.getBundle(getLocation(file)) == null) {
+                    installed++;
                 }
+                Bundle bundle = installBundle(file, affected);
+                locations.add(bundle.getLocation());
                 bundles.put(file, bundle);
                 if (!BundleHelper.isFragment(bundle)) {
                     toStart.add(bundle);
@@ -206,15 +424,62 @@ public class BundleDeployer extends AbstractDeployer implements BundleActivator
                 LOGGER.error("Error during bundle installation of {}", file.getAbsoluteFile(), e);
             }
         }
+        int updated = affected.size();
+
+        if (directory != null) {
+            affected.addAll(uninstallRemovedBundles(directory, locations));
+        }
+        if (!affected.isEmpty()) {
+            refreshAndWait(affected);
+        }
 
         // toStart contains only regular bundles (not the fragments).
-        for (Bundle bundle : toStart) {
+        planner.start(context, toStart, toStart);
+
+        if (directory != null) {
+            LOGGER.info("Directory {} reconciled in {} ms: {} bundle(s) installed, {} updated, {} uninstalled, " +
+                            "{} reused", directory.getAbsolutePath(), System.currentTimeMillis() - begin, installed,
+                    updated, affected.size() - updated, locations.size() - installed - updated);
+        }
+    }
+
+    /**
+     * Uninstalls the bundles installed from a file of the given directory that has been removed (while the
+     * framework was stopped for instance).
+     *
+     * @param directory the directory
+     * @param locations the locations of the bundles installed from the current files of the directory
+     * @return the uninstalled bundles
+     */
+    private List<Bundle> uninstallRemovedBundles(File directory, Set<String> locations) {
+        List<Bundle> uninstalled = new ArrayList<Bundle>();
+        String prefix = directory.getAbsoluteFile().toURI().toString();
+        for (Bundle bundle : context.getBundles()) {
+            String location = bundle.getLocation();
+            if (location.startsWith(REFERENCE_URL_PREFIX)) {
+                location = location.substring(REFERENCE_URL_PREFIX.length());
+            }
+            if (bundle.getBundleId() == 0L || locations.contains(bundle.getLocation())
+                    || !location.startsWith(prefix)) {
+                continue;
+            }
             try {
-                bundle.start();
+                File file = new File(new URI(location));
+                if (!file.exists()) {
+                    LOGGER.info("Uninstalling bundle {}, the file {} has been removed", bundle.getSymbolicName(),
+                            file.getAbsolutePath());
+                    bundle.uninstall();
+                    forget(file);
+                    uninstalled.add(bundle);
+                }
+            } catch (URISyntaxException e) {
+                LOGGER.debug("Cannot compute the file of the bundle {} from {}", bundle.getSymbolicName(),
+                        location, e);
             } catch (BundleException e) {
-                LOGGER.error("Error during the starting of {}", bundle.getSymbolicName(), e);
+                LOGGER.error("Error during the un-installation of {}", bundle.getSymbolicName(), e);
             }
         }
+        return uninstalled;
     }
 
     /**
@@ -225,6 +490,7 @@ public class BundleDeployer extends AbstractDeployer implements BundleActivator
         Bundle bundle;
         synchronized (this) {
             bundle = bundles.remove(file);
+            forget(file);
         }
 
         if (bundle != null) {
@@ -238,6 +504,22 @@ public class BundleDeployer extends AbstractDeployer implements BundleActivator
         }
     }
 
+    /**
+     * Refreshes the given bundles and the bundles depending on them, and waits until the refresh is completed.
+     * Does nothing if the auto-refresh is disabled.
+     *
+     * @param toRefresh the uninstalled or updated bundles
+     */
+    private void refreshAndWait(Collection<Bundle> toRefresh) {
+        if (!autoRefresh) {
+            return;
+        }
+        LOGGER.debug("Refreshing {} bundle(s) and their dependents to cleanup stale references", toRefresh.size());
+        if (!BundleHelper.refreshAndWait(context, toRefresh, REFRESH_TIMEOUT)) {
+            LOGGER.warn("The refresh of the bundles has not completed after {} ms", REFRESH_TIMEOUT);
+        }
+    }
+
     public void refresh() {
         if (autoRefresh) {
             Bundle system = context.getBundle(0l);
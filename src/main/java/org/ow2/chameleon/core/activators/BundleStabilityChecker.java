@@ -21,24 +21,55 @@ package org.ow2.chameleon.core.activators;
 
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.SynchronousBundleListener;
 import org.ow2.chameleon.core.services.AbstractStabilityChecker;
 import org.ow2.chameleon.core.services.StabilityResult;
 import org.ow2.chameleon.core.utils.BundleHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * Stability check verifying the bundle state.
  * <p>
  * It fails if at least one bundle does not reach its final state before a timeout. This timeout is impacted by the
  * "time.factor" system property.
+ * <p>
+ * When a {@link StabilityMonitor} is given, the checker waits for bundle events instead of sleeping between
+ * attempts.
+ * <p>
+ * Once {@linkplain #open() opened}, the checker maintains the set of bundles that have not reached their final
+ * state, updated synchronously on every bundle event. The check then only looks at this set instead of iterating
+ * over all the bundles, and the unstable bundles are listed in the reason of the result.
  */
-public class BundleStabilityChecker extends AbstractStabilityChecker {
+public class BundleStabilityChecker extends AbstractStabilityChecker implements SynchronousBundleListener {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(BundleStabilityChecker.class);
 
+    /**
+     * The maximum number of unstable bundles listed in the reason of the result.
+     */
+    private static final int MAX_LISTED_BUNDLES = 10;
+
     private final BundleContext context;
-    private final int attempts;
+    private final int max;
+    private final StabilityMonitor monitor;
+
+    /**
+     * The bundles that have not reached their final state, maintained once the checker is opened.
+     */
+    private final Set<Bundle> unstable = Collections.newSetFromMap(new ConcurrentHashMap<Bundle, Boolean>());
+
+    /**
+     * Whether the checker is listening to the bundle events.
+     */
+    private volatile boolean listening;
 
     /**
      * Creates a new instance of {@link BundleStabilityChecker}. It uses the default number of attempts.
@@ -56,8 +87,99 @@ public class BundleStabilityChecker extends AbstractStabilityChecker {
      * @param max     the maximum number of attemps
      */
     public BundleStabilityChecker(BundleContext context, int max) {
+        this(context, max, null);
+    }
+
+    /**
+     * Creates a new instance of {@link BundleStabilityChecker} relying on the given monitor to be notified of the
+     * bundle events.
+     *
+     * @param context the bundle context
+     * @param max     the maximum number of attempts, used to compute the timeout, {@literal 0} to
+     *                use the default number of attempts of the checking thread
+     * @param monitor the stability monitor, {@literal null} to poll the bundle states
+     */
+    public BundleStabilityChecker(BundleContext context, int max, StabilityMonitor monitor) {
         this.context = context;
-        this.attempts = max;
+        this.max = max;
+        this.monitor = monitor;
+    }
+
+    /**
+     * Starts listening to the bundle events and collects the bundles that have not reached their final state yet.
+     *
+     * @since 1.10.10
+     */
+    public void open() {
+        // Register the listener first, so no event is missed while the bundles are scanned.
+        context.addBundleListener(this);
+        for (Bundle bundle : context.getBundles()) {
+            update(bundle);
+        }
+        listening = true;
+    }
+
+    /**
+     * Stops listening to the bundle events. The checker goes back to iterating over the bundles.
+     *
+     * @since 1.10.10
+     */
+    public void close() {
+        listening = false;
+        context.removeBundleListener(this);
+        unstable.clear();
+    }
+
+    /**
+     * Updates the set of unstable bundles.
+     *
+     * @param event the event
+     */
+    @Override
+    public void bundleChanged(BundleEvent event) {
+        update(event.getBundle());
+    }
+
+    /**
+     * Adds the bundle to the unstable set or removes it, according to its current state.
+     *
+     * @param bundle the bundle
+     * @return {@code true} if the bundle is unstable
+     */
+    private boolean update(Bundle bundle) {
+        int state = bundle.getState();
+        if (state == Bundle.UNINSTALLED || isInFinalState(bundle)) {
+            unstable.remove(bundle);
+            return false;
+        }
+        unstable.add(bundle);
+        return true;
+    }
+
+    /**
+     * Gets the bundles that have not reached their final state. If the checker is not opened, all bundles are
+     * checked.
+     *
+     * @return the unstable bundles, empty if all bundles are stable
+     * @since 1.10.10
+     */
+    public List<Bundle> getUnstableBundles() {
+        List<Bundle> list = new ArrayList<Bundle>();
+        if (listening) {
+            // Re-check the state, an event may have been processed concurrently with another.
+            for (Bundle bundle : unstable) {
+                if (update(bundle)) {
+                    list.add(bundle);
+                }
+            }
+        } else {
+            for (Bundle bundle : context.getBundles()) {
+                if (!isInFinalState(bundle)) {
+                    list.add(bundle);
+                }
+            }
+        }
+        return list;
     }
 
     /**
@@ -87,8 +209,16 @@ public class BundleStabilityChecker extends AbstractStabilityChecker {
      */
     @Override
     public StabilityResult check() {
+        final int attempts = max > 0 ? max : getDefaultNumberOfAttempts();
+        if (listening && monitor == null) {
+            return checkUnstableSet(attempts);
+        }
         boolean bundleStability = getBundleStability(context);
         int count = 0;
+        if (!bundleStability && monitor != null) {
+            bundleStability = monitor.awaitBundleStability(getTimeout(attempts));
+            count = bundleStability ? 0 : attempts;
+        }
         while (!bundleStability && count < attempts) {
             // Wait first, then increment and then re-check.
             grace();
@@ -104,12 +234,57 @@ public class BundleStabilityChecker extends AbstractStabilityChecker {
                 LOGGER.error("Bundle {} - {} -> {}", bundle.getBundleId(), bundle.getSymbolicName(),
                         bundle.getState());
             }
-            return StabilityResult.unstable("Cannot reach the bundle stability");
+            return StabilityResult.unstable(getReason(getUnstableBundles()));
         }
 
         return StabilityResult.stable();
     }
 
+    /**
+     * Waits until the set of unstable bundles is empty.
+     *
+     * @param attempts the maximum number of attempts
+     * @return the stability result
+     */
+    private StabilityResult checkUnstableSet(int attempts) {
+        if (unstable.isEmpty()) {
+            return StabilityResult.stable();
+        }
+        for (int count = 0; count < attempts; count++) {
+            grace();
+            if (unstable.isEmpty()) {
+                return StabilityResult.stable();
+            }
+        }
+        List<Bundle> bundles = getUnstableBundles();
+        if (bundles.isEmpty()) {
+            return StabilityResult.stable();
+        }
+        LOGGER.error("Bundle stability isn't reached after {} tries", attempts);
+        for (Bundle bundle : bundles) {
+            LOGGER.error("Bundle {} - {} -> {}", bundle.getBundleId(), bundle.getSymbolicName(), bundle.getState());
+        }
+        return StabilityResult.unstable(getReason(bundles));
+    }
+
+    private static String getReason(List<Bundle> bundles) {
+        StringBuilder reason = new StringBuilder("Cannot reach the bundle stability");
+        if (!bundles.isEmpty()) {
+            reason.append(", unstable bundles: ");
+            for (int i = 0; i < bundles.size() && i < MAX_LISTED_BUNDLES; i++) {
+                Bundle bundle = bundles.get(i);
+                if (i > 0) {
+                    reason.append(", ");
+                }
+                reason.append(bundle.getSymbolicName()).append(" [").append(bundle.getBundleId()).append("]");
+            }
+            if (bundles.size() > MAX_LISTED_BUNDLES) {
+                reason.append(" and ").append(bundles.size() - MAX_LISTED_BUNDLES).append(" more");
+            }
+        }
+        return reason.toString();
+    }
+
 
     /**
      * checks whether or not bundles have reach their 'final' state. The final state depends on the bundle type.
@@ -119,15 +294,26 @@ public class BundleStabilityChecker extends AbstractStabilityChecker {
      * @return {@code true} if every bundles have reached its final state.
      */
     public static boolean getBundleStability(BundleContext bc) {
-        boolean stability = true;
         Bundle[] bundles = bc.getBundles();
         for (Bundle bundle : bundles) {
-            if (BundleHelper.isFragment(bundle)) {
-                stability = stability && (bundle.getState() == Bundle.RESOLVED);
-            } else {
-                stability = stability && (bundle.getState() == Bundle.ACTIVE);
+            if (!isInFinalState(bundle)) {
+                return false;
             }
         }
-        return stability;
+        return true;
+    }
+
+    /**
+     * Checks whether the bundle has reached its final state: `RESOLVED` for fragments, `ACTIVE` for regular
+     * bundles.
+     *
+     * @param bundle the bundle
+     * @return {@code true} if the bundle is in its final state
+     */
+    private static boolean isInFinalState(Bundle bundle) {
+        if (BundleHelper.isFragment(bundle)) {
+            return bundle.getState() == Bundle.RESOLVED;
+        }
+        return bundle.getState() == Bundle.ACTIVE;
     }
 }
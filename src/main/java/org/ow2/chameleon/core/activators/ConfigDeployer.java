@@ -19,31 +19,54 @@
  */
 package org.ow2.chameleon.core.activators;
 
-import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.FilenameUtils;
 import org.osgi.framework.*;
 import org.osgi.service.cm.Configuration;
 import org.osgi.service.cm.ConfigurationAdmin;
+import org.osgi.util.tracker.ServiceTracker;
+import org.osgi.util.tracker.ServiceTrackerCustomizer;
+import org.ow2.chameleon.core.services.ConfigurationParser;
 import org.ow2.chameleon.core.services.Deployer;
 import org.ow2.chameleon.core.services.ExtensionBasedDeployer;
+import org.ow2.chameleon.core.services.ReconcilingDeployer;
+import org.ow2.chameleon.core.utils.DeploymentSnapshot;
+import org.ow2.chameleon.core.utils.JsonConfigurationParser;
+import org.ow2.chameleon.core.utils.MonitorThreadFactory;
+import org.ow2.chameleon.core.utils.PropertiesConfigurationParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.util.Dictionary;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Properties;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Deployer pushing the content of 'cfg' files to the Configuration Admin.
+ * Deployer pushing the content of configuration files to the Configuration Admin.
+ * <p>
+ * The files are read by {@link ConfigurationParser}s, selected by file extension: 'cfg' (properties) and 'json'
+ * files are supported by default, other parsers are discovered using the {@link ServiceLoader} mechanism.
+ * <p>
+ * The properties last applied to each configuration are kept, so the configuration admin is not updated (and the
+ * managed services are not reconfigured) when a file is modified without changing its content.
+ * <p>
+ * File events are not applied by the thread of the directory monitor: they are queued, and applied by a dedicated
+ * thread once the update window has elapsed. Events concerning the same file during the window are merged, so only
+ * the last state of the file is pushed to the configuration admin. The configuration admin service is
+ * tracked.
  *
  * @author The OW2 Chameleon Team
  * @version $Id: 1.0.4 $Id
  */
-public class ConfigDeployer extends ExtensionBasedDeployer implements BundleActivator, ServiceListener {
+public class ConfigDeployer extends ExtensionBasedDeployer implements BundleActivator, ReconcilingDeployer,
+        ServiceTrackerCustomizer<ConfigurationAdmin, ConfigurationAdmin> {
+
+    /**
+     * The default update window, in milliseconds.
+     */
+    public static final long DEFAULT_UPDATE_WINDOW = 250L;
 
     /**
      * A logger.
@@ -55,46 +78,155 @@ public class ConfigDeployer extends ExtensionBasedDeployer implements BundleActi
      */
     Map<File, Configuration> configurations = new HashMap<File, Configuration>();
 
+    /**
+     * The properties last applied to each configuration, by pid. Configurations created from files are expected to
+     * be modified through their file only.
+     */
+    private final Map<String, Dictionary<String, Object>> applied = new HashMap<String, Dictionary<String, Object>>();
+
+    /**
+     * The parsers, by extension.
+     */
+    private final Map<String, ConfigurationParser> parsers;
+
+    /**
+     * The pending file events, by file (canonical path), in the order of arrival.
+     */
+    private final Map<String, PendingUpdate> pending = new LinkedHashMap<String, PendingUpdate>();
+
+    /**
+     * The time in milliseconds during which the file events are collected before being applied. With {@literal 0},
+     * the events are applied immediately by the thread notifying them.
+     */
+    private final long window;
+
+    /**
+     * The deployment snapshot, {@literal null} if the warm restart is disabled.
+     */
+    private final DeploymentSnapshot snapshot;
+
     /**
      * The bundle context.
      */
     private BundleContext context;
 
     /**
-     * Creates a configuration (cfg) deployer.
+     * The configuration admin tracker.
+     */
+    private ServiceTracker<ConfigurationAdmin, ConfigurationAdmin> tracker;
+
+    /**
+     * The thread applying the queued events, {@literal null} if the events are applied immediately.
+     */
+    private ScheduledExecutorService dispatcher;
+
+    /**
+     * Whether a flush of the pending events is scheduled. Guarded by {@link #pending}.
+     */
+    private boolean flushScheduled;
+
+    /**
+     * Creates a configuration deployer, using the built-in parsers and the parsers declared using the
+     * {@link ServiceLoader} mechanism.
      */
     public ConfigDeployer() {
-        super("cfg");
+        this(DEFAULT_UPDATE_WINDOW, null);
+    }
+
+    /**
+     * Creates a configuration deployer, using the built-in parsers and the parsers declared using the
+     * {@link ServiceLoader} mechanism.
+     *
+     * @param window   the time in milliseconds during which the file events are collected before being applied,
+     *                 {@literal 0} to apply them immediately
+     * @param snapshot the deployment snapshot, {@literal null} if the warm restart is disabled
+     */
+    public ConfigDeployer(long window, DeploymentSnapshot snapshot) {
+        this(loadParsers(), window, snapshot);
+    }
+
+    /**
+     * Creates a configuration deployer using the given parsers. When several parsers handle the same extension, the
+     * last one is used.
+     *
+     * @param parsers  the parsers
+     * @param window   the time in milliseconds during which the file events are collected before being applied,
+     *                 {@literal 0} to apply them immediately
+     * @param snapshot the deployment snapshot, {@literal null} if the warm restart is disabled
+     */
+    public ConfigDeployer(List<ConfigurationParser> parsers, long window, DeploymentSnapshot snapshot) {
+        this(index(parsers), window, snapshot);
+    }
+
+    private ConfigDeployer(Map<String, ConfigurationParser> parsers, long window, DeploymentSnapshot snapshot) {
+        super(new ArrayList<String>(parsers.keySet()));
+        this.parsers = parsers;
+        this.window = window;
+        this.snapshot = snapshot;
+    }
+
+    private static List<ConfigurationParser> loadParsers() {
+        List<ConfigurationParser> list = new ArrayList<ConfigurationParser>();
+        list.add(new PropertiesConfigurationParser());
+        list.add(new JsonConfigurationParser());
+        for (ConfigurationParser parser : ServiceLoader.load(ConfigurationParser.class,
+                ConfigDeployer.class.getClassLoader())) {
+            list.add(parser);
+        }
+        return list;
+    }
+
+    private static Map<String, ConfigurationParser> index(List<ConfigurationParser> parsers) {
+        Map<String, ConfigurationParser> map = new LinkedHashMap<String, ConfigurationParser>();
+        for (ConfigurationParser parser : parsers) {
+            for (String extension : parser.getExtensions()) {
+                map.put(extension, parser);
+            }
+        }
+        return map;
     }
 
     /** {@inheritDoc} */
     @Override
     public void start(BundleContext context) throws Exception {
         this.context = context;
+        if (window > 0) {
+            dispatcher = Executors.newSingleThreadScheduledExecutor(new MonitorThreadFactory("configurations"));
+        }
+        tracker = new ServiceTracker<ConfigurationAdmin, ConfigurationAdmin>(context, ConfigurationAdmin.class, this);
+        tracker.open();
         context.registerService(Deployer.class, this, null);
-        context.addServiceListener(this, "(" + Constants.OBJECTCLASS + "=" + ConfigurationAdmin.class.getName() + ")");
     }
 
     /** {@inheritDoc} */
     @Override
     public void stop(BundleContext context) throws Exception {
+        if (dispatcher != null) {
+            // Pending events are dropped, the configurations are removed right after.
+            dispatcher.shutdownNow();
+            dispatcher = null;
+        }
+        synchronized (pending) {
+            pending.clear();
+            flushScheduled = false;
+        }
+        if (tracker != null) {
+            tracker.close();
+            tracker = null;
+        }
         removeAllConfigurations();
     }
 
-    private Properties read(File file) throws IOException {
-        InputStream in = null;
-        try {
-            Properties p = new Properties();
-            in = new FileInputStream(file);
-            p.load(in);
-            return p;
-        } finally {
-            IOUtils.closeQuietly(in);
+    private Dictionary<String, Object> read(File file) throws IOException {
+        ConfigurationParser parser = parsers.get(FilenameUtils.getExtension(file.getName()));
+        if (parser == null) {
+            throw new IOException("No parser for " + file.getAbsolutePath());
         }
+        return parser.parse(file);
     }
 
     /**
-     * Parses cfg file associated PID. This supports both ManagedService PID and
+     * Parses configuration file associated PID. This supports both ManagedService PID and
      * ManagedServiceFactory PID
      *
      * @param path the path
@@ -102,7 +234,7 @@ public class ConfigDeployer extends ExtensionBasedDeployer implements BundleActi
      * Factory configuration.
      */
     String[] parsePid(String path) {
-        String pid = path.substring(0, path.length() - ".cfg".length());
+        String pid = FilenameUtils.removeExtension(path);
         int n = pid.indexOf('-');
         if (n > 0) {
             String factoryPid = pid.substring(n + 1);
@@ -119,25 +251,155 @@ public class ConfigDeployer extends ExtensionBasedDeployer implements BundleActi
                 LOGGER.warn("Cannot apply configuration " + file.getName() + " - no configuration admin");
                 configurations.put(file, UnmanagedConfiguration.INSTANCE);
             } else {
-                Properties properties = read(file);
+                Dictionary<String, Object> ht = read(file);
                 String[] pid = parsePid(file.getName());
-                Dictionary<Object, Object> ht = new Properties();
-                for (String k : properties.stringPropertyNames()) {
-                    ht.put(k, properties.getProperty(k));
-                }
                 Configuration config = configurations.get(file);
                 if (config == null || config == UnmanagedConfiguration.INSTANCE) {
-                    config = getConfiguration(pid[0], pid[1], admin);
+                    config = getRecordedConfiguration(file, admin);
+                    if (config == null) {
+                        config = getConfiguration(pid[0], pid[1], admin);
+                    }
                     if (config.getBundleLocation() != null) {
                         config.setBundleLocation(null);
                     }
                 }
-                LOGGER.info("Updating configuration {} in the configuration admin, configuration: {}",
-                        config.getPid(), configurations);
-                config.update(ht);
+                Dictionary<String, Object> last = applied.get(config.getPid());
+                if (last != null && isEqual(last, ht)) {
+                    // The file content has not changed since the last update.
+                    LOGGER.debug("Configuration {} has not changed", config.getPid());
+                } else if (isUpToDate(config, ht)) {
+                    // Restored from a previous run, or the file content has not changed.
+                    LOGGER.debug("Configuration {} is up to date", config.getPid());
+                } else {
+                    LOGGER.info("Updating configuration {} in the configuration admin, configuration: {}",
+                            config.getPid(), configurations);
+                    config.update(ht);
+                }
+                applied.put(config.getPid(), ht);
 
                 configurations.put(file, config);
+                if (snapshot != null) {
+                    snapshot.recordConfiguration(file, config.getPid());
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks whether the configuration already contains the given properties (and only them).
+     *
+     * @param config     the configuration
+     * @param properties the properties read from the file
+     * @return {@literal true} if the configuration does not need to be updated
+     */
+    private static boolean isUpToDate(Configuration config, Dictionary<String, Object> properties) {
+        // The configuration admin API returns a raw dictionary, whose keys are strings.
+        @SuppressWarnings("unchecked")
+        Dictionary<String, Object> current = config.getProperties();
+        if (current == null) {
+            return false;
+        }
+        int count = 0;
+        for (Enumeration<String> keys = current.keys(); keys.hasMoreElements(); ) {
+            String key = keys.nextElement();
+            if (Constants.SERVICE_PID.equals(key) || ConfigurationAdmin.SERVICE_FACTORYPID.equals(key)
+                    || ConfigurationAdmin.SERVICE_BUNDLELOCATION.equals(key)) {
+                continue;
+            }
+            if (!isEqual(current.get(key), properties.get(key))) {
+                return false;
+            }
+            count++;
+        }
+        return count == properties.size();
+    }
+
+    /**
+     * Checks whether the two dictionaries contain the same properties.
+     */
+    private static boolean isEqual(Dictionary<String, Object> first, Dictionary<String, Object> second) {
+        if (first.size() != second.size()) {
+            return false;
+        }
+        for (Enumeration<String> keys = first.keys(); keys.hasMoreElements(); ) {
+            String key = keys.nextElement();
+            if (!isEqual(first.get(key), second.get(key))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether two property values are equal, comparing the content of arrays.
+     */
+    private static boolean isEqual(Object first, Object second) {
+        if (first == null || second == null) {
+            return first == second;
+        }
+        if (first.getClass().isArray() && second.getClass().isArray()) {
+            return Arrays.deepEquals(new Object[]{first}, new Object[]{second});
+        }
+        return first.equals(second);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void open(Collection<File> files) {
+        open(null, files);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The files are compared with the configurations already in the configuration admin: configurations that are
+     * up to date are not updated, and, when the warm restart is enabled, the configurations created from a file of
+     * the directory that does not exist anymore are deleted.
+     */
+    @Override
+    public void open(File directory, Collection<File> files) {
+        synchronized (this) {
+            ConfigurationAdmin admin = getConfigurationAdmin();
+            for (File file : files) {
+                try {
+                    readAndApplyConfiguration(file, admin);
+                } catch (Exception e) {
+                    LOGGER.error("Cannot apply configuration from {}", file.getAbsoluteFile(), e);
+                }
+            }
+            if (directory != null && admin != null && snapshot != null) {
+                deleteRemovedConfigurations(directory, files, admin, snapshot);
+            }
+        }
+    }
+
+    /**
+     * Deletes the configurations created from a file of the given directory that has been removed while the
+     * framework was stopped.
+     */
+    private void deleteRemovedConfigurations(File directory, Collection<File> files, ConfigurationAdmin admin,
+                                             DeploymentSnapshot snapshot) {
+        for (Map.Entry<File, String> entry : snapshot.getConfigurationPids(directory).entrySet()) {
+            File file = entry.getKey();
+            if (files.contains(file) || file.exists()) {
+                continue;
             }
+            try {
+                Configuration[] existing = admin.listConfigurations("(" + Constants.SERVICE_PID + "="
+                        + entry.getValue() + ")");
+                if (existing != null) {
+                    for (Configuration configuration : existing) {
+                        LOGGER.info("Deleting configuration {}, the file {} has been removed",
+                                configuration.getPid(), file.getAbsolutePath());
+                        configuration.delete();
+                    }
+                }
+            } catch (Exception e) {
+                LOGGER.error("Cannot delete configuration {}", entry.getValue(), e);
+            }
+            snapshot.remove(file);
         }
     }
 
@@ -147,14 +409,26 @@ public class ConfigDeployer extends ExtensionBasedDeployer implements BundleActi
      * @return the Configuration Admin service object, {@literal null} if not found.
      */
     private ConfigurationAdmin getConfigurationAdmin() {
-        // Should be there !
-        ServiceReference<ConfigurationAdmin> ref = context
-                .getServiceReference(ConfigurationAdmin.class);
-        if (ref == null) {
+        ServiceTracker<ConfigurationAdmin, ConfigurationAdmin> current = tracker;
+        return current == null ? null : current.getService();
+    }
+
+    /**
+     * Gets the configuration created from the given file during a previous run, when the warm restart is enabled.
+     * It avoids creating a new factory configuration on each restart.
+     *
+     * @param file  the configuration file
+     * @param admin the config admin service
+     * @return the configuration, {@literal null} if none
+     * @throws Exception if the configurations cannot be listed
+     */
+    private Configuration getRecordedConfiguration(File file, ConfigurationAdmin admin) throws Exception {
+        String pid = snapshot != null ? snapshot.getConfigurationPid(file) : null;
+        if (pid == null) {
             return null;
-        } else {
-            return context.getService(ref);
         }
+        Configuration[] existing = admin.listConfigurations("(" + Constants.SERVICE_PID + "=" + pid + ")");
+        return existing != null && existing.length > 0 ? existing[0] : null;
     }
 
     /**
@@ -181,24 +455,98 @@ public class ConfigDeployer extends ExtensionBasedDeployer implements BundleActi
     @Override
     public void onFileCreate(File file) {
         LOGGER.info("File creation event received for {}", file.getAbsoluteFile());
+        enqueue(file, false);
+    }
 
+    /** {@inheritDoc} */
+    @Override
+    public void onFileDelete(File file) {
+        enqueue(file, true);
+    }
+
+    /**
+     * Queues a file event. The event replaces the pending event of the same file, if any. Without update
+     * window, the event is applied immediately.
+     *
+     * @param file   the file
+     * @param delete whether the file has been deleted
+     */
+    private void enqueue(File file, boolean delete) {
+        ScheduledExecutorService executor = dispatcher;
+        if (executor == null) {
+            apply(new PendingUpdate(file, delete));
+            return;
+        }
+        synchronized (pending) {
+            String key = getKey(file);
+            if (pending.remove(key) != null) {
+                LOGGER.debug("Merging the pending update of {} with the new event", key);
+            }
+            pending.put(key, new PendingUpdate(file, delete));
+            if (!flushScheduled) {
+                flushScheduled = true;
+                executor.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        flush();
+                    }
+                }, window, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Computes the key of a file in the queue: its canonical path, as files with the same name may be deployed from
+     * different sub-directories.
+     */
+    private static String getKey(File file) {
+        try {
+            return file.getCanonicalPath();
+        } catch (IOException e) { //NOSONAR
+            return file.getAbsolutePath();
+        }
+    }
+
+    /**
+     * Applies the pending events.
+     */
+    private void flush() {
+        List<PendingUpdate> updates;
+        synchronized (pending) {
+            updates = new ArrayList<PendingUpdate>(pending.values());
+            pending.clear();
+            flushScheduled = false;
+        }
+        LOGGER.debug("Applying {} configuration update(s)", updates.size());
         synchronized (this) {
-            try {
-                ConfigurationAdmin admin = getConfigurationAdmin();
-                readAndApplyConfiguration(file, admin);
-            } catch (Exception e) {
-                LOGGER.error("Cannot find the configuration admin service", e);
+            for (PendingUpdate update : updates) {
+                apply(update);
             }
+        }
+    }
 
+    private void apply(PendingUpdate update) {
+        if (update.delete) {
+            deleteConfiguration(update.file);
+            return;
+        }
+        try {
+            readAndApplyConfiguration(update.file, getConfigurationAdmin());
+        } catch (Exception e) {
+            LOGGER.error("Cannot apply configuration from {}", update.file.getAbsoluteFile(), e);
         }
     }
 
-    /** {@inheritDoc} */
-    @Override
-    public void onFileDelete(File file) {
+    private void deleteConfiguration(File file) {
         synchronized (this) {
             Configuration configuration = configurations.remove(file);
-            if (!configuration.equals(UnmanagedConfiguration.INSTANCE)) {
+            if (configuration != null) {
+                applied.remove(configuration.getPid());
+            }
+            if (snapshot != null) {
+                snapshot.remove(file);
+            }
+            if (configuration != null && !configuration.equals(UnmanagedConfiguration.INSTANCE)) {
                 try {
                     LOGGER.info("Deleting configuration {}", configuration.getPid());
                     configuration.delete();
@@ -209,19 +557,42 @@ public class ConfigDeployer extends ExtensionBasedDeployer implements BundleActi
         }
     }
 
-    /** {@inheritDoc} */
+    /**
+     * A configuration admin is available: the configurations that could not be applied are pushed to it.
+     *
+     * @param reference the service reference
+     * @return the service object
+     */
     @Override
-    public void serviceChanged(ServiceEvent event) {
-        if (event.getType() == ServiceEvent.REGISTERED) {
-            ConfigurationAdmin admin = (ConfigurationAdmin) context.getService(event.getServiceReference());
-            processAllConfigurations(admin);
-        } else if (event.getType() == ServiceEvent.UNREGISTERING) {
-            removeAllConfigurations();
-        }
+    public ConfigurationAdmin addingService(ServiceReference<ConfigurationAdmin> reference) {
+        ConfigurationAdmin admin = context.getService(reference);
+        processAllConfigurations(admin);
+        return admin;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void modifiedService(ServiceReference<ConfigurationAdmin> reference, ConfigurationAdmin service) {
+        // Do nothing.
+    }
+
+    /**
+     * A configuration admin has left.
+     *
+     * @param reference the service reference
+     * @param service   the service object
+     */
+    @Override
+    public void removedService(ServiceReference<ConfigurationAdmin> reference, ConfigurationAdmin service) {
+        removeAllConfigurations();
+        context.ungetService(reference);
     }
 
     private void removeAllConfigurations() {
         synchronized (this) {
+            applied.clear();
             for (Map.Entry<File, Configuration> entry : configurations.entrySet()) {
                 if (entry.getValue().equals(UnmanagedConfiguration.INSTANCE)) {
                     try {
@@ -250,4 +621,17 @@ public class ConfigDeployer extends ExtensionBasedDeployer implements BundleActi
         }
     }
 
+    /**
+     * A queued file event.
+     */
+    private static final class PendingUpdate {
+
+        private final File file;
+        private final boolean delete;
+
+        PendingUpdate(File file, boolean delete) {
+            this.file = file;
+            this.delete = delete;
+        }
+    }
 }
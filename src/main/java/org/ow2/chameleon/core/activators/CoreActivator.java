@@ -23,19 +23,28 @@ import org.apache.commons.io.FileUtils;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleActivator;
 import org.osgi.framework.BundleContext;
-import org.osgi.framework.BundleException;
 import org.ow2.chameleon.core.utils.BundleHelper;
+import org.ow2.chameleon.core.utils.DeploymentSnapshot;
+import org.ow2.chameleon.core.utils.JarMetadataCache;
+import org.ow2.chameleon.core.utils.MonitorThreadFactory;
+import org.ow2.chameleon.core.utils.StartPlanner;
+import org.ow2.chameleon.core.utils.StartupProfiler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.*;
 
 /**
  * Core activator.
  * A bit different from the DirectoryBundleMonitor as it handles the interactive case.
+ * <p>
+ * When configured with more than one thread, the manifest checks and the installations are run concurrently. The
+ * installed bundles are started by a {@link StartPlanner}: by start level, then in dependency waves.
  *
  * @author The OW2 Chameleon Team
  * @version $Id: 1.0.4 $Id
@@ -44,18 +53,72 @@ public class CoreActivator implements BundleActivator {
 
     private final boolean interactive;
     private final File directory;
+    private final int threads;
+    private final StartPlanner planner;
+    private final JarMetadataCache cache;
+    private final DeploymentSnapshot snapshot;
+    private final StartupProfiler profiler;
     private static final Logger LOGGER = LoggerFactory.getLogger(CoreActivator.class);
+
+    /**
+     * The maximum time (in milliseconds) to wait for the completion of a refresh.
+     */
+    private static final long REFRESH_TIMEOUT = 60000L;
+
     private BundleContext context;
 
     /**
-     * Creates the core activator.
+     * The bundles restored by the framework and updated during the installation (warm restart).
+     */
+    private final List<Bundle> updated = Collections.synchronizedList(new ArrayList<Bundle>());
+
+    /**
+     * Creates the core activator. Bundles are installed sequentially, and started in dependency order.
      *
      * @param directory   the core directory
      * @param interactive flag enabling the interactive mode
      */
     public CoreActivator(File directory, boolean interactive) {
+        this(directory, interactive, 1);
+    }
+
+    /**
+     * Creates the core activator. Bundles are started in dependency waves, concurrently when more than one thread
+     * is used.
+     *
+     * @param directory   the core directory
+     * @param interactive flag enabling the interactive mode
+     * @param threads     the number of threads used to install and start the bundles, {@literal 1} to install
+     *                    and start them sequentially
+     * @since 1.10.10
+     */
+    public CoreActivator(File directory, boolean interactive, int threads) {
+        this(directory, interactive, threads, new StartPlanner(Collections.<String, Integer>emptyMap(), threads),
+                null, null, null);
+    }
+
+    /**
+     * Creates the core activator.
+     *
+     * @param directory   the core directory
+     * @param interactive flag enabling the interactive mode
+     * @param threads     the number of threads used to install the bundles, {@literal 1} to install them
+     *                    sequentially
+     * @param planner     the planner starting the installed bundles
+     * @param cache       the jar metadata cache used to check the jars, {@literal null} to read them
+     * @param snapshot    the deployment snapshot, {@literal null} if the warm restart is disabled
+     * @param profiler    the startup profiler recording the installations, {@literal null} if disabled
+     * @since 1.10.10
+     */
+    public CoreActivator(File directory, boolean interactive, int threads, StartPlanner planner,
+                         JarMetadataCache cache, DeploymentSnapshot snapshot, StartupProfiler profiler) {
         this.directory = directory;
         this.interactive = interactive;
+        this.threads = threads;
+        this.planner = planner;
+        this.cache = cache;
+        this.snapshot = snapshot;
+        this.profiler = profiler;
     }
 
     /**
@@ -63,25 +126,80 @@ public class CoreActivator implements BundleActivator {
      */
     public void installBundles() {
         Collection<File> files = FileUtils.listFiles(directory, new String[]{"jar"}, true);
-        List<Bundle> toStart = new ArrayList<Bundle>();
-        for (File file : files) {
-            if (BundleHelper.isBundle(file)) {
-                // Skip the interactive shell if disabled
-                if (isInteractiveShell(file) && !interactive) {
-                    continue;
-                }
+        List<Bundle> toStart;
+        if (threads > 1) {
+            toStart = installBundlesConcurrently(files);
+        } else {
+            toStart = new ArrayList<Bundle>();
+            for (File file : files) {
+                if (BundleHelper.isBundle(file, cache)) {
+                    // Skip the interactive shell if disabled
+                    if (isInteractiveShell(file) && !interactive) {
+                        continue;
+                    }
 
-                install(toStart, file);
+                    install(toStart, file);
+                }
             }
         }
 
-        for (Bundle bundle : toStart) {
-            try {
-                LOGGER.debug("Starting bundle {}", bundle.getSymbolicName());
-                bundle.start();
-            } catch (BundleException e) {
-                LOGGER.error("Error when start bundle {}", bundle.getSymbolicName(), e);
+        if (!updated.isEmpty()) {
+            // The restored bundles may have been resolved and started by the framework.
+            BundleHelper.refreshAndWait(context, new ArrayList<Bundle>(updated), REFRESH_TIMEOUT);
+            updated.clear();
+        }
+
+        planner.start(context, toStart, toStart);
+    }
+
+    /**
+     * Installs the bundles concurrently.
+     *
+     * @param files the candidate files
+     * @return the installed bundles to start
+     */
+    private List<Bundle> installBundlesConcurrently(Collection<File> files) {
+        ExecutorService pool = Executors.newFixedThreadPool(threads, new MonitorThreadFactory("install"));
+        try {
+            List<Future<Bundle>> installations = new ArrayList<Future<Bundle>>();
+            for (final File file : files) {
+                installations.add(pool.submit(new Callable<Bundle>() {
+                    @Override
+                    public Bundle call() {
+                        // Skip the interactive shell if disabled
+                        if (!BundleHelper.isBundle(file, cache) || isInteractiveShell(file) && !interactive) {
+                            return null;
+                        }
+                        List<Bundle> installed = new ArrayList<Bundle>(1);
+                        install(installed, file);
+                        return installed.isEmpty() ? null : installed.get(0);
+                    }
+                }));
+            }
+            // Keep the order of the files.
+            List<Bundle> installed = new ArrayList<Bundle>();
+            for (Future<Bundle> installation : installations) {
+                Bundle bundle = await(installation);
+                if (bundle != null) {
+                    installed.add(bundle);
+                }
             }
+            return installed;
+
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static Bundle await(Future<Bundle> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while installing the core bundles", e);
+        } catch (ExecutionException e) {
+            LOGGER.error("Error when installing or starting a core bundle", e.getCause());
+            return null;
         }
     }
 
@@ -92,14 +210,19 @@ public class CoreActivator implements BundleActivator {
      * @param file    the bundle file
      */
     private void install(List<Bundle> toStart, File file) {
+        StartupProfiler.Span span = StartupProfiler.begin(profiler, file.getName(), StartupProfiler.INSTALL);
         try {
             LOGGER.debug("Installing bundle from {}", file.getAbsolutePath());
-            Bundle bundle = context.installBundle("reference:" + file.toURI().toURL().toExternalForm());
+            String location = "reference:" + file.toURI().toURL().toExternalForm();
+            // Reuse the bundle restored by the framework (warm restart) if the file has not changed.
+            Bundle bundle = BundleHelper.install(context, file, location, updated, snapshot);
             if (!BundleHelper.isFragment(bundle)) {
                 toStart.add(bundle);
             }
         } catch (Exception e) {
             LOGGER.error("Error when install bundle from {}", file.getAbsolutePath(), e);
+        } finally {
+            span.end();
         }
     }
 
@@ -23,7 +23,6 @@ import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.filefilter.TrueFileFilter;
 import org.apache.commons.io.monitor.FileAlterationListenerAdaptor;
-import org.apache.commons.io.monitor.FileAlterationMonitor;
 import org.apache.commons.io.monitor.FileAlterationObserver;
 import org.osgi.framework.BundleActivator;
 import org.osgi.framework.BundleContext;
@@ -31,20 +30,48 @@ import org.osgi.framework.ServiceReference;
 import org.osgi.framework.ServiceRegistration;
 import org.osgi.util.tracker.ServiceTracker;
 import org.osgi.util.tracker.ServiceTrackerCustomizer;
+import org.ow2.chameleon.core.services.BatchDeployer;
 import org.ow2.chameleon.core.services.Deployer;
+import org.ow2.chameleon.core.services.ReconcilingDeployer;
 import org.ow2.chameleon.core.services.Watcher;
+import org.ow2.chameleon.core.utils.Checksums;
+import org.ow2.chameleon.core.utils.FileChangeMonitor;
+import org.ow2.chameleon.core.utils.FileChangeSet;
 import org.ow2.chameleon.core.utils.MonitorThreadFactory;
+import org.ow2.chameleon.core.utils.StartupProfiler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Monitors a directory.
  * It tracks all deployer services exposed in the framework and delegate the file events to the adequate deployer.
+ * <p/>
+ * File events are collected during each check cycle and coalesced per file before being delivered to the
+ * deployers. When a quiet period is configured, the delivery is delayed until no more events have been received
+ * during this period, so a large copy is handed to the deployers as a single batch. {@link BatchDeployer}s receive
+ * the batch at once, while other deployers are notified file per file.
+ * <p/>
+ * When the content digest is enabled, a CRC32 checksum of each file is recorded, and change events for files whose
+ * content is byte-identical to the last notified content are dropped.
+ * <p/>
+ * When a deployer is opened on a directory, {@link ReconcilingDeployer}s also receive the directory, so they can
+ * reconcile its content with the state restored from a previous run.
  *
  * @author The OW2 Chameleon Team
  * @version $Id: 1.0.4 $Id
@@ -62,7 +89,7 @@ public class DirectoryMonitor implements BundleActivator, Watcher, ServiceTracke
     /**
      * A monitor listening file changes.
      */
-    private Map<File, FileAlterationMonitor> monitors = new LinkedHashMap<File, FileAlterationMonitor>();
+    private Map<File, FileChangeMonitor> monitors = new LinkedHashMap<File, FileChangeMonitor>();
     /**
      * The lock avoiding concurrent modifications of the deployers map.
      */
@@ -82,6 +109,106 @@ public class DirectoryMonitor implements BundleActivator, Watcher, ServiceTracke
      */
     private ServiceRegistration<Watcher> reg;
 
+    /**
+     * The time (in milliseconds) without file events to wait before notifying the deployers. {@literal 0} means
+     * that the deployers are notified at the end of each check cycle.
+     */
+    private final long quietPeriod;
+
+    /**
+     * The scheduler used to deliver the batches once the quiet period has elapsed, {@literal null} if there is
+     * no quiet period or if the monitor is not started.
+     */
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * The number of threads used to check which files are accepted by the deployers when they are opened.
+     */
+    private final int scanThreads;
+
+    /**
+     * Whether the content of the files is digested to drop the change events not modifying the content.
+     */
+    private final boolean digest;
+
+    /**
+     * The startup profiler, {@literal null} if disabled.
+     */
+    private final StartupProfiler profiler;
+
+    /**
+     * The CRC32 checksum of the last content notified to the deployers, per file. Only used if {@link #digest} is
+     * enabled.
+     */
+    private final ConcurrentMap<File, Long> digests = new ConcurrentHashMap<File, Long>();
+
+    /**
+     * The number of change events dropped because the content of the file did not change.
+     */
+    private final AtomicLong suppressed = new AtomicLong();
+
+    /**
+     * Creates a directory monitor notifying the deployers at the end of each check cycle.
+     */
+    public DirectoryMonitor() {
+        this(0L);
+    }
+
+    /**
+     * Creates a directory monitor waiting for the given quiet period before notifying the deployers.
+     *
+     * @param quietPeriod the time in milliseconds without file events before notifying the deployers, {@literal 0}
+     *                    to notify them at the end of each check cycle.
+     */
+    public DirectoryMonitor(long quietPeriod) {
+        this(quietPeriod, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a directory monitor waiting for the given quiet period before notifying the deployers.
+     *
+     * @param quietPeriod the time in milliseconds without file events before notifying the deployers, {@literal 0}
+     *                    to notify them at the end of each check cycle.
+     * @param scanThreads the number of threads used to check the files accepted by the deployers when they are
+     *                    opened, {@literal 1} to check them sequentially.
+     */
+    public DirectoryMonitor(long quietPeriod, int scanThreads) {
+        this(quietPeriod, scanThreads, false);
+    }
+
+    /**
+     * Creates a directory monitor.
+     *
+     * @param quietPeriod the time in milliseconds without file events before notifying the deployers, {@literal 0}
+     *                    to notify them at the end of each check cycle.
+     * @param scanThreads the number of threads used to check the files accepted by the deployers when they are
+     *                    opened, {@literal 1} to check them sequentially.
+     * @param digest      whether the change events of files whose content has not changed are dropped (relies on a
+     *                    checksum of the file content).
+     */
+    public DirectoryMonitor(long quietPeriod, int scanThreads, boolean digest) {
+        this(quietPeriod, scanThreads, digest, null);
+    }
+
+    /**
+     * Creates a directory monitor.
+     *
+     * @param quietPeriod the time in milliseconds without file events before notifying the deployers, {@literal 0}
+     *                    to notify them at the end of each check cycle.
+     * @param scanThreads the number of threads used to check the files accepted by the deployers when they are
+     *                    opened, {@literal 1} to check them sequentially.
+     * @param digest      whether the change events of files whose content has not changed are dropped (relies on a
+     *                    checksum of the file content).
+     * @param profiler    the startup profiler recording the opening of the deployers, {@literal null} if disabled
+     * @since 1.10.10
+     */
+    public DirectoryMonitor(long quietPeriod, int scanThreads, boolean digest, StartupProfiler profiler) {
+        this.quietPeriod = quietPeriod;
+        this.scanThreads = Math.max(1, scanThreads);
+        this.digest = digest;
+        this.profiler = profiler;
+    }
+
     /**
      * Acquires the write lock only and only if the write lock is not already held by the current thread.
      *
@@ -145,9 +272,14 @@ public class DirectoryMonitor implements BundleActivator, Watcher, ServiceTracke
         try {
             acquireWriteLockIfNotHeld();
 
+            if (quietPeriod > 0) {
+                scheduler = Executors.newSingleThreadScheduledExecutor(
+                        new MonitorThreadFactory("batches"));
+            }
+
             // Arrives will be blocked until we release the write lock
             this.tracker.open();
-            for (Map.Entry<File, FileAlterationMonitor> entry : monitors.entrySet()) {
+            for (Map.Entry<File, FileChangeMonitor> entry : monitors.entrySet()) {
                 if (entry.getValue() != null) {
                     LOGGER.info("Starting file monitoring for {}", entry.getKey().getName());
                     try {
@@ -195,7 +327,7 @@ public class DirectoryMonitor implements BundleActivator, Watcher, ServiceTracke
                 reg.unregister();
                 reg = null;
             }
-            for (Map.Entry<File, FileAlterationMonitor> entry : monitors.entrySet()) {
+            for (Map.Entry<File, FileChangeMonitor> entry : monitors.entrySet()) {
                 if (entry.getValue() != null) {
                     LOGGER.debug("Stopping file monitoring of {}", entry.getKey().getAbsolutePath());
                     try {
@@ -211,6 +343,12 @@ public class DirectoryMonitor implements BundleActivator, Watcher, ServiceTracke
                 }
             }
             monitors.clear();
+            if (scheduler != null) {
+                // Pending batches are dropped, the deployers are closed right after.
+                List<Runnable> pending = scheduler.shutdownNow();
+                LOGGER.debug("{} pending batch(es) discarded", pending.size());
+                scheduler = null;
+            }
             this.context = null;
         } finally {
             releaseWriteLockIfHeld();
@@ -233,9 +371,14 @@ public class DirectoryMonitor implements BundleActivator, Watcher, ServiceTracke
             deployers.add(deployer);
             for (File directory : monitors.keySet().toArray(new File[monitors.size()])) {
                 Collection<File> files = FileUtils.listFiles(directory, null, true);
-                List<File> accepted = getAcceptedFilesByTheDeployer(files, deployer);
+                Map<Deployer, List<File>> scanned = scan(files, Collections.singletonList(deployer));
+                if (scanned == null) {
+                    LOGGER.error("Interrupted while scanning {}, the deployer {} is not opened", directory, deployer);
+                    break;
+                }
+                List<File> accepted = scanned.get(deployer);
                 LOGGER.info("Opening deployer {} for directory {}.", deployer, directory.getAbsolutePath());
-                deployer.open(accepted);
+                open(deployer, directory, accepted);
             }
         } finally {
             releaseWriteLockIfHeld();
@@ -265,19 +408,66 @@ public class DirectoryMonitor implements BundleActivator, Watcher, ServiceTracke
         }
     }
 
-    private List<Deployer> getDeployersAcceptingFile(File file) {
-        List<Deployer> depl = new ArrayList<Deployer>();
+    private List<Deployer> getDeployers() {
         try {
             acquireReadLockIfNotHeld();
-            for (Deployer deployer : deployers) {
-                if (deployer.accept(file)) {
-                    depl.add(deployer);
-                }
-            }
+            return new ArrayList<Deployer>(deployers);
         } finally {
             releaseReadLockIfHeld();
         }
-        return depl;
+    }
+
+    /**
+     * Notifies the deployers of a batch of changes. Batch deployers receive all the files they accept at once,
+     * other deployers receive one callback per file, in the order of the events.
+     *
+     * @param batch the coalesced changes
+     */
+    private void notifyDeployers(FileChangeSet batch) {
+        // Callbacks are called outside the protected region.
+        for (Deployer deployer : getDeployers()) {
+            if (deployer instanceof BatchDeployer) {
+                List<File> created = getAcceptedFilesByTheDeployer(batch.getCreated(), deployer);
+                List<File> changed = getAcceptedFilesByTheDeployer(batch.getChanged(), deployer);
+                List<File> deleted = getAcceptedFilesByTheDeployer(batch.getDeleted(), deployer);
+                if (created.isEmpty() && changed.isEmpty() && deleted.isEmpty()) {
+                    continue;
+                }
+                LOGGER.debug("Deployer {} handling a batch of {} created, {} changed and {} deleted file(s)",
+                        deployer, created.size(), changed.size(), deleted.size());
+                try {
+                    ((BatchDeployer) deployer).onFilesChanged(created, changed, deleted);
+                } catch (Exception e) { //NOSONAR
+                    LOGGER.error("Error during the management of a batch of files by {}", deployer, e);
+                }
+            } else {
+                for (Map.Entry<File, FileChangeSet.Kind> entry : batch.getChanges().entrySet()) {
+                    if (deployer.accept(entry.getKey())) {
+                        notifyDeployer(deployer, entry.getKey(), entry.getValue());
+                    }
+                }
+            }
+        }
+    }
+
+    private void notifyDeployer(Deployer deployer, File file, FileChangeSet.Kind kind) {
+        LOGGER.debug("Deployer {} handling {} of {}", deployer, kind, file.getName());
+        try {
+            switch (kind) {
+                case CREATED:
+                    deployer.onFileCreate(file);
+                    break;
+                case CHANGED:
+                    deployer.onFileChange(file);
+                    break;
+                default:
+                    deployer.onFileDelete(file);
+                    break;
+            }
+        } catch (Exception e) { //NOSONAR
+            LOGGER.error("Error during the management of {} ({}) by {}",
+                    file.getAbsolutePath(), kind, deployer, e);
+        }
     }
 
     /**
@@ -319,7 +509,7 @@ public class DirectoryMonitor implements BundleActivator, Watcher, ServiceTracke
                 }
             } else {
                 // Check whether we are monitoring a parent directory
-                for (Map.Entry<File, FileAlterationMonitor> entry : monitors.entrySet()) {
+                for (Map.Entry<File, FileChangeMonitor> entry : monitors.entrySet()) {
                     File dir = entry.getKey();
                     if (FilenameUtils.directoryContains(dir.getCanonicalPath(), directory.getCanonicalPath())
                             && entry.getValue() != null) {
@@ -341,11 +531,23 @@ public class DirectoryMonitor implements BundleActivator, Watcher, ServiceTracke
     /**
      * {@inheritDoc}
      * <p/>
-     * Adds a directory to the watcher. If `polling` is not -1, the directory is monitored,
+     * Adds a directory to the watcher. If `polling` is not -1, the directory is monitored using periodic polling,
      * otherwise only the initial provisioning is done.
      */
     @Override
     public boolean add(File directory, long polling) {
+        return add(directory, polling, false);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * Adds a directory to the watcher. If `polling` is not -1, the directory is monitored,
+     * otherwise only the initial provisioning is done. When `nativeWatch` is enabled, the file system notifications
+     * are used instead of polling (if supported).
+     */
+    @Override
+    public boolean add(File directory, long polling, boolean nativeWatch) {
         try {
             acquireWriteLockIfNotHeld();
             final int status = isDirectoryAlreadyMonitored(directory);
@@ -388,7 +590,7 @@ public class DirectoryMonitor implements BundleActivator, Watcher, ServiceTracke
                 // if status is in {2, 3}, set the file alteration monitor
 
                 // We observe all files as deployers will filter out undesirable files.
-                final FileAlterationMonitor monitor = createFileAlterationMonitor(directory, polling);
+                final FileChangeMonitor monitor = createFileChangeMonitor(directory, polling, nativeWatch);
 
                 // Are we started or not ?
                 if (context != null) {
@@ -406,13 +608,13 @@ public class DirectoryMonitor implements BundleActivator, Watcher, ServiceTracke
         }
     }
 
-    private FileAlterationMonitor createFileAlterationMonitor(File directory, long polling) {
+    private FileChangeMonitor createFileChangeMonitor(File directory, long polling, boolean nativeWatch) {
         FileAlterationObserver observer = new FileAlterationObserver(directory, TrueFileFilter.INSTANCE);
         observer.addListener(new FileMonitor(directory));
-        LOGGER.debug("Creating file alteration monitor for " + directory.getAbsolutePath() + " with a polling period " +
-                "of " + polling);
-        final FileAlterationMonitor monitor = new FileAlterationMonitor(polling, observer);
-        monitor.setThreadFactory(new MonitorThreadFactory(directory));
+        LOGGER.debug("Creating file monitor for " + directory.getAbsolutePath() + " with a polling period " +
+                "of " + polling + (nativeWatch ? " (native mode)" : ""));
+        final FileChangeMonitor monitor = new FileChangeMonitor(observer, polling, nativeWatch,
+                new MonitorThreadFactory(directory));
         monitors.put(directory, monitor);
         return monitor;
     }
@@ -424,13 +626,154 @@ public class DirectoryMonitor implements BundleActivator, Watcher, ServiceTracke
      */
     private void openDeployers(File directory) {
         Collection<File> files = FileUtils.listFiles(directory, null, true);
+        Map<Deployer, List<File>> accepted = scan(files, deployers);
+        if (accepted == null) {
+            LOGGER.error("Interrupted while scanning {}, the deployers are not opened", directory.getAbsolutePath());
+            return;
+        }
         for (Deployer deployer : deployers) {
-            List<File> accepted = getAcceptedFilesByTheDeployer(files, deployer);
             LOGGER.info("Opening deployer {} for directory {}.", deployer, directory.getAbsolutePath());
+            StartupProfiler.Span span = StartupProfiler.begin(profiler,
+                    "open " + deployer + " on " + directory.getName(), StartupProfiler.PHASE);
+            try {
+                open(deployer, directory, accepted.get(deployer));
+            } finally {
+                span.end();
+            }
+        }
+    }
+
+    /**
+     * Opens a deployer on the given directory. {@link ReconcilingDeployer}s receive the directory.
+     *
+     * @param deployer  the deployer
+     * @param directory the directory
+     * @param accepted  the files accepted by the deployer
+     */
+    private static void open(Deployer deployer, File directory, List<File> accepted) {
+        if (deployer instanceof ReconcilingDeployer) {
+            ((ReconcilingDeployer) deployer).open(directory, accepted);
+        } else {
             deployer.open(accepted);
         }
     }
 
+    /**
+     * Computes the files accepted by each deployer. The directory is walked once, and the checks are run on a
+     * bounded pool of threads, as they may require opening the files (to read a jar manifest for instance). The
+     * accepted files are returned in the order of the given collection.
+     *
+     * @param files         the files
+     * @param deployersList the deployers
+     * @return the list of accepted files per deployer (potentially empty), {@literal null} if the thread was
+     * interrupted before all the files were checked (the interrupt status is restored)
+     */
+    private Map<Deployer, List<File>> scan(Collection<File> files, final Collection<Deployer> deployersList) {
+        Map<Deployer, List<File>> accepted = new LinkedHashMap<Deployer, List<File>>();
+        for (Deployer deployer : deployersList) {
+            accepted.put(deployer, new ArrayList<File>());
+        }
+        if (scanThreads == 1 || files.size() < 2 || deployersList.isEmpty()) {
+            for (File file : files) {
+                recordInitialDigest(file);
+            }
+            for (Deployer deployer : deployersList) {
+                accepted.get(deployer).addAll(getAcceptedFilesByTheDeployer(files, deployer));
+            }
+            return accepted;
+        }
+
+        final long begin = System.currentTimeMillis();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(scanThreads, files.size()),
+                new MonitorThreadFactory("scan"));
+        try {
+            List<Future<List<Deployer>>> results = new ArrayList<Future<List<Deployer>>>(files.size());
+            for (final File file : files) {
+                results.add(executor.submit(new Callable<List<Deployer>>() {
+                    @Override
+                    public List<Deployer> call() {
+                        recordInitialDigest(file);
+                        List<Deployer> accepting = new ArrayList<Deployer>();
+                        for (Deployer deployer : deployersList) {
+                            if (deployer.accept(file)) {
+                                accepting.add(deployer);
+                            }
+                        }
+                        return accepting;
+                    }
+                }));
+            }
+
+            Iterator<File> iterator = files.iterator();
+            for (Future<List<Deployer>> result : results) {
+                File file = iterator.next();
+                try {
+                    for (Deployer deployer : result.get()) {
+                        accepted.get(deployer).add(file);
+                    }
+                } catch (ExecutionException e) {
+                    LOGGER.error("Cannot determine whether {} is accepted by the deployers", file, e.getCause());
+                }
+            }
+        } catch (InterruptedException e) { //NOSONAR the interrupt status is restored
+            Thread.currentThread().interrupt();
+            // The accepted lists are partial, the deployers must not be opened with them.
+            return null;
+        } finally {
+            executor.shutdownNow();
+        }
+        LOGGER.debug("{} files scanned in {} ms using {} threads", files.size(),
+                System.currentTimeMillis() - begin, scanThreads);
+        return accepted;
+    }
+
+    /**
+     * Records the digest of a file found when opening the deployers, unless already known.
+     *
+     * @param file the file
+     */
+    private void recordInitialDigest(File file) {
+        if (digest && !digests.containsKey(file)) {
+            digests.putIfAbsent(file, computeDigest(file));
+        }
+    }
+
+    /**
+     * Computes the digest of the given file.
+     *
+     * @param file the file
+     * @return the digest, {@literal -1} if the file cannot be read
+     */
+    private static long computeDigest(File file) {
+        try {
+            return Checksums.crc32(file);
+        } catch (IOException e) {
+            LOGGER.debug("Cannot compute the checksum of {}", file, e);
+            return -1L;
+        }
+    }
+
+    /**
+     * Checks whether the content of the file has changed since the last notification, and records the new digest.
+     *
+     * @param file the file
+     * @return {@literal true} if the content has changed (or is unknown), {@literal false} if the content is
+     * byte-identical to the last notified content
+     */
+    private boolean hasContentChanged(File file) {
+        long crc = computeDigest(file);
+        Long previous = digests.put(file, crc);
+        return crc == -1L || previous == null || previous != crc;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getSuppressedEventCount() {
+        return suppressed.get();
+    }
+
     /**
      * {@inheritDoc}
      * <p/>
@@ -440,7 +783,7 @@ public class DirectoryMonitor implements BundleActivator, Watcher, ServiceTracke
     public boolean removeAndStopIfNeeded(File directory) {
         try {
             acquireWriteLockIfNotHeld();
-            FileAlterationMonitor monitor = monitors.remove(directory);
+            FileChangeMonitor monitor = monitors.remove(directory);
             if (monitor != null) {
                 try {
                     monitor.stop();
@@ -463,6 +806,21 @@ public class DirectoryMonitor implements BundleActivator, Watcher, ServiceTracke
 
         private final File directory;
 
+        /**
+         * The changes not yet delivered to the deployers.
+         */
+        private final FileChangeSet pending = new FileChangeSet();
+
+        /**
+         * Whether events have been received during the current check cycle.
+         */
+        private boolean received;
+
+        /**
+         * The scheduled delivery of the pending changes, if any.
+         */
+        private ScheduledFuture<?> delivery;
+
         /**
          * Creates a new file monitor notified whenever a file from the given directory is created, updated, or deleted.
          *
@@ -473,54 +831,74 @@ public class DirectoryMonitor implements BundleActivator, Watcher, ServiceTracke
         }
 
         @Override
-        public void onFileCreate(File file) {
+        public synchronized void onFileCreate(File file) {
             LOGGER.info("File " + file + " created in " + directory);
-            List<Deployer> depl = getDeployersAcceptingFile(file);
-
-            // Callback called outside the protected region.
-            LOGGER.debug("Deployer handling creation of " + file.getName() + " : " + depl);
-            for (Deployer deployer : depl) {
-                try {
-                    deployer.onFileCreate(file);
-                } catch (Exception e) { //NOSONAR
-                    LOGGER.error("Error during the management of {} (creation) by {}",
-                            file.getAbsolutePath(), deployer, e);
-                }
+            if (digest) {
+                digests.put(file, computeDigest(file));
             }
+            pending.created(file);
+            received = true;
         }
 
         @Override
-        public void onFileChange(File file) {
-            LOGGER.info("File " + file + " from " + directory + " changed");
-
-            List<Deployer> depl = getDeployersAcceptingFile(file);
-
-            LOGGER.debug("Deployers handling change in " + file.getName() + " : " + depl);
-            for (Deployer deployer : depl) {
-                try {
-                    deployer.onFileChange(file);
-                } catch (Exception e) { //NOSONAR
-                    LOGGER.error("Error during the management of {} (change) by {}",
-                            file.getAbsolutePath(), deployer, e);
-                }
+        public synchronized void onFileChange(File file) {
+            if (digest && !hasContentChanged(file)) {
+                suppressed.incrementAndGet();
+                LOGGER.debug("File {} from {} touched, but its content has not changed - ignoring", file, directory);
+                return;
             }
+            LOGGER.info("File " + file + " from " + directory + " changed");
+            pending.changed(file);
+            received = true;
         }
 
         @Override
-        public void onFileDelete(File file) {
+        public synchronized void onFileDelete(File file) {
             LOGGER.info("File " + file + " deleted from " + directory);
+            digests.remove(file);
+            pending.deleted(file);
+            received = true;
+        }
 
-            List<Deployer> depl = getDeployersAcceptingFile(file);
-
-            LOGGER.debug("Deployer handling deletion of " + file.getName() + " : " + depl);
-            for (Deployer deployer : depl) {
-                try {
-                    deployer.onFileDelete(file);
-                } catch (Exception e) {  //NOSONAR
-                    LOGGER.error("Error during the management of {} (deletion) by {}",
-                            file.getAbsolutePath(), deployer, e);
+        /**
+         * End of a check cycle, delivers the pending changes or (re)schedules their delivery.
+         *
+         * @param observer the observer
+         */
+        @Override
+        public void onStop(FileAlterationObserver observer) {
+            synchronized (this) {
+                if (!received) {
+                    return;
+                }
+                received = false;
+                ScheduledExecutorService executor = scheduler;
+                if (executor != null) {
+                    // Events have been received, restart the quiet period.
+                    if (delivery != null) {
+                        delivery.cancel(false);
+                    }
+                    delivery = executor.schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            deliver();
+                        }
+                    }, quietPeriod, TimeUnit.MILLISECONDS);
+                    return;
                 }
             }
+            deliver();
+        }
+
+        private void deliver() {
+            FileChangeSet batch;
+            synchronized (this) {
+                batch = pending.drain();
+                delivery = null;
+            }
+            if (!batch.isEmpty()) {
+                notifyDeployers(batch);
+            }
         }
     }
 }
@@ -19,36 +19,92 @@
  */
 package org.ow2.chameleon.core.activators;
 
-import org.apache.felix.ipojo.extender.queue.QueueService;
-import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
-import org.osgi.framework.InvalidSyntaxException;
-import org.osgi.framework.ServiceReference;
 import org.ow2.chameleon.core.services.AbstractStabilityChecker;
 import org.ow2.chameleon.core.services.StabilityResult;
-import org.ow2.chameleon.core.utils.BundleHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.lang.reflect.Method;
-import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 /**
- * Stability check verifying that we reach stability in term of services.
+ * Stability check verifying that the iPOJO processing queues are empty.
  * <p>
- * It checks that there are not service that have appeared or disappeared on a time window.
+ * When a {@link StabilityMonitor} is given, the checker waits for the queue activity instead of sleeping between
+ * attempts.
+ * <p>
+ * Once {@linkplain #open() opened}, the checker tracks the queues in an {@link IPojoQueueRegistry} instead of
+ * looking them up on every check.
  */
 public class IPojoProcessingStabilityChecker extends AbstractStabilityChecker {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(IPojoProcessingStabilityChecker.class);
 
     private final BundleContext context;
+    private final StabilityMonitor monitor;
+
+    /**
+     * The registry of the queues, {@literal null} if the checker is not opened.
+     */
+    private volatile IPojoQueueRegistry registry;
 
     public IPojoProcessingStabilityChecker(BundleContext context) {
+        this(context, null);
+    }
+
+    /**
+     * Creates a new instance of {@link IPojoProcessingStabilityChecker} relying on the given monitor to be
+     * notified of the queue activity.
+     *
+     * @param context the bundle context
+     * @param monitor the stability monitor, {@literal null} to poll the queues
+     */
+    public IPojoProcessingStabilityChecker(BundleContext context, StabilityMonitor monitor) {
         this.context = context;
+        this.monitor = monitor;
+    }
+
+    /**
+     * Starts tracking the iPOJO queues.
+     *
+     * @since 1.10.10
+     */
+    public void open() {
+        IPojoQueueRegistry queues = new IPojoQueueRegistry(context);
+        queues.open();
+        registry = queues;
+    }
+
+    /**
+     * Stops tracking the iPOJO queues, and releases them.
+     *
+     * @since 1.10.10
+     */
+    public void close() {
+        IPojoQueueRegistry queues = registry;
+        registry = null;
+        if (queues != null) {
+            queues.close();
+        }
+    }
+
+    /**
+     * Gets the gauges of the iPOJO queues, giving the number of current and waiting jobs of each queue.
+     *
+     * @return the gauges, empty if the checker is neither opened nor relying on a monitor
+     * @since 1.10.10
+     */
+    public List<QueueGauge> getQueueGauges() {
+        if (monitor != null) {
+            return monitor.getQueueGauges();
+        }
+        IPojoQueueRegistry queues = registry;
+        if (queues != null) {
+            return queues.getGauges();
+        }
+        return Collections.emptyList();
     }
 
     /**
@@ -80,59 +136,42 @@ public class IPojoProcessingStabilityChecker extends AbstractStabilityChecker {
     public StabilityResult check() {
         int count = 0;
         int attempts = getDefaultNumberOfAttempts();
-        try {
-            Collection<ServiceReference<QueueService>> refs = context.getServiceReferences(QueueService.class, null);
-            List<Object> queues = new ArrayList<Object>();
-            for (ServiceReference<QueueService> ref : refs) {
-                queues.add(context.getService(ref));
+        if (monitor != null) {
+            if (monitor.awaitEmptyQueues(getTimeout(attempts))) {
+                return StabilityResult.stable();
             }
+            LOGGER.error("iPOJO processing queues are not empty after {} ms: {}", getTimeout(attempts),
+                    monitor.getQueueGauges());
+            return StabilityResult.unstable("iPOJO Processing Queues are not empty: " + monitor.getQueueGauges());
+        }
+        IPojoQueueRegistry queues = registry;
+        final boolean temporary = queues == null;
+        if (temporary) {
+            // Not opened, track the queues for this check only.
+            queues = new IPojoQueueRegistry(context);
+            queues.open();
+        }
+        try {
             boolean emptiness = false;
 
             while (!emptiness && count < attempts) {
-                emptiness = areAllQueuesEmpty(queues);
+                emptiness = queues.areQueuesEmpty();
                 if (!emptiness) {
                     grace(attempts, TimeUnit.MILLISECONDS);
                 }
                 count++;
             }
 
-        } catch (InvalidSyntaxException e) { //NOSONAR
-            // Cannot happen, filter is null
-        }
-
-        if (count == attempts) {
-            LOGGER.error("iPOJO processing queues are not empty after {} tries", attempts);
-            return StabilityResult.unstable("iPOJO Processing Queues are not empty");
-        }
-        return StabilityResult.stable();
-    }
-
-
-    /**
-     * Checks whether or not all the iPOJO processing queue are empty or not.
-     * Metrics are retrieved using reflection to avoid issues when iPOJO is in the classpath.
-     *
-     * @param queues the queues
-     * @return {@literal true} if all the iPOJO processing queues are empty, {@literal false} otherwise.
-     */
-    private static boolean areAllQueuesEmpty(List<Object> queues) {
-        boolean empty = true;
-
-        for (Object q : queues) {
-            try {
-                Method currents = q.getClass().getMethod("getCurrents");
-                Method waiters = q.getClass().getMethod("getWaiters");
-
-                int cur = (Integer) currents.invoke(q);
-                int wai = (Integer) waiters.invoke(q);
-
-                LOGGER.debug("queue: " + q + " #current : " + cur + " / #waiting : " + wai);
-                empty = empty && cur == 0 && wai == 0;
-            } catch (Exception e) {
-                LOGGER.error("Cannot analyze queue's metrics for {}", q, e);
-                throw new IllegalArgumentException("Cannot analyze queue's metrics", e);
+            if (count == attempts) {
+                LOGGER.error("iPOJO processing queues are not empty after {} tries: {}", attempts,
+                        queues.getGauges());
+                return StabilityResult.unstable("iPOJO Processing Queues are not empty: " + queues.getGauges());
+            }
+            return StabilityResult.stable();
+        } finally {
+            if (temporary) {
+                queues.close();
             }
         }
-        return empty;
     }
 }
@@ -0,0 +1,242 @@
+/*
+ * #%L
+ * OW2 Chameleon - Core
+ * %%
+ * Copyright (C) 2009 - 2014 OW2 Chameleon
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.ow2.chameleon.core.activators;
+
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceReference;
+import org.osgi.util.tracker.ServiceTracker;
+import org.osgi.util.tracker.ServiceTrackerCustomizer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tracks the iPOJO processing queues, and gives access to their {@link QueueGauge}. The queue services are released
+ * when they are withdrawn or when the registry is closed.
+ * <p>
+ * When an activity callback is given, a listener is registered on each queue (using a dynamic proxy, as the iPOJO
+ * classes used by the framework are not necessarily the ones from the classpath), and the callback is invoked every
+ * time a job is enlisted, started, executed or failed, and when a queue arrives.
+ *
+ * @author The OW2 Chameleon Team
+ * @version $Id: 1.0.4 $Id
+ * @since 1.10.10
+ */
+public class IPojoQueueRegistry {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(IPojoQueueRegistry.class);
+
+    private final BundleContext context;
+
+    /**
+     * The gauges of the tracked queues, by service reference.
+     */
+    private final Map<ServiceReference<Object>, QueueGauge> gauges =
+            new ConcurrentHashMap<ServiceReference<Object>, QueueGauge>();
+
+    /**
+     * The listeners registered on the tracked queues, by service reference.
+     */
+    private final Map<ServiceReference<Object>, Object> listeners =
+            new ConcurrentHashMap<ServiceReference<Object>, Object>();
+
+    /**
+     * The callback invoked on the queue activity, {@literal null} if the queues are not listened.
+     */
+    private final Runnable activity;
+
+    private ServiceTracker<Object, QueueGauge> tracker;
+
+    /**
+     * Creates the registry.
+     *
+     * @param context the bundle context
+     */
+    public IPojoQueueRegistry(BundleContext context) {
+        this(context, null);
+    }
+
+    /**
+     * Creates the registry, listening to the activity of the queues.
+     *
+     * @param context  the bundle context
+     * @param activity the callback invoked on the queue activity, {@literal null} to not listen to the queues
+     */
+    public IPojoQueueRegistry(BundleContext context, Runnable activity) {
+        this.context = context;
+        this.activity = activity;
+    }
+
+    /**
+     * Starts tracking the queues.
+     */
+    public synchronized void open() {
+        if (tracker == null) {
+            tracker = new ServiceTracker<Object, QueueGauge>(context, StabilityMonitor.QUEUE_SERVICE,
+                    new QueueCustomizer());
+            tracker.open(true);
+        }
+    }
+
+    /**
+     * Stops tracking the queues, and releases them.
+     */
+    public synchronized void close() {
+        if (tracker != null) {
+            tracker.close();
+            tracker = null;
+        }
+        gauges.clear();
+        listeners.clear();
+    }
+
+    /**
+     * @return the gauges of the tracked queues
+     */
+    public List<QueueGauge> getGauges() {
+        return new ArrayList<QueueGauge>(gauges.values());
+    }
+
+    /**
+     * Checks whether all the tracked queues are empty.
+     *
+     * @return {@literal true} if all the queues are empty (or if there are no queue).
+     */
+    public boolean areQueuesEmpty() {
+        for (QueueGauge gauge : gauges.values()) {
+            if (!gauge.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Creates the gauges of the queues when they arrive.
+     */
+    private class QueueCustomizer implements ServiceTrackerCustomizer<Object, QueueGauge> {
+
+        @Override
+        public QueueGauge addingService(ServiceReference<Object> reference) {
+            Object queue = context.getService(reference);
+            if (queue == null) {
+                return null;
+            }
+            try {
+                QueueGauge gauge = new QueueGauge(queue, QueueGauge.getName(reference));
+                gauges.put(reference, gauge);
+                if (activity != null) {
+                    listen(reference, queue);
+                    activity.run();
+                }
+                return gauge;
+            } catch (IllegalArgumentException e) {
+                LOGGER.warn("Ignoring the iPOJO queue {}", queue, e);
+                context.ungetService(reference);
+                return null;
+            }
+        }
+
+        @Override
+        public void modifiedService(ServiceReference<Object> reference, QueueGauge gauge) {
+            // Nothing to do.
+        }
+
+        @Override
+        public void removedService(ServiceReference<Object> reference, QueueGauge gauge) {
+            gauges.remove(reference);
+            Object listener = listeners.remove(reference);
+            if (listener != null) {
+                unlisten(gauge.getQueue(), listener);
+            }
+            try {
+                context.ungetService(reference);
+            } catch (IllegalStateException e) { //NOSONAR
+                // The context is not valid anymore.
+            }
+        }
+    }
+
+    private void listen(ServiceReference<Object> reference, Object queue) {
+        Method add = getListenerMethod(queue, "addQueueListener");
+        if (add == null) {
+            return;
+        }
+        try {
+            Class<?> type = add.getParameterTypes()[0];
+            Object listener = Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                    new QueueActivity());
+            add.invoke(queue, listener);
+            listeners.put(reference, listener);
+        } catch (Exception e) {
+            LOGGER.warn("Cannot listen to the iPOJO queue {}, the queue will be polled", queue, e);
+        }
+    }
+
+    private static void unlisten(Object queue, Object listener) {
+        Method remove = getListenerMethod(queue, "removeQueueListener");
+        if (remove != null) {
+            try {
+                remove.invoke(queue, listener);
+            } catch (Exception e) {
+                LOGGER.debug("Cannot remove the listener from the iPOJO queue {}", queue, e);
+            }
+        }
+    }
+
+    private static Method getListenerMethod(Object queue, String name) {
+        for (Method method : queue.getClass().getMethods()) {
+            if (method.getName().equals(name) && method.getParameterTypes().length == 1) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The iPOJO queue listener, implemented using a dynamic proxy.
+     */
+    private class QueueActivity implements InvocationHandler {
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            if (method.getDeclaringClass() == Object.class) {
+                if ("equals".equals(method.getName())) {
+                    return proxy == args[0];
+                } else if ("hashCode".equals(method.getName())) {
+                    return System.identityHashCode(proxy);
+                } else {
+                    return "IPojoQueueRegistry$QueueActivity@"
+                            + Integer.toHexString(System.identityHashCode(proxy));
+                }
+            }
+            // enlisted, started, executed or failed.
+            activity.run();
+            return null;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * #%L
+ * OW2 Chameleon - Core
+ * %%
+ * Copyright (C) 2009 - 2014 OW2 Chameleon
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.ow2.chameleon.core.activators;
+
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+
+/**
+ * Gauges reading the number of current and waiting jobs of an iPOJO processing queue.
+ * <p>
+ * The queue metrics are read using method handles, resolved once per queue class, as the iPOJO classes used by the
+ * framework are not necessarily the ones from the classpath.
+ *
+ * @author The OW2 Chameleon Team
+ * @version $Id: 1.0.4 $Id
+ * @since 1.10.10
+ */
+public class QueueGauge {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(QueueGauge.class);
+
+    /**
+     * The type of the metric accessors once adapted: {@code int (Object)}.
+     */
+    private static final MethodType METRIC = MethodType.methodType(int.class, Object.class);
+
+    /**
+     * The {@code getCurrents} and {@code getWaiters} handles by queue class. The handles are attached to the queue
+     * classes, so they do not retain the classloader of a refreshed iPOJO bundle.
+     */
+    private static final ClassValue<MethodHandle[]> HANDLES = new ClassValue<MethodHandle[]>() {
+        @Override
+        protected MethodHandle[] computeValue(Class<?> type) {
+            return new MethodHandle[]{resolve(type, "getCurrents"), resolve(type, "getWaiters")};
+        }
+    };
+
+    private final Object queue;
+    private final String name;
+    private final MethodHandle currents;
+    private final MethodHandle waiters;
+
+    /**
+     * Creates the gauges of a queue.
+     *
+     * @param queue the queue service object
+     * @param name  the queue name
+     * @throws IllegalArgumentException if the queue metrics cannot be accessed
+     */
+    public QueueGauge(Object queue, String name) {
+        this.queue = queue;
+        this.name = name;
+        MethodHandle[] handles = HANDLES.get(queue.getClass());
+        this.currents = handles[0];
+        this.waiters = handles[1];
+    }
+
+    /**
+     * Computes the name of a queue from its service properties: its mode, scope and service id.
+     *
+     * @param reference the service reference of the queue
+     * @return the name
+     */
+    public static String getName(ServiceReference<?> reference) {
+        return reference.getProperty("ipojo.queue.mode") + "/" + reference.getProperty("ipojo.queue.scope")
+                + " [" + reference.getProperty(Constants.SERVICE_ID) + "]";
+    }
+
+    /**
+     * @return the queue service object
+     */
+    public Object getQueue() {
+        return queue;
+    }
+
+    /**
+     * @return the queue name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the number of jobs being processed
+     */
+    public int getCurrents() {
+        return read(currents);
+    }
+
+    /**
+     * @return the number of jobs waiting to be processed
+     */
+    public int getWaiters() {
+        return read(waiters);
+    }
+
+    /**
+     * @return {@literal true} if the queue has no current and no waiting job
+     */
+    public boolean isEmpty() {
+        int cur = getCurrents();
+        int wai = getWaiters();
+        LOGGER.debug("queue: {} #current : {} / #waiting : {}", name, cur, wai);
+        return cur == 0 && wai == 0;
+    }
+
+    @Override
+    public String toString() {
+        return name + ": " + getCurrents() + " current, " + getWaiters() + " waiting";
+    }
+
+    private int read(MethodHandle handle) {
+        try {
+            return (int) handle.invokeExact(queue);
+        } catch (Throwable e) { //NOSONAR invokeExact declares Throwable
+            LOGGER.error("Cannot analyze queue's metrics for {}", queue, e);
+            throw new IllegalArgumentException("Cannot analyze queue's metrics", e);
+        }
+    }
+
+    /**
+     * Resolves a metric accessor. The method is looked up on the queue service interface when possible, as the
+     * implementation class may not be public.
+     */
+    private static MethodHandle resolve(Class<?> clazz, String name) {
+        Class<?> type = findQueueInterface(clazz);
+        try {
+            Method method = (type != null ? type : clazz).getMethod(name);
+            if (type == null) {
+                method.setAccessible(true);
+            }
+            return MethodHandles.lookup().unreflect(method).asType(METRIC);
+        } catch (Exception e) {
+            LOGGER.error("Cannot access the queue's metrics of {}", clazz, e);
+            throw new IllegalArgumentException("Cannot analyze queue's metrics", e);
+        }
+    }
+
+    private static Class<?> findQueueInterface(Class<?> clazz) {
+        for (Class<?> current = clazz; current != null; current = current.getSuperclass()) {
+            for (Class<?> itf : current.getInterfaces()) {
+                if (StabilityMonitor.QUEUE_SERVICE.equals(itf.getName())) {
+                    return itf;
+                }
+            }
+        }
+        return null;
+    }
+}
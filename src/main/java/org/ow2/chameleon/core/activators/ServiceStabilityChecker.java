@@ -19,32 +19,108 @@
  */
 package org.ow2.chameleon.core.activators;
 
+import org.osgi.framework.AllServiceListener;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceEvent;
 import org.osgi.framework.ServiceReference;
 import org.ow2.chameleon.core.services.AbstractStabilityChecker;
 import org.ow2.chameleon.core.services.StabilityResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * Stability check verifying that we reach stability in term of services.
  * <p>
  * It checks that there are not service that have appeared or disappeared on a time window.
+ * <p>
+ * When a {@link StabilityMonitor} is given, the checker waits for a quiet period without service events instead of
+ * counting the services before and after a grace period.
+ * <p>
+ * Once {@linkplain #open() opened}, the checker listens to the service events and keeps a sequence number,
+ * incremented on every registration, modification and unregistration. The stability is then reached when the
+ * sequence does not change during the grace period. Unlike counting the services, it does not allocate the
+ * service reference arrays and detects the churn keeping the number of services unchanged.
  */
-public class ServiceStabilityChecker extends AbstractStabilityChecker {
+public class ServiceStabilityChecker extends AbstractStabilityChecker implements AllServiceListener {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ServiceStabilityChecker.class);
 
     private final BundleContext context;
-    private final int attempts;
+    private final int max;
+    private final StabilityMonitor monitor;
+
+    /**
+     * The number of service events received since the checker has been opened.
+     */
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * Whether the checker is listening to the service events.
+     */
+    private volatile boolean listening;
 
     public ServiceStabilityChecker(BundleContext context) {
         this(context, getDefaultNumberOfAttempts());
     }
 
     public ServiceStabilityChecker(BundleContext context, int maxAttempt) {
+        this(context, maxAttempt, null);
+    }
+
+    /**
+     * Creates a new instance of {@link ServiceStabilityChecker} relying on the given monitor to be notified of the
+     * service events.
+     *
+     * @param context    the bundle context
+     * @param maxAttempt the maximum number of attempts, used to compute the timeout, {@literal 0} to
+     *                   use the default number of attempts of the checking thread
+     * @param monitor    the stability monitor, {@literal null} to count the services
+     */
+    public ServiceStabilityChecker(BundleContext context, int maxAttempt, StabilityMonitor monitor) {
         this.context = context;
-        this.attempts = maxAttempt;
+        this.max = maxAttempt;
+        this.monitor = monitor;
+    }
+
+    /**
+     * Starts listening to the service events. The service changes are then detected using the sequence number
+     * instead of counting the services.
+     *
+     * @since 1.10.10
+     */
+    public void open() {
+        context.addServiceListener(this);
+        listening = true;
+    }
+
+    /**
+     * Stops listening to the service events. The checker goes back to counting the services.
+     *
+     * @since 1.10.10
+     */
+    public void close() {
+        listening = false;
+        context.removeServiceListener(this);
+    }
+
+    /**
+     * @return the number of service events received since the checker has been opened.
+     * @since 1.10.10
+     */
+    public long getSequence() {
+        return sequence.get();
+    }
+
+    /**
+     * Increments the sequence number on every service event.
+     *
+     * @param event the event
+     */
+    @Override
+    public void serviceChanged(ServiceEvent event) {
+        sequence.incrementAndGet();
     }
 
     /**
@@ -74,6 +150,17 @@ public class ServiceStabilityChecker extends AbstractStabilityChecker {
      */
     @Override
     public StabilityResult check() {
+        final int attempts = max > 0 ? max : getDefaultNumberOfAttempts();
+        if (monitor != null) {
+            if (monitor.awaitServiceStability(getTimeout(attempts))) {
+                return StabilityResult.stable();
+            }
+            LOGGER.error("Service stability has not been reached after {} ms", getTimeout(attempts));
+            return StabilityResult.unstable("Cannot reach the service stability");
+        }
+        if (listening) {
+            return checkSequence(attempts);
+        }
         boolean serviceStability = false;
         int count = 0;
         int count1 = 0;
@@ -102,4 +189,23 @@ public class ServiceStabilityChecker extends AbstractStabilityChecker {
         }
         return StabilityResult.stable();
     }
+
+    /**
+     * Waits until the sequence number does not change during a grace period.
+     *
+     * @param attempts the maximum number of attempts
+     * @return the stability result
+     */
+    private StabilityResult checkSequence(int attempts) {
+        for (int count = 0; count < attempts; count++) {
+            long before = sequence.get();
+            grace();
+            if (before == sequence.get()) {
+                return StabilityResult.stable();
+            }
+        }
+        LOGGER.error("Service stability has not been reached after {} tries ({} service events received)", attempts,
+                sequence.get());
+        return StabilityResult.unstable("Cannot reach the service stability");
+    }
 }
@@ -20,29 +20,187 @@
 package org.ow2.chameleon.core.activators;
 
 import org.osgi.framework.*;
+import org.osgi.util.tracker.ServiceTracker;
+import org.osgi.util.tracker.ServiceTrackerCustomizer;
 import org.ow2.chameleon.core.services.AbstractStabilityChecker;
 import org.ow2.chameleon.core.services.Stability;
 import org.ow2.chameleon.core.services.StabilityChecker;
+import org.ow2.chameleon.core.services.StabilityListener;
 import org.ow2.chameleon.core.services.StabilityResult;
 import org.ow2.chameleon.core.utils.BundleHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Activator exposing the {@link Stability} service.
+ * <p>
+ * When a quiet period is configured, the built-in checkers are event-driven: they rely on a
+ * {@link StabilityMonitor} listening to the bundle, service and iPOJO queue activity, and the stability is declared
+ * as soon as the system settles.
+ * <p>
+ * The checkers are kept in a registry sorted by priority, updated when {@link StabilityChecker} services arrive,
+ * change or leave, so a stability query does not look the services up. The built-in checkers are created once.
+ * <p>
+ * This activator also tracks the {@link StabilityListener} services, and notifies them every time the stability
+ * changes. The asynchronous computations and the listener notifications are executed by a thread pool managed by
+ * this activator.
  */
 public class StabilityComputation implements BundleActivator, Stability {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(StabilityComputation.class);
+
+    /**
+     * When the system is stable, the stability is still re-computed periodically (in milliseconds), in case a
+     * change has not been notified to the monitor.
+     */
+    private static final long STABLE_RECHECK_PERIOD = TimeUnit.MINUTES.toMillis(1);
 
     private BundleContext context;
     private ServiceRegistration<Stability> reg;
 
+    /**
+     * The quiet period (in milliseconds) used by the event-driven checkers, {@literal 0} to use the polling checkers.
+     */
+    private final long quietPeriod;
+
+    /**
+     * The monitor notifying the framework activity, used by the event-driven checkers and to detect the stability
+     * changes to notify to the listeners. {@literal null} in polling mode.
+     */
+    private StabilityMonitor monitor;
+
+    /**
+     * In polling mode, the lock on which the notification loop waits between two computations. It is notified to
+     * wake the loop up, guarded by itself.
+     */
+    private final Object pollLock = new Object();
+
+    /**
+     * In polling mode, the number of wake-up requests, guarded by {@link #pollLock}.
+     */
+    private long wakeUps;
+
+    /**
+     * The thread pool executing the asynchronous computations and the listener notifications.
+     */
+    private ExecutorService executor;
+
+    /**
+     * The checkers sorted by priority. The list is never modified, but replaced on every change, guarded by
+     * {@link #registryLock} for writes.
+     */
+    private volatile List<Check> checkers = Collections.emptyList();
+
+    /**
+     * The lock serializing the updates of {@link #checkers}.
+     */
+    private final Object registryLock = new Object();
+
+    /**
+     * The built-in bundle checker, listening to the bundle events in polling mode.
+     */
+    private BundleStabilityChecker bundleChecker;
+
+    /**
+     * The built-in service checker, listening to the service events in polling mode.
+     */
+    private ServiceStabilityChecker serviceChecker;
+
+    /**
+     * The built-in iPOJO checker, tracking the processing queues in polling mode.
+     */
+    private IPojoProcessingStabilityChecker ipojoChecker;
+
+    /**
+     * The tracker of the {@link StabilityChecker} services.
+     */
+    private ServiceTracker<StabilityChecker, Check> tracker;
+
+    /**
+     * The tracker of the {@link StabilityListener} services.
+     */
+    private ServiceTracker<StabilityListener, StabilityListener> listeners;
+
+    /**
+     * The tracked listeners, associated with the last stability state notified to them ({@literal null} if not
+     * notified yet), guarded by itself.
+     */
+    private final Map<StabilityListener, Boolean> notified = new IdentityHashMap<StabilityListener, Boolean>();
+
+    /**
+     * Whether the listener notification loop is running.
+     */
+    private final AtomicBoolean watching = new AtomicBoolean();
+
+    /**
+     * Set when the activator is stopped, to stop the notification loop.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Creates the stability computation using the polling checkers.
+     */
+    public StabilityComputation() {
+        this(0L);
+    }
+
+    /**
+     * Creates the stability computation.
+     *
+     * @param quietPeriod the time in milliseconds without service events before declaring the service stability.
+     *                    If {@literal 0}, the polling checkers are used.
+     */
+    public StabilityComputation(long quietPeriod) {
+        this.quietPeriod = quietPeriod;
+    }
+
     /**
      * Stores the bundle context, and expose the stability service.
      */
     @Override
     public void start(BundleContext context) throws Exception {
         this.context = context;
+        this.closed = false;
+        if (quietPeriod > 0) {
+            monitor = new StabilityMonitor(context, quietPeriod);
+            monitor.open();
+        }
+        executor = Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "chameleon-stability");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        final StabilityMonitor eventDriven = monitor;
+        // The number of attempts is read on every check, so the per-thread overrides are honored.
+        bundleChecker = new BundleStabilityChecker(context, 0, eventDriven);
+        serviceChecker = new ServiceStabilityChecker(context, 0, eventDriven);
+        if (eventDriven == null) {
+            // Track the unstable bundles and the service changes rather than iterating over the framework state.
+            bundleChecker.open();
+            serviceChecker.open();
+        }
+        add(new Check(bundleChecker, null));
+        add(new Check(serviceChecker, null));
+        ipojoChecker = new IPojoProcessingStabilityChecker(context, eventDriven);
+        if (eventDriven == null) {
+            ipojoChecker.open();
+        }
+        add(new Check(ipojoChecker, null));
+        tracker = new ServiceTracker<StabilityChecker, Check>(context, StabilityChecker.class,
+                new CheckerCustomizer());
+        tracker.open();
+
+        listeners = new ServiceTracker<StabilityListener, StabilityListener>(context, StabilityListener.class,
+                new ListenerCustomizer());
+        listeners.open();
         this.reg = context.registerService(Stability.class, this, null);
     }
 
@@ -51,35 +209,90 @@ public class StabilityComputation implements BundleActivator, Stability {
      */
     @Override
     public void stop(BundleContext context) throws Exception {
-        this.context = null;
         BundleHelper.unregisterQuietly(reg);
+        closed = true;
+        if (listeners != null) {
+            listeners.close();
+            listeners = null;
+        }
+        if (tracker != null) {
+            tracker.close();
+            tracker = null;
+        }
+        synchronized (registryLock) {
+            checkers = Collections.emptyList();
+        }
+        if (serviceChecker != null) {
+            if (quietPeriod <= 0) {
+                bundleChecker.close();
+                serviceChecker.close();
+                ipojoChecker.close();
+            }
+            bundleChecker = null;
+            serviceChecker = null;
+            ipojoChecker = null;
+        }
+        wakeUp();
+        if (monitor != null) {
+            monitor.close();
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        monitor = null;
+        this.context = null;
     }
 
-    private Set<StabilityChecker> getCheckers() {
-        Collection<ServiceReference<StabilityChecker>> references;
-
-        try {
-            references = context.getServiceReferences(StabilityChecker.class, null);
-        } catch (InvalidSyntaxException e) { //NOSONAR cannot happen, the filter is null
-            // Ignored
-            references = Collections.emptyList();
+    /**
+     * Adds a checker to the registry.
+     *
+     * @param check the checker
+     */
+    private void add(Check check) {
+        synchronized (registryLock) {
+            List<Check> copy = new ArrayList<Check>(checkers);
+            copy.add(check);
+            Collections.sort(copy);
+            checkers = Collections.unmodifiableList(copy);
         }
+    }
 
-        Set<StabilityChecker> checkers = new TreeSet<StabilityChecker>(new Comparator<StabilityChecker>() {
-            @Override
-            public int compare(StabilityChecker o1, StabilityChecker o2) {
-                return ((Integer) o1.getPriority()).compareTo(o2.getPriority());
+    /**
+     * Removes a checker service from the registry.
+     *
+     * @param reference the service reference of the checker
+     */
+    private void remove(ServiceReference<StabilityChecker> reference) {
+        synchronized (registryLock) {
+            List<Check> copy = new ArrayList<Check>(checkers);
+            Iterator<Check> iterator = copy.iterator();
+            while (iterator.hasNext()) {
+                if (reference.equals(iterator.next().reference)) {
+                    iterator.remove();
+                }
             }
-        });
-        for (ServiceReference<StabilityChecker> ref : references) {
-            checkers.add(context.getService(ref));
+            checkers = Collections.unmodifiableList(copy);
         }
+    }
 
-        checkers.add(new BundleStabilityChecker(context));
-        checkers.add(new ServiceStabilityChecker(context));
-        checkers.add(new IPojoProcessingStabilityChecker(context));
+    private static boolean isConcurrent(ServiceReference<?> reference) {
+        Object value = reference.getProperty(StabilityChecker.CONCURRENT_PROPERTY);
+        return value != null && Boolean.parseBoolean(value.toString());
+    }
 
-        return checkers;
+    private static long getTimeout(ServiceReference<?> reference) {
+        Object value = reference.getProperty(StabilityChecker.TIMEOUT_PROPERTY);
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        } else if (value != null) {
+            try {
+                return Long.parseLong(value.toString().trim());
+            } catch (NumberFormatException e) {
+                LOGGER.warn("Invalid value for the {} property: {}", StabilityChecker.TIMEOUT_PROPERTY, value);
+            }
+        }
+        return 0;
     }
 
     /**
@@ -89,46 +302,249 @@ public class StabilityComputation implements BundleActivator, Stability {
      */
     @Override
     public boolean isStable() {
-        // Configure the grace period and number of attempt to "small" values to reduce the blocking time
-        final long originalGraceTimeInMillis = Long.getLong(AbstractStabilityChecker.STABILITY_GRACE, -1l);
-        final int originalNumberOfAttempts = Integer.getInteger(AbstractStabilityChecker.STABILITY_ATTEMPTS, -1);
+        return isStable(getStabilityResultNow());
+    }
 
+    /**
+     * Computes the individual stability check results with "small" grace period and number of attempts to reduce
+     * the blocking time. The values are overridden for the current thread only, so concurrent computations are
+     * not impacted.
+     *
+     * @return the results
+     */
+    private Map<StabilityChecker, StabilityResult> getStabilityResultNow() {
+        // 3 milliseconds, 3 attempts maximum
+        // So, the maximum sleep time should not be greater than 3 * 3 = 9ms per check.
+        AbstractStabilityChecker.overrideForCurrentThread(3, 3);
         try {
+            return getStabilityResult();
+        } finally {
+            AbstractStabilityChecker.clearOverrides();
+        }
+    }
 
-            // 3 milliseconds
-            System.setProperty(AbstractStabilityChecker.STABILITY_GRACE, "3");
-            // 3 attempts maximum
-            System.setProperty(AbstractStabilityChecker.STABILITY_ATTEMPTS, "3");
-            // So, the maximum sleep time should not be greater than 3 * 3 = 9ms per check.
+    /**
+     * Waits for the stability to be reached. This method may block the caller thread for quite some time depending
+     * of the configured grace period and the maximum number of attempt.
+     *
+     * @return whether of not the stability has been reached.
+     */
+    @Override
+    public boolean waitForStability() {
+        return isStable(getStabilityResult());
+    }
+
+    /**
+     * Checks and retrieve the individual stability check result.
+     *
+     * @return the results. The returned map is ordered.
+     */
+    @Override
+    public Map<StabilityChecker, StabilityResult> getStabilityResult() {
+        List<Check> checkers = this.checkers;
+        if (quietPeriod <= 0) {
+            return check(checkers);
+        }
 
-            return waitForStability();
+        // Event-driven mode: the checks are run in sequence, so the framework may have changed after a check
+        // has succeeded. Re-run the checks until a full sequence completes without any event.
+        final long deadline = System.currentTimeMillis()
+                + AbstractStabilityChecker.getTimeout(AbstractStabilityChecker.getDefaultNumberOfAttempts());
+        while (true) {
+            long events = monitor.getEventCount();
+            Map<StabilityChecker, StabilityResult> results = check(checkers);
+            if (!isStable(results) || events == monitor.getEventCount()
+                    || System.currentTimeMillis() >= deadline) {
+                return results;
+            }
+        }
+    }
+
+    /**
+     * Computes the stability asynchronously. The number of attempts of the checkers is derived from the timeout and
+     * the default grace period.
+     *
+     * @param timeout the maximum time to wait for the stability
+     * @param unit    the unit of the timeout
+     * @return the future results
+     */
+    @Override
+    public Future<Map<StabilityChecker, StabilityResult>> stabilityAsync(long timeout, TimeUnit unit) {
+        final ExecutorService pool = executor;
+        if (pool == null) {
+            throw new IllegalStateException("The stability service is not started");
+        }
+        final long millis = unit.toMillis(timeout);
+        return pool.submit(new Callable<Map<StabilityChecker, StabilityResult>>() {
+            @Override
+            public Map<StabilityChecker, StabilityResult> call() throws Exception {
+                final long grace = AbstractStabilityChecker.getDefaultGracePeriodInMillis();
+                final long period = Math.max(1, grace * AbstractStabilityChecker.getTimeFactor());
+                final int attempts = (int) Math.max(1, Math.min(Integer.MAX_VALUE, millis / period));
+                AbstractStabilityChecker.overrideForCurrentThread(grace, attempts);
+                try {
+                    return getStabilityResult();
+                } finally {
+                    AbstractStabilityChecker.clearOverrides();
+                }
+            }
+        });
+    }
 
+    /**
+     * Starts the listener notification loop if not already running.
+     */
+    private void startWatching() {
+        final ExecutorService pool = executor;
+        if (pool != null && watching.compareAndSet(false, true)) {
+            try {
+                pool.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            watch();
+                        } catch (RuntimeException e) {
+                            watching.set(false);
+                            throw e;
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) { //NOSONAR the activator is stopping
+                watching.set(false);
+            }
+        }
+    }
+
+    /**
+     * The listener notification loop. It computes the stability, notifies the listeners whose last notified state
+     * differs, and waits for the next framework event. When the system is not stable, the stability is re-computed
+     * after the quiet period (the grace period in polling mode), even if no event is received. The loop ends when
+     * there are no more listeners.
+     * <p>
+     * In polling mode, the loop registers its own lightweight bundle, service and framework listener to be woken
+     * up, as there is no {@link StabilityMonitor}.
+     */
+    private void watch() {
+        final StabilityMonitor activity = monitor;
+        ActivityListener wake = null;
+        if (activity == null) {
+            wake = new ActivityListener();
+            wake.open(context);
+        }
+        try {
+            loop(activity);
         } finally {
-            // Cleanup...
-            if (originalGraceTimeInMillis != -1) {
-                System.setProperty(AbstractStabilityChecker.STABILITY_GRACE, Long.toString(originalGraceTimeInMillis));
-            } else {
-                System.clearProperty(AbstractStabilityChecker.STABILITY_GRACE);
+            if (wake != null) {
+                wake.close();
             }
+        }
+    }
 
-            if (originalNumberOfAttempts != -1) {
-                System.setProperty(AbstractStabilityChecker.STABILITY_ATTEMPTS,
-                        Integer.toString(originalNumberOfAttempts));
+    private void loop(StabilityMonitor activity) {
+        while (!closed && !Thread.currentThread().isInterrupted()) {
+            StabilityListener[] targets = getListeners();
+            if (targets.length == 0) {
+                watching.set(false);
+                // A listener may have arrived while the loop was ending.
+                if (getListeners().length == 0 || !watching.compareAndSet(false, true)) {
+                    return;
+                }
+                continue;
+            }
+            long seen = activity != null ? activity.getEventCount() : getWakeUps();
+            Map<StabilityChecker, StabilityResult> results;
+            try {
+                results = getStabilityResultNow();
+            } catch (RuntimeException e) {
+                if (!closed) {
+                    LOGGER.error("Cannot compute the stability", e);
+                }
+                watching.set(false);
+                return;
+            }
+            boolean stable = isStable(results);
+            for (StabilityListener listener : targets) {
+                notifyListener(listener, stable, results);
+            }
+            if (activity != null) {
+                activity.awaitEvent(seen, stable ? STABLE_RECHECK_PERIOD : activity.getQuietPeriod());
             } else {
-                System.clearProperty(AbstractStabilityChecker.STABILITY_ATTEMPTS);
+                awaitWakeUp(seen, stable ? STABLE_RECHECK_PERIOD
+                        : AbstractStabilityChecker.getDefaultGracePeriodInMillis()
+                        * AbstractStabilityChecker.getTimeFactor());
             }
         }
+        watching.set(false);
     }
 
     /**
-     * Waits for the stability to be reached. This method may block the caller thread for quite some time depending
-     * of the configured grace period and the maximum number of attempt.
-     *
-     * @return whether of not the stability has been reached.
+     * Wakes up the notification loop.
      */
-    @Override
-    public boolean waitForStability() {
-        Map<StabilityChecker, StabilityResult> results = getStabilityResult();
+    private void wakeUp() {
+        StabilityMonitor activity = monitor;
+        if (activity != null) {
+            activity.wakeUp();
+        }
+        synchronized (pollLock) {
+            wakeUps++;
+            pollLock.notifyAll();
+        }
+    }
+
+    private long getWakeUps() {
+        synchronized (pollLock) {
+            return wakeUps;
+        }
+    }
+
+    /**
+     * Waits until the notification loop is woken up after the given count, or until the timeout is reached.
+     */
+    private void awaitWakeUp(long seen, long timeout) {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        synchronized (pollLock) {
+            while (seen == wakeUps && !closed) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0) {
+                    return;
+                }
+                try {
+                    pollLock.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private StabilityListener[] getListeners() {
+        synchronized (notified) {
+            return notified.keySet().toArray(new StabilityListener[notified.size()]);
+        }
+    }
+
+    private void notifyListener(StabilityListener listener, boolean stable,
+                                Map<StabilityChecker, StabilityResult> results) {
+        synchronized (notified) {
+            if (!notified.containsKey(listener)) {
+                // Removed in the meantime.
+                return;
+            }
+            Boolean last = notified.get(listener);
+            if (last != null && last == stable) {
+                return;
+            }
+            notified.put(listener, stable);
+        }
+        try {
+            listener.stabilityChanged(stable, results);
+        } catch (RuntimeException e) { //NOSONAR a faulty listener must not stop the notifications
+            LOGGER.error("The stability listener {} has thrown an exception", listener, e);
+        }
+    }
+
+    private static boolean isStable(Map<StabilityChecker, StabilityResult> results) {
         for (StabilityResult result : results.values()) {
             if (!result.isStable) {
                 return false;
@@ -138,24 +554,324 @@ public class StabilityComputation implements BundleActivator, Stability {
     }
 
     /**
-     * Checks and retrieve the individual stability check result.
+     * Runs the checks by increasing priority. The concurrent checkers of a priority are run on the pool while the
+     * other checkers of the same priority are run in sequence. Once a check fails, the checks of the next
+     * priorities are not run.
      *
-     * @return the results. The returned map is ordered.
+     * @param checkers the checkers, sorted by priority
+     * @return the results, in the checker order
      */
-    @Override
-    public Map<StabilityChecker, StabilityResult> getStabilityResult() {
-        Set<StabilityChecker> checkers = getCheckers();
+    private Map<StabilityChecker, StabilityResult> check(List<Check> checkers) {
         Map<StabilityChecker, StabilityResult> results = new LinkedHashMap<StabilityChecker, StabilityResult>();
         boolean hasNotBeenReached = false;
-        for (StabilityChecker checker : checkers) {
+        int i = 0;
+        while (i < checkers.size()) {
+            // Collect the checkers having the same priority.
+            int priority = checkers.get(i).priority;
+            int end = i;
+            while (end < checkers.size() && checkers.get(end).priority == priority) {
+                end++;
+            }
+
             if (hasNotBeenReached) {
-                results.put(checker, StabilityResult.notAvailable());
-            } else {
-                StabilityResult sr = checker.check();
-                results.put(checker, sr);
-                hasNotBeenReached = !sr.isStable;
+                for (int j = i; j < end; j++) {
+                    results.put(checkers.get(j).checker, StabilityResult.notAvailable());
+                }
+                i = end;
+                continue;
             }
+
+            // Reserve the result slots to keep the checker order, and start the concurrent checks.
+            Execution[] executions = null;
+            for (int j = i; j < end; j++) {
+                Check check = checkers.get(j);
+                results.put(check.checker, null);
+                if (check.concurrent) {
+                    if (executions == null) {
+                        executions = new Execution[end - i];
+                    }
+                    executions[j - i] = check.submit();
+                }
+            }
+            for (int j = i; j < end; j++) {
+                Check check = checkers.get(j);
+                if (!check.concurrent) {
+                    StabilityResult sr = check.timeout > 0 ? check.submit().await() : check.run(System.nanoTime());
+                    results.put(check.checker, sr);
+                    hasNotBeenReached = hasNotBeenReached || !sr.isStable;
+                }
+            }
+            if (executions != null) {
+                for (Execution execution : executions) {
+                    if (execution != null) {
+                        StabilityResult sr = execution.await();
+                        results.put(execution.check.checker, sr);
+                        hasNotBeenReached = hasNotBeenReached || !sr.isStable;
+                    }
+                }
+            }
+            i = end;
         }
         return results;
     }
+
+    /**
+     * A registered checker with its execution settings. Checkers are ordered by priority, then by service ranking,
+     * the built-in checkers being last.
+     */
+    private class Check implements Comparable<Check> {
+
+        private final StabilityChecker checker;
+        private final ServiceReference<StabilityChecker> reference;
+        private final int priority;
+        private final boolean concurrent;
+        private final long timeout;
+
+        /**
+         * Creates a check.
+         *
+         * @param checker   the checker
+         * @param reference the service reference of the checker, {@literal null} for the built-in checkers
+         */
+        private Check(StabilityChecker checker, ServiceReference<StabilityChecker> reference) {
+            this.checker = checker;
+            this.reference = reference;
+            this.priority = checker.getPriority();
+            this.concurrent = reference != null && isConcurrent(reference);
+            this.timeout = reference != null ? getTimeout(reference) : 0;
+        }
+
+        @Override
+        public int compareTo(Check other) {
+            if (priority != other.priority) {
+                return priority < other.priority ? -1 : 1;
+            }
+            if (reference == null || other.reference == null) {
+                return reference == null ? (other.reference == null ? 0 : 1) : -1;
+            }
+            // Highest ranking first.
+            return other.reference.compareTo(reference);
+        }
+
+        /**
+         * Starts the check. Concurrent checks and checks having a timeout are run on the pool, the others are run
+         * in the caller thread. The grace period and number of attempts of the caller thread are propagated.
+         *
+         * @return the execution
+         */
+        private Execution submit() {
+            final long start = System.nanoTime();
+            final ExecutorService pool = executor;
+            if (pool == null) {
+                return new Execution(this, start, run(start));
+            }
+            final long grace = AbstractStabilityChecker.getDefaultGracePeriodInMillis();
+            final int attempts = AbstractStabilityChecker.getDefaultNumberOfAttempts();
+            try {
+                return new Execution(this, start, pool.submit(new Callable<StabilityResult>() {
+                    @Override
+                    public StabilityResult call() throws Exception {
+                        AbstractStabilityChecker.overrideForCurrentThread(grace, attempts);
+                        try {
+                            return run(start);
+                        } finally {
+                            AbstractStabilityChecker.clearOverrides();
+                        }
+                    }
+                }));
+            } catch (RejectedExecutionException e) { //NOSONAR the activator is stopping
+                return new Execution(this, start, run(start));
+            }
+        }
+
+        /**
+         * Runs the check in the caller thread.
+         *
+         * @param start the time at which the check has been started, from {@link System#nanoTime()}
+         * @return the result
+         */
+        private StabilityResult run(long start) {
+            StabilityResult sr;
+            try {
+                sr = checker.check();
+            } catch (RuntimeException e) {
+                LOGGER.error("The stability checker {} has thrown an exception", checker.getName(), e);
+                sr = StabilityResult.unstable(e);
+            }
+            sr = sr.withDuration(elapsed(start));
+            LOGGER.debug("Stability check '{}' completed in {} ms", checker.getName(), sr.duration);
+            return sr;
+        }
+    }
+
+    /**
+     * A check running on the pool.
+     */
+    private static class Execution {
+
+        private final Check check;
+        private final long start;
+        private final Future<StabilityResult> future;
+        private StabilityResult result;
+
+        private Execution(Check check, long start, Future<StabilityResult> future) {
+            this.check = check;
+            this.start = start;
+            this.future = future;
+        }
+
+        private Execution(Check check, long start, StabilityResult result) {
+            this(check, start, (Future<StabilityResult>) null);
+            this.result = result;
+        }
+
+        /**
+         * Waits for the result of the check, until its deadline if it has a timeout.
+         *
+         * @return the result
+         */
+        private StabilityResult await() {
+            if (result != null) {
+                return result;
+            }
+            try {
+                if (check.timeout > 0) {
+                    long remaining = check.timeout - elapsed(start);
+                    result = future.get(Math.max(0, remaining), TimeUnit.MILLISECONDS);
+                } else {
+                    result = future.get();
+                }
+            } catch (TimeoutException e) { //NOSONAR the timeout is the reason of the instability
+                future.cancel(true);
+                result = StabilityResult.unstable("The check '" + check.checker.getName()
+                        + "' has not completed within " + check.timeout + " ms").withDuration(elapsed(start));
+            } catch (ExecutionException e) {
+                result = StabilityResult.unstable(e.getCause()).withDuration(elapsed(start));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.cancel(true);
+                result = StabilityResult.unstable("Interrupted", e).withDuration(elapsed(start));
+            }
+            return result;
+        }
+    }
+
+    private static long elapsed(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    /**
+     * Tracks the stability checkers, keeping the registry up to date.
+     */
+    private class CheckerCustomizer implements ServiceTrackerCustomizer<StabilityChecker, Check> {
+
+        @Override
+        public Check addingService(ServiceReference<StabilityChecker> reference) {
+            StabilityChecker checker = context.getService(reference);
+            if (checker == null) {
+                return null;
+            }
+            Check check = new Check(checker, reference);
+            add(check);
+            return check;
+        }
+
+        @Override
+        public void modifiedService(ServiceReference<StabilityChecker> reference, Check check) {
+            // The concurrency, timeout and ranking may have changed.
+            synchronized (registryLock) {
+                remove(reference);
+                add(new Check(check.checker, reference));
+            }
+        }
+
+        @Override
+        public void removedService(ServiceReference<StabilityChecker> reference, Check check) {
+            remove(reference);
+            context.ungetService(reference);
+        }
+    }
+
+    /**
+     * Tracks the stability listeners, starting the notification loop when a listener arrives.
+     */
+    private class ListenerCustomizer implements ServiceTrackerCustomizer<StabilityListener, StabilityListener> {
+
+        @Override
+        public StabilityListener addingService(ServiceReference<StabilityListener> reference) {
+            StabilityListener listener = context.getService(reference);
+            if (listener != null) {
+                synchronized (notified) {
+                    notified.put(listener, null);
+                }
+                startWatching();
+                wakeUp();
+            }
+            return listener;
+        }
+
+        @Override
+        public void modifiedService(ServiceReference<StabilityListener> reference, StabilityListener listener) {
+            // Nothing to do.
+        }
+
+        @Override
+        public void removedService(ServiceReference<StabilityListener> reference, StabilityListener listener) {
+            synchronized (notified) {
+                notified.remove(listener);
+            }
+            context.ungetService(reference);
+        }
+    }
+
+    /**
+     * Wakes up the notification loop on every bundle, service or framework event, in polling mode.
+     */
+    private class ActivityListener implements BundleListener, AllServiceListener, FrameworkListener {
+
+        private BundleContext registered;
+
+        void open(BundleContext bc) {
+            if (bc == null) {
+                return;
+            }
+            registered = bc;
+            try {
+                bc.addFrameworkListener(this);
+                bc.addBundleListener(this);
+                bc.addServiceListener(this);
+            } catch (IllegalStateException e) { //NOSONAR the framework is stopping
+                close();
+            }
+        }
+
+        void close() {
+            if (registered == null) {
+                return;
+            }
+            try {
+                registered.removeServiceListener(this);
+                registered.removeBundleListener(this);
+                registered.removeFrameworkListener(this);
+            } catch (IllegalStateException e) { //NOSONAR
+                // The context is not valid anymore.
+            }
+            registered = null;
+        }
+
+        @Override
+        public void bundleChanged(BundleEvent event) {
+            wakeUp();
+        }
+
+        @Override
+        public void serviceChanged(ServiceEvent event) {
+            wakeUp();
+        }
+
+        @Override
+        public void frameworkEvent(FrameworkEvent event) {
+            wakeUp();
+        }
+    }
 }
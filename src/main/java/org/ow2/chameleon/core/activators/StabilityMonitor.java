@@ -0,0 +1,315 @@
+/*
+ * #%L
+ * OW2 Chameleon - Core
+ * %%
+ * Copyright (C) 2009 - 2014 OW2 Chameleon
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.ow2.chameleon.core.activators;
+
+import org.osgi.framework.*;
+import org.ow2.chameleon.core.services.AbstractStabilityChecker;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Listens to the framework activity (bundle events, service events and iPOJO processing queues) to let the
+ * stability checkers wait for the system to settle without polling.
+ * <p>
+ * Waiting threads are woken up on every event and re-evaluate their condition, so the stability is declared as soon
+ * as it is reached. As some state changes are not notified (lazy activation for instance), conditions are also
+ * re-evaluated at least once per quiet period.
+ * <p>
+ * The iPOJO queues are tracked by an {@link IPojoQueueRegistry} listening to their activity.
+ */
+public class StabilityMonitor implements BundleListener, AllServiceListener, FrameworkListener {
+
+    /**
+     * The name of the iPOJO queue service interface.
+     */
+    public static final String QUEUE_SERVICE = "org.apache.felix.ipojo.extender.queue.QueueService";
+
+    private final BundleContext context;
+
+    /**
+     * The quiet period in milliseconds (before applying the time factor).
+     */
+    private final long quietPeriod;
+
+    /**
+     * The lock on which the waiting threads wait for events.
+     */
+    private final Object lock = new Object();
+
+    /**
+     * The number of events received so far, guarded by {@link #lock}.
+     */
+    private long events;
+
+    /**
+     * The date (nanoTime) of the last service event.
+     */
+    private volatile long lastServiceEvent;
+
+    /**
+     * The iPOJO queues, waking up the waiting threads on their activity.
+     */
+    private final IPojoQueueRegistry queues;
+
+    /**
+     * Creates a stability monitor.
+     *
+     * @param context     the bundle context
+     * @param quietPeriod the time in milliseconds without service event before declaring the service stability.
+     *                    This value is multiplied by the time factor.
+     */
+    public StabilityMonitor(BundleContext context, long quietPeriod) {
+        this.context = context;
+        this.quietPeriod = quietPeriod;
+        this.lastServiceEvent = System.nanoTime();
+        this.queues = new IPojoQueueRegistry(context, new Runnable() {
+            @Override
+            public void run() {
+                signal();
+            }
+        });
+    }
+
+    /**
+     * Starts listening to the framework.
+     */
+    public void open() {
+        lastServiceEvent = System.nanoTime();
+        context.addFrameworkListener(this);
+        context.addBundleListener(this);
+        context.addServiceListener(this);
+        queues.open();
+    }
+
+    /**
+     * Stops listening to the framework. Waiting threads are released.
+     */
+    public void close() {
+        context.removeServiceListener(this);
+        context.removeBundleListener(this);
+        context.removeFrameworkListener(this);
+        queues.close();
+        signal();
+    }
+
+    /**
+     * @return the quiet period in milliseconds, time factor included.
+     */
+    public long getQuietPeriod() {
+        return quietPeriod * AbstractStabilityChecker.getTimeFactor();
+    }
+
+    /**
+     * Gets the number of events received so far. Comparing the values returned before and after a computation
+     * tells whether the framework has changed in between.
+     *
+     * @return the number of events
+     */
+    public long getEventCount() {
+        synchronized (lock) {
+            return events;
+        }
+    }
+
+    /**
+     * Waits until all bundles have reached their final state.
+     *
+     * @param timeout the maximum time to wait in milliseconds
+     * @return {@literal true} if the bundles are stable, {@literal false} if the timeout was reached.
+     */
+    public boolean awaitBundleStability(long timeout) {
+        return await(new Condition() {
+            @Override
+            public long delay() {
+                return BundleStabilityChecker.getBundleStability(context) ? 0 : getQuietPeriod();
+            }
+        }, timeout);
+    }
+
+    /**
+     * Waits until no service has been registered, modified or unregistered during the quiet period.
+     *
+     * @param timeout the maximum time to wait in milliseconds
+     * @return {@literal true} if the services are stable, {@literal false} if the timeout was reached.
+     */
+    public boolean awaitServiceStability(long timeout) {
+        return await(new Condition() {
+            @Override
+            public long delay() {
+                long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastServiceEvent);
+                return Math.max(0, getQuietPeriod() - elapsed);
+            }
+        }, timeout);
+    }
+
+    /**
+     * Waits until all the iPOJO processing queues are empty.
+     *
+     * @param timeout the maximum time to wait in milliseconds
+     * @return {@literal true} if the queues are empty, {@literal false} if the timeout was reached.
+     */
+    public boolean awaitEmptyQueues(long timeout) {
+        return await(new Condition() {
+            @Override
+            public long delay() {
+                return areQueuesEmpty() ? 0 : getQuietPeriod();
+            }
+        }, timeout);
+    }
+
+    /**
+     * Checks whether all the iPOJO processing queues are empty.
+     *
+     * @return {@literal true} if all the queues are empty (or if there are no queue).
+     */
+    public boolean areQueuesEmpty() {
+        return queues.areQueuesEmpty();
+    }
+
+    /**
+     * Gets the gauges of the iPOJO queues, giving the number of current and waiting jobs of each queue.
+     *
+     * @return the gauges
+     * @since 1.10.10
+     */
+    public List<QueueGauge> getQueueGauges() {
+        return queues.getGauges();
+    }
+
+    /**
+     * Waits until the condition is satisfied. The condition is evaluated without holding the lock, as it may
+     * call services (such as the iPOJO queues) notifying us while holding their own locks.
+     *
+     * @param condition the condition
+     * @param timeout   the maximum time to wait in milliseconds
+     * @return {@literal true} if the condition is satisfied, {@literal false} if the timeout was reached.
+     */
+    private boolean await(Condition condition, long timeout) {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        while (true) {
+            long seen;
+            synchronized (lock) {
+                seen = events;
+            }
+            long delay = condition.delay();
+            if (delay <= 0) {
+                return true;
+            }
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remaining <= 0) {
+                return false;
+            }
+            synchronized (lock) {
+                if (seen == events) {
+                    try {
+                        lock.wait(Math.max(1, Math.min(delay, remaining)));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return false;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits until an event is received after the given event count.
+     *
+     * @param seen    the last event count seen by the caller, as returned by {@link #getEventCount()}
+     * @param timeout the maximum time to wait in milliseconds
+     * @return the new event count, unchanged if the timeout was reached or if the thread was interrupted.
+     */
+    public long awaitEvent(long seen, long timeout) {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        synchronized (lock) {
+            while (seen == events) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0) {
+                    break;
+                }
+                try {
+                    lock.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            return events;
+        }
+    }
+
+    /**
+     * Wakes up the waiting threads as if an event had been received.
+     */
+    public void wakeUp() {
+        signal();
+    }
+
+    private void signal() {
+        synchronized (lock) {
+            events++;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Receives a bundle event, and wakes up the waiting threads.
+     *
+     * @param event the event
+     */
+    @Override
+    public void bundleChanged(BundleEvent event) {
+        signal();
+    }
+
+    /**
+     * Receives a framework event, and wakes up the waiting threads.
+     *
+     * @param event the event
+     */
+    @Override
+    public void frameworkEvent(FrameworkEvent event) {
+        signal();
+    }
+
+    /**
+     * Receives a service event, restarts the quiet period and wakes up the waiting threads.
+     *
+     * @param event the event
+     */
+    @Override
+    public void serviceChanged(ServiceEvent event) {
+        lastServiceEvent = System.nanoTime();
+        signal();
+    }
+
+    /**
+     * A condition to wait for.
+     */
+    private interface Condition {
+
+        /**
+         * @return {@literal 0} if the condition is satisfied, otherwise the time (in milliseconds) after which
+         * the condition must be re-evaluated if no event is received.
+         */
+        long delay();
+    }
+}
@@ -41,6 +41,33 @@ public abstract class AbstractStabilityChecker implements StabilityChecker {
      */
     public static final String STABILITY_ATTEMPTS = "stability.attempts";
 
+    /**
+     * The grace period and number of attempts overriding the system properties for the current thread.
+     */
+    private static final ThreadLocal<long[]> OVERRIDES = new ThreadLocal<long[]>();
+
+    /**
+     * Overrides the default grace period and number of attempts for the current thread only. Unlike setting the
+     * system properties, it does not impact the stability computations made concurrently by other threads.
+     * The override must be cleared using {@link #clearOverrides()}.
+     *
+     * @param grace    the grace period in milliseconds
+     * @param attempts the number of attempts
+     * @since 1.10.10
+     */
+    public static void overrideForCurrentThread(long grace, int attempts) {
+        OVERRIDES.set(new long[]{grace, attempts});
+    }
+
+    /**
+     * Clears the override set by {@link #overrideForCurrentThread(long, int)} for the current thread.
+     *
+     * @since 1.10.10
+     */
+    public static void clearOverrides() {
+        OVERRIDES.remove();
+    }
+
     /**
      * Retrieves the current time factor if set. The time factor is configure using the `time.factor` system property.
      *
@@ -52,24 +79,45 @@ public abstract class AbstractStabilityChecker implements StabilityChecker {
 
     /**
      * Retrieves the default grace period (in millis). The default value is set using the `stability.grace` system
-     * property. the default value is 100 ms.
+     * property. the default value is 100 ms. The value can be overridden for the current thread.
      *
      * @return the default grace period.
      */
     public static long getDefaultGracePeriodInMillis() {
+        long[] overrides = OVERRIDES.get();
+        if (overrides != null) {
+            return overrides[0];
+        }
         return Long.getLong(STABILITY_GRACE, 100l);
     }
 
     /**
      * Retrieves the default number of attempts before declaring that the stability cannot be reached. The default
-     * value is set using the `stability.attempts` system property. the default value is 500.
+     * value is set using the `stability.attempts` system property. the default value is 500. The value can be
+     * overridden for the current thread.
      *
      * @return the default number of attempts.
      */
     public static int getDefaultNumberOfAttempts() {
+        long[] overrides = OVERRIDES.get();
+        if (overrides != null) {
+            return (int) overrides[1];
+        }
         return Integer.getInteger(STABILITY_ATTEMPTS, 500);
     }
 
+    /**
+     * Computes the maximum time to wait for the stability, when waiting for events instead of polling. It is the
+     * time the polling would have taken: the number of attempts multiplied by the default grace period and the time
+     * factor.
+     *
+     * @param attempts the number of attempts
+     * @return the timeout in milliseconds
+     */
+    public static long getTimeout(int attempts) {
+        return attempts * getDefaultGracePeriodInMillis() * getTimeFactor();
+    }
+
     /**
      * Block the caller thread for the default grace period.
      */
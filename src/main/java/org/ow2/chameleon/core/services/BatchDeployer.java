@@ -0,0 +1,49 @@
+/*
+ * #%L
+ * OW2 Chameleon - Core
+ * %%
+ * Copyright (C) 2009 - 2014 OW2 Chameleon
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.ow2.chameleon.core.services;
+
+import java.io.File;
+import java.util.Collection;
+
+/**
+ * An extension of the {@link Deployer} interface for deployers willing to handle the file events in batch.
+ * <p/>
+ * Events received by the directory monitor during a check cycle (or during the configured quiet period) are
+ * coalesced per file, so a file created and then updated is only reported as created, while a file created and
+ * then deleted is not reported at all. Instead of the per-file callbacks, batch deployers receive all the accepted
+ * files of the batch at once.
+ *
+ * @author The OW2 Chameleon Team
+ * @version $Id: 1.0.4 $Id
+ * @since 1.10.10
+ */
+public interface BatchDeployer extends Deployer {
+
+    /**
+     * Callback called with a batch of coalesced file events. Only accepted files are given. At least one of the
+     * collections is not empty.
+     *
+     * @param created the created files, in the order of their creation
+     * @param changed the updated files
+     * @param deleted the deleted files
+     */
+    void onFilesChanged(Collection<File> created, Collection<File> changed, Collection<File> deleted);
+
+}
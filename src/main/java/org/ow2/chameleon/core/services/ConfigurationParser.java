@@ -0,0 +1,59 @@
+/*
+ * #%L
+ * OW2 Chameleon - Core
+ * %%
+ * Copyright (C) 2009 - 2014 OW2 Chameleon
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.ow2.chameleon.core.services;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Dictionary;
+import java.util.List;
+
+/**
+ * An interface to extend the configuration formats supported by the configuration deployer. Parsers are discovered
+ * using the {@link java.util.ServiceLoader} mechanism: implementations are declared in a
+ * {@literal META-INF/services/org.ow2.chameleon.core.services.ConfigurationParser} file of a jar of the Chameleon
+ * classpath. A parser declared this way replaces the built-in parser of the same extension.
+ * <p>
+ * The name of the file, without its extension, gives the configuration pid ({@literal pid.ext}) or the factory pid
+ * and the instance name ({@literal factoryPid-name.ext}).
+ *
+ * @author The OW2 Chameleon Team
+ * @version $Id: 1.0.4 $Id
+ * @since 1.10.10
+ */
+public interface ConfigurationParser {
+
+    /**
+     * Gets the file extensions (without the leading dot) handled by this parser.
+     *
+     * @return the list of extensions
+     */
+    List<String> getExtensions();
+
+    /**
+     * Parses the given configuration file. The returned values must be supported by the configuration admin:
+     * {@link String}, primitive wrappers, or arrays and collections of them.
+     *
+     * @param file the file
+     * @return the configuration properties
+     * @throws IOException if the file cannot be read or is malformed
+     */
+    Dictionary<String, Object> parse(File file) throws IOException;
+
+}
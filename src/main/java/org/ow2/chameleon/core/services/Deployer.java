@@ -33,6 +33,7 @@ public interface Deployer {
     /**
      * Does the current deployer accept the given file.
      * The accept method must not check file existence, as it may disable notification on file deletion.
+     * This method may be called concurrently from several threads, when the monitored directories are scanned.
      *
      * @param file the file
      * @return {@literal true} if the file is accepted by the current deployer, {@literal false} otherwise
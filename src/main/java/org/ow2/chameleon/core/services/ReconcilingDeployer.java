@@ -0,0 +1,49 @@
+/*
+ * #%L
+ * OW2 Chameleon - Core
+ * %%
+ * Copyright (C) 2009 - 2014 OW2 Chameleon
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.ow2.chameleon.core.services;
+
+import java.io.File;
+import java.util.Collection;
+
+/**
+ * An extension of the {@link Deployer} interface for deployers reconciling the content of a monitored directory
+ * with the state left by a previous run.
+ * <p/>
+ * When the framework storage is kept across restarts, the bundles and configurations deployed during the previous
+ * run are restored. Instead of {@link #open(java.util.Collection)}, reconciling deployers receive the monitored
+ * directory with its accepted files, so they can compare them with what is already deployed and only apply the
+ * difference: deploy the new files, update the changed ones, and withdraw the artifacts whose file has been
+ * removed from the directory.
+ *
+ * @author The OW2 Chameleon Team
+ * @version $Id: 1.0.4 $Id
+ * @since 1.10.10
+ */
+public interface ReconcilingDeployer extends Deployer {
+
+    /**
+     * Method called when the deployer is initialized, once per monitored directory.
+     *
+     * @param directory the monitored directory
+     * @param files     the set of accepted files currently present in the directory, potentially empty
+     */
+    void open(File directory, Collection<File> files);
+
+}
@@ -20,6 +20,8 @@
 package org.ow2.chameleon.core.services;
 
 import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  * An interface to check the stability of the running application.
@@ -31,7 +33,9 @@ import java.util.Map;
  * The stability service is implemented by Chameleon itself, but is made to be extended so the application can
  * contribute {@link org.ow2.chameleon.core.services.StabilityChecker} to extend the stability computation.
  * <p>
- * Be aware that stability computation is blocking the caller thread.
+ * Be aware that stability computation is blocking the caller thread, except when using
+ * {@link #stabilityAsync(long, java.util.concurrent.TimeUnit)}. To be notified of the stability changes, expose a
+ * {@link org.ow2.chameleon.core.services.StabilityListener} service.
  *
  * @author The OW2 Chameleon Team
  * @version $Id: 1.0.5 $Id
@@ -62,4 +66,16 @@ public interface Stability {
      */
     Map<StabilityChecker, StabilityResult> getStabilityResult();
 
+    /**
+     * Computes the stability asynchronously. The caller thread is not blocked, the returned future completes with
+     * the individual check results once the stability has been reached, or once the timeout has been reached (in
+     * this case, at least one of the results is unstable).
+     *
+     * @param timeout the maximum time to wait for the stability
+     * @param unit    the unit of the timeout
+     * @return the future results. The map is ordered.
+     * @since 1.10.10
+     */
+    Future<Map<StabilityChecker, StabilityResult>> stabilityAsync(long timeout, TimeUnit unit);
+
 }
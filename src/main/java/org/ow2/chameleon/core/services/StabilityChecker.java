@@ -29,12 +29,32 @@ package org.ow2.chameleon.core.services;
  * <li>The process ({@link #check()}) tries to reach the stability criteria</li>
  * <li>The caller thread is blocked, so fail the stability after a reasonable timeout</li>
  * </ul>
+ * <p>
+ * Checkers declaring the {@link #CONCURRENT_PROPERTY} service property are run concurrently with the other
+ * concurrent checkers having the same priority. The {@link #TIMEOUT_PROPERTY} service property sets a deadline
+ * after which the check is considered unstable.
  *
  * @version $Id: 1.0.5 $Id
  * @see org.ow2.chameleon.core.services.Stability
  */
 public interface StabilityChecker {
 
+    /**
+     * The service property declaring that the checker is independent from the other checkers having the same
+     * priority, and can be run concurrently with them. The value is a boolean (or its string representation).
+     *
+     * @since 1.10.10
+     */
+    String CONCURRENT_PROPERTY = "stability.concurrent";
+
+    /**
+     * The service property setting the maximum time (in milliseconds) given to the checker. Once reached, the check
+     * is interrupted and considered unstable. The value is a number (or its string representation).
+     *
+     * @since 1.10.10
+     */
+    String TIMEOUT_PROPERTY = "stability.timeout";
+
     /**
      * Gets the name of the checker. This is used to identify failed checks.
      *
@@ -0,0 +1,46 @@
+/*
+ * #%L
+ * OW2 Chameleon - Core
+ * %%
+ * Copyright (C) 2009 - 2014 OW2 Chameleon
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.ow2.chameleon.core.services;
+
+import java.util.Map;
+
+/**
+ * Whiteboard service notified when the stability of the system changes. Listeners are called from a thread
+ * managed by Chameleon, right after their registration with the current state, and then every time the system
+ * becomes stable or unstable.
+ * <p>
+ * Implementations must not block the caller thread for long, as all listeners are notified from the same thread.
+ *
+ * @author The OW2 Chameleon Team
+ * @version $Id: 1.0.4 $Id
+ * @see org.ow2.chameleon.core.services.Stability
+ * @since 1.10.10
+ */
+public interface StabilityListener {
+
+    /**
+     * Callback called when the stability of the system has changed.
+     *
+     * @param stable  whether the system is stable
+     * @param results the results of the individual checks, ordered
+     */
+    void stabilityChanged(boolean stable, Map<StabilityChecker, StabilityResult> results);
+
+}
@@ -43,9 +43,21 @@ public class StabilityResult {
      */
     public final Throwable cause;
 
+    /**
+     * The wall-clock time taken by the check in milliseconds, {@literal -1} if not measured.
+     *
+     * @since 1.10.10
+     */
+    public final long duration;
+
     private StabilityResult(String reason, Throwable cause) {
+        this(reason, cause, -1);
+    }
+
+    private StabilityResult(String reason, Throwable cause, long duration) {
         isStable = reason == null && cause == null;
         this.cause = cause;
+        this.duration = duration;
         if (reason != null) {
             this.reason = reason;
         } else if (cause != null) {
@@ -101,5 +113,16 @@ public class StabilityResult {
         return new StabilityResult(reason, cause);
     }
 
+    /**
+     * Creates a copy of this result holding the time taken by the check.
+     *
+     * @param duration the wall-clock time taken by the check in milliseconds
+     * @return the new result
+     * @since 1.10.10
+     */
+    public StabilityResult withDuration(long duration) {
+        return new StabilityResult(isStable ? null : reason, cause, duration);
+    }
+
 
 }
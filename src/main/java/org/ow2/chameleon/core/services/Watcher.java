@@ -50,6 +50,20 @@ public interface Watcher {
      */
     public boolean add(File directory, long polling);
 
+    /**
+     * Adds a directory to the watcher. If `polling` is not -1, the directory is monitored,
+     * otherwise only the initial provisioning is done. If `nativeWatch` is {@literal true},
+     * changes are detected using the file system notifications (such as inotify) instead of a periodic scan of the
+     * directory. In this case, the polling period is only used if the file system does not support notifications.
+     *
+     * @param directory   the directory
+     * @param polling     the polling period in ms, -1 to disable the watch.
+     * @param nativeWatch {@literal true} to rely on the file system notifications.
+     * @return {@literal true} if the directory was added, {@literal false} otherwise.
+     * @since 1.10.10
+     */
+    public boolean add(File directory, long polling, boolean nativeWatch);
+
     /**
      * If the directory was added, removes it. If the monitoring was enabled it disables the monitoring.
      * You have to call {@literal stop} on all directories where the {@literal add} methods have returned {@literal
@@ -60,4 +74,14 @@ public interface Watcher {
      */
     public boolean removeAndStopIfNeeded(File directory);
 
+    /**
+     * Gets the number of file change events that have been dropped because the content of the file was
+     * byte-identical to the last content notified to the deployers. This counter is always {@literal 0} if the
+     * content digest is disabled.
+     *
+     * @return the number of suppressed events
+     * @since 1.10.10
+     */
+    public long getSuppressedEventCount();
+
 }
@@ -20,16 +20,20 @@
 package org.ow2.chameleon.core.utils;
 
 import org.apache.commons.io.IOUtils;
-import org.osgi.framework.Bundle;
-import org.osgi.framework.Constants;
-import org.osgi.framework.ServiceRegistration;
+import org.osgi.framework.*;
+import org.osgi.framework.wiring.BundleRevision;
+import org.osgi.framework.wiring.BundleWire;
+import org.osgi.framework.wiring.BundleWiring;
+import org.osgi.framework.wiring.FrameworkWiring;
 import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.Dictionary;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
 
@@ -60,8 +64,30 @@ public final class BundleHelper {
      * @return {@literal true} if it's a bundle, {@literal false} otherwise.
      */
     public static boolean isBundle(File file) {
+        return isBundle(file, null);
+    }
+
+    /**
+     * Checks whether the given file is a bundle or not, as {@link #isBundle(File)} does. The manifest of a jar file
+     * is retrieved from the given cache when the file has not changed.
+     *
+     * @param file  the file.
+     * @param cache the jar metadata cache, {@literal null} to read the jar
+     * @return {@literal true} if it's a bundle, {@literal false} otherwise.
+     * @since 1.10.10
+     */
+    public static boolean isBundle(File file, JarMetadataCache cache) {
 
         if (file.isFile() && file.getName().endsWith(".jar")) {
+            if (cache != null) {
+                try {
+                    return cache.get(file).isBundle();
+                } catch (IOException e) {
+                    LoggerFactory.getLogger(BundleHelper.class).error("Cannot check if the file {} is a bundle, " +
+                            "cannot open it", file.getName(), e);
+                    return false;
+                }
+            }
             JarFile jar = null;
             try {
                 jar = new JarFile(file);
@@ -115,17 +141,267 @@ public final class BundleHelper {
 
     /**
      * Checks if a bundle is a fragment.
-     * It checks if the manifest contains the fragment
+     * It checks the type of the current bundle revision, computed once per revision by the framework. If the
+     * revision is not available (uninstalled bundle), it checks if the manifest contains the fragment
      * host header.
      *
      * @param bundle the bundle to check
      * @return true if the bundle is a fragment.
      */
     public static boolean isFragment(Bundle bundle) {
+        BundleRevision revision = bundle.adapt(BundleRevision.class);
+        if (revision != null) {
+            return (revision.getTypes() & BundleRevision.TYPE_FRAGMENT) != 0;
+        }
+        // Building the header dictionary is costly, as it is localized.
         Dictionary<String, String> headers = bundle.getHeaders();
         return headers.get(Constants.FRAGMENT_HOST) != null;
     }
 
+    /**
+     * Sorts the given bundles in dependency order: a bundle comes after the bundles (from the given collection)
+     * it is wired to. Bundles that are not resolved are placed at the end. Cycles are broken using the initial
+     * order.
+     *
+     * @param bundles the bundles
+     * @return the sorted list of bundles
+     */
+    public static List<Bundle> sortByDependencies(Collection<Bundle> bundles) {
+        Set<Bundle> set = new LinkedHashSet<Bundle>(bundles);
+        Set<Bundle> visited = new HashSet<Bundle>();
+        List<Bundle> sorted = new ArrayList<Bundle>();
+        List<Bundle> unresolved = new ArrayList<Bundle>();
+        for (Bundle bundle : set) {
+            visit(bundle, set, visited, sorted, unresolved);
+        }
+        sorted.addAll(unresolved);
+        return sorted;
+    }
+
+    private static void visit(Bundle bundle, Set<Bundle> bundles, Set<Bundle> visited, List<Bundle> sorted,
+                              List<Bundle> unresolved) {
+        if (!visited.add(bundle)) {
+            return;
+        }
+        BundleWiring wiring = bundle.adapt(BundleWiring.class);
+        if (wiring == null) {
+            unresolved.add(bundle);
+            return;
+        }
+        List<BundleWire> wires = wiring.getRequiredWires(null);
+        if (wires != null) {
+            for (BundleWire wire : wires) {
+                Bundle provider = wire.getProviderWiring().getBundle();
+                if (bundles.contains(provider)) {
+                    visit(provider, bundles, visited, sorted, unresolved);
+                }
+            }
+        }
+        sorted.add(bundle);
+    }
+
+    /**
+     * Groups the given bundles in dependency waves: the bundles of a wave are only wired to bundles (from the given
+     * collection) of the previous waves, so the bundles of a wave can be started concurrently once the previous
+     * waves are started. Bundles that are not resolved are placed in the last wave. Cycles are broken using the
+     * initial order.
+     *
+     * @param bundles the bundles
+     * @return the waves, in start order
+     */
+    public static List<List<Bundle>> groupByDependencies(Collection<Bundle> bundles) {
+        Set<Bundle> set = new LinkedHashSet<Bundle>(bundles);
+        Map<Bundle, Integer> levels = new HashMap<Bundle, Integer>();
+        Set<Bundle> visiting = new HashSet<Bundle>();
+        List<List<Bundle>> waves = new ArrayList<List<Bundle>>();
+        List<Bundle> unresolved = new ArrayList<Bundle>();
+        for (Bundle bundle : set) {
+            int level = level(bundle, set, levels, visiting);
+            if (level < 0) {
+                unresolved.add(bundle);
+                continue;
+            }
+            while (waves.size() <= level) {
+                waves.add(new ArrayList<Bundle>());
+            }
+            waves.get(level).add(bundle);
+        }
+        if (!unresolved.isEmpty()) {
+            waves.add(unresolved);
+        }
+        return waves;
+    }
+
+    /**
+     * Computes the wave of a bundle: 0 if it is not wired to any of the given bundles, otherwise 1 + the highest
+     * wave of its providers.
+     *
+     * @return the level, {@literal -1} if the bundle is not resolved
+     */
+    private static int level(Bundle bundle, Set<Bundle> bundles, Map<Bundle, Integer> levels, Set<Bundle> visiting) {
+        Integer known = levels.get(bundle);
+        if (known != null) {
+            return known;
+        }
+        BundleWiring wiring = bundle.adapt(BundleWiring.class);
+        if (wiring == null) {
+            levels.put(bundle, -1);
+            return -1;
+        }
+        visiting.add(bundle);
+        int level = 0;
+        List<BundleWire> wires = wiring.getRequiredWires(null);
+        if (wires != null) {
+            for (BundleWire wire : wires) {
+                Bundle provider = wire.getProviderWiring().getBundle();
+                // Ignore the wires to bundles not in the collection, and the wires closing a cycle.
+                if (provider != bundle && bundles.contains(provider) && !visiting.contains(provider)) {
+                    level = Math.max(level, level(provider, bundles, levels, visiting) + 1);
+                }
+            }
+        }
+        visiting.remove(bundle);
+        levels.put(bundle, level);
+        return level;
+    }
+
+    /**
+     * Installs the bundle from the given file, or reconciles the bundle already installed from the given location
+     * (restored by the framework, or installed before). The installed bundle is reused as it is when the file has
+     * not changed, and updated otherwise. A file has not changed if it is recorded unchanged (same length and
+     * checksum) in the {@link DeploymentSnapshot}. If not recorded, the file is compared with the installed bundle:
+     * it must not be newer than the installation (or last update) of the bundle, and its manifest must contain
+     * exactly the headers of the bundle. The date alone is not enough, as a file may be replaced by another one
+     * keeping an older date (copied with its attributes, or rolled back to a previous version).
+     *
+     * @param context  the bundle context
+     * @param file     the bundle file
+     * @param location the bundle location
+     * @param updated  the collection to populate with the updated bundles, which should be refreshed
+     * @param snapshot the deployment snapshot, {@literal null} if the warm restart is disabled
+     * @return the bundle
+     * @throws BundleException if the bundle cannot be installed or updated
+     */
+    public static Bundle install(BundleContext context, File file, String location, Collection<Bundle> updated,
+                                 DeploymentSnapshot snapshot) throws BundleException {
+        Bundle bundle = context.getBundle(location);
+        if (bundle != null && isUpToDate(bundle, file, snapshot)) {
+            LoggerFactory.getLogger(BundleHelper.class).debug("Reusing bundle {} installed from {}, the file has " +
+                    "not changed", bundle.getBundleId(), location);
+        } else if (bundle != null) {
+            LoggerFactory.getLogger(BundleHelper.class).info("Updating bundle {} - the file {} has changed",
+                    bundle.getSymbolicName(), file.getAbsolutePath());
+            // Stop the bundle first, so the update does not try to restart it before the refresh (it would fail
+            // for singletons, as the previous revision is still in use).
+            if (bundle.getState() == Bundle.ACTIVE || bundle.getState() == Bundle.STARTING) {
+                bundle.stop(Bundle.STOP_TRANSIENT);
+            }
+            bundle.update();
+            updated.add(bundle);
+        } else {
+            bundle = context.installBundle(location);
+        }
+        if (snapshot != null) {
+            snapshot.recordBundle(file, bundle);
+        }
+        return bundle;
+    }
+
+    private static boolean isUpToDate(Bundle bundle, File file, DeploymentSnapshot snapshot) {
+        if (snapshot != null && snapshot.contains(file)) {
+            return snapshot.isUnchanged(file, bundle.getBundleId());
+        }
+        // The last modification date of a bundle is the date of its installation or last update.
+        return file.lastModified() <= bundle.getLastModified() && hasSameManifest(bundle, file);
+    }
+
+    /**
+     * Checks whether the manifest of the given file contains exactly the (raw) headers of the given bundle.
+     *
+     * @param bundle the bundle
+     * @param file   the bundle file
+     * @return {@literal true} if the manifests are the same, {@literal false} if they differ or if the file cannot
+     * be read
+     */
+    private static boolean hasSameManifest(Bundle bundle, File file) {
+        Manifest manifest;
+        try {
+            manifest = readManifest(file);
+        } catch (IOException e) {
+            LoggerFactory.getLogger(BundleHelper.class).debug("Cannot read the manifest of {}", file, e);
+            return false;
+        }
+        Dictionary<String, String> headers = bundle.getHeaders("");
+        if (manifest == null || headers == null || headers.size() != manifest.getMainAttributes().size()) {
+            return false;
+        }
+        for (Map.Entry<Object, Object> attribute : manifest.getMainAttributes().entrySet()) {
+            if (!attribute.getValue().equals(headers.get(attribute.getKey().toString()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads the manifest of a bundle file or of an exploded bundle.
+     *
+     * @param file the bundle file or directory
+     * @return the manifest, {@literal null} if there is none
+     * @throws IOException if the manifest cannot be read
+     */
+    private static Manifest readManifest(File file) throws IOException {
+        if (file.isDirectory()) {
+            File manifest = new File(file, MANIFEST);
+            if (!manifest.isFile()) {
+                return null;
+            }
+            FileInputStream stream = new FileInputStream(manifest);
+            try {
+                return new Manifest(stream);
+            } finally {
+                IOUtils.closeQuietly(stream);
+            }
+        }
+        JarFile jar = new JarFile(file);
+        try {
+            return jar.getManifest();
+        } finally {
+            IOUtils.closeQuietly(jar);
+        }
+    }
+
+    /**
+     * Refreshes the given bundles and the bundles depending on them, and waits until the refresh is completed.
+     *
+     * @param context   a bundle context
+     * @param toRefresh the bundles to refresh
+     * @param timeout   the maximum time to wait in milliseconds
+     * @return {@literal true} if the refresh has completed, {@literal false} otherwise
+     */
+    public static boolean refreshAndWait(BundleContext context, Collection<Bundle> toRefresh, long timeout) {
+        FrameworkWiring wiring = context.getBundle(0L).adapt(FrameworkWiring.class);
+        final CountDownLatch latch = new CountDownLatch(1);
+        wiring.refreshBundles(toRefresh, new FrameworkListener() {
+            @Override
+            public void frameworkEvent(FrameworkEvent event) {
+                if (event.getThrowable() != null) { //NOSONAR
+                    LoggerFactory.getLogger(BundleHelper.class).error("An error was detected while refreshing " +
+                            "the bundles", event.getThrowable());
+                }
+                if (event.getType() == FrameworkEvent.PACKAGES_REFRESHED) {
+                    latch.countDown();
+                }
+            }
+        });
+        try {
+            return latch.await(timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
     /**
      * Un-registers the service. It ignores all exception that can happen while unregistering the service.
      *
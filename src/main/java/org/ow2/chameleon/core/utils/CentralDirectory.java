@@ -0,0 +1,295 @@
+/*
+ * #%L
+ * OW2 Chameleon - Core
+ * %%
+ * Copyright (C) 2009 - 2014 OW2 Chameleon
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.ow2.chameleon.core.utils;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Reads the package names and the manifest of a jar file from its zip central directory.
+ * <p/>
+ * Only the end of the file (to locate the central directory), the central directory itself and the manifest entry
+ * are read. The entry names are not decoded: the package name is only built when the directory of an entry differs
+ * from the directory of the previous one, and is interned, as thousands of classes share a few packages.
+ * <p/>
+ * Zip64 archives and archives with prepended data are not supported by this reader: they are read using a
+ * {@link JarFile}.
+ *
+ * @author The OW2 Chameleon Team
+ * @version $Id: 1.0.4 $Id
+ * @since 1.10.10
+ */
+final class CentralDirectory {
+
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int ENTRY_SIGNATURE = 0x02014b50;
+    private static final int LOCAL_SIGNATURE = 0x04034b50;
+
+    private static final int END_SIZE = 22;
+    private static final int ENTRY_SIZE = 46;
+    private static final int LOCAL_SIZE = 30;
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+
+    /**
+     * The maximum size of a manifest, larger manifests are ignored.
+     */
+    private static final int MAX_MANIFEST_SIZE = 16 * 1024 * 1024;
+
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+
+    private static final byte[] META_INF = "META-INF".getBytes(Charset.forName("US-ASCII"));
+    private static final byte[] MANIFEST = "META-INF/MANIFEST.MF".getBytes(Charset.forName("US-ASCII"));
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * A logger.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(CentralDirectory.class);
+
+    private final Set<String> packages;
+    private final Manifest manifest;
+
+    private CentralDirectory(Set<String> packages, Manifest manifest) {
+        this.packages = packages;
+        this.manifest = manifest;
+    }
+
+    /**
+     * @return the names of the packages containing at least one file, excluding the "META-INF" directory and the
+     * default package.
+     */
+    Set<String> getPackages() {
+        return packages;
+    }
+
+    /**
+     * @return the manifest, {@literal null} if the jar does not have a manifest.
+     */
+    Manifest getManifest() {
+        return manifest;
+    }
+
+    /**
+     * Reads the central directory of the given jar file.
+     *
+     * @param file the jar file
+     * @return the packages and manifest of the jar file
+     * @throws IOException if the file cannot be read, or is not a jar file
+     */
+    static CentralDirectory read(File file) throws IOException {
+        try {
+            return readCentralDirectory(file);
+        } catch (ZipException e) {
+            LOGGER.debug("Cannot read the central directory of {} ({}), opening it as a jar file",
+                    file.getAbsolutePath(), e.getMessage());
+        }
+        JarFile jar = new JarFile(file);
+        try {
+            return new CentralDirectory(JarScanner.packages(jar), jar.getManifest());
+        } finally {
+            IOUtils.closeQuietly(jar);
+        }
+    }
+
+    private static CentralDirectory readCentralDirectory(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            if (size < END_SIZE) {
+                throw new ZipException("Not a zip file: " + file.getAbsolutePath());
+            }
+            int tailSize = (int) Math.min(size, END_SIZE + MAX_COMMENT_SIZE);
+            ByteBuffer tail = read(channel, size - tailSize, tailSize);
+            int end = -1;
+            for (int i = tailSize - END_SIZE; i >= 0; i--) {
+                if (tail.getInt(i) == END_SIGNATURE) {
+                    end = i;
+                    break;
+                }
+            }
+            if (end < 0) {
+                throw new ZipException("End of central directory not found in " + file.getAbsolutePath());
+            }
+            int count = tail.getShort(end + 10) & 0xFFFF;
+            long directorySize = tail.getInt(end + 12) & 0xFFFFFFFFL;
+            long directoryOffset = tail.getInt(end + 16) & 0xFFFFFFFFL;
+            if (count == 0xFFFF || directoryOffset == 0xFFFFFFFFL
+                    || directoryOffset + directorySize > size - tailSize + end) {
+                throw new ZipException("Unsupported zip file (zip64 or prepended data): " + file.getAbsolutePath());
+            }
+            ByteBuffer directory = read(channel, directoryOffset, (int) directorySize);
+            return parse(channel, directory, count);
+        } finally {
+            IOUtils.closeQuietly(raf);
+        }
+    }
+
+    private static CentralDirectory parse(FileChannel channel, ByteBuffer directory, int count) throws IOException {
+        byte[] bytes = directory.array();
+        Set<String> packages = new LinkedHashSet<String>();
+        int manifestEntry = -1;
+        // The directory of the previous entry (offset and length of the name prefix in the buffer).
+        int previousStart = -1;
+        int previousLength = -1;
+        int position = 0;
+        for (int i = 0; i < count; i++) {
+            if (position + ENTRY_SIZE > directory.limit() || directory.getInt(position) != ENTRY_SIGNATURE) {
+                throw new ZipException("Invalid central directory entry");
+            }
+            int nameLength = directory.getShort(position + 28) & 0xFFFF;
+            int extraLength = directory.getShort(position + 30) & 0xFFFF;
+            int commentLength = directory.getShort(position + 32) & 0xFFFF;
+            int name = position + ENTRY_SIZE;
+            if (name + nameLength > directory.limit()) {
+                throw new ZipException("Invalid central directory entry");
+            }
+
+            if (regionMatches(bytes, name, nameLength, MANIFEST)) {
+                manifestEntry = position;
+            } else if (nameLength > 0 && bytes[name + nameLength - 1] != '/'
+                    && !startsWith(bytes, name, nameLength, META_INF)) {
+                int slash = lastIndexOf(bytes, name, nameLength, (byte) '/');
+                // Ignore the default package, and the entries of the same directory as the previous one.
+                if (slash > 0 && !(slash == previousLength && equals(bytes, previousStart, name, slash))) {
+                    previousStart = name;
+                    previousLength = slash;
+                    packages.add(new String(bytes, name, slash, UTF_8).replace('/', '.').intern());
+                }
+            }
+            position = name + nameLength + extraLength + commentLength;
+        }
+
+        Manifest manifest = null;
+        if (manifestEntry >= 0) {
+            manifest = readManifest(channel, directory, manifestEntry);
+        }
+        return new CentralDirectory(packages, manifest);
+    }
+
+    private static Manifest readManifest(FileChannel channel, ByteBuffer directory, int entry) throws IOException {
+        int method = directory.getShort(entry + 10) & 0xFFFF;
+        long compressedSize = directory.getInt(entry + 20) & 0xFFFFFFFFL;
+        long size = directory.getInt(entry + 24) & 0xFFFFFFFFL;
+        long offset = directory.getInt(entry + 42) & 0xFFFFFFFFL;
+        if (size > MAX_MANIFEST_SIZE || compressedSize > MAX_MANIFEST_SIZE
+                || (method != STORED && method != DEFLATED)) {
+            throw new ZipException("Unsupported manifest entry");
+        }
+        ByteBuffer local = read(channel, offset, LOCAL_SIZE);
+        if (local.getInt(0) != LOCAL_SIGNATURE) {
+            throw new ZipException("Invalid local header of the manifest entry");
+        }
+        long data = offset + LOCAL_SIZE + (local.getShort(26) & 0xFFFF) + (local.getShort(28) & 0xFFFF);
+        byte[] content = read(channel, data, (int) compressedSize).array();
+        if (method == DEFLATED) {
+            content = inflate(content, (int) size);
+        }
+        return new Manifest(new ByteArrayInputStream(content));
+    }
+
+    private static byte[] inflate(byte[] compressed, int size) throws ZipException {
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(compressed);
+            byte[] content = new byte[size];
+            int read = 0;
+            while (read < size && !inflater.finished()) {
+                int count = inflater.inflate(content, read, size - read);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                read += count;
+            }
+            if (read != size) {
+                throw new ZipException("Truncated manifest entry");
+            }
+            return content;
+        } catch (DataFormatException e) {
+            throw new ZipException("Invalid manifest entry: " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static boolean regionMatches(byte[] bytes, int start, int length, byte[] expected) {
+        return length == expected.length && startsWith(bytes, start, length, expected);
+    }
+
+    private static boolean startsWith(byte[] bytes, int start, int length, byte[] prefix) {
+        if (length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes[start + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int lastIndexOf(byte[] bytes, int start, int length, byte b) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (bytes[start + i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean equals(byte[] bytes, int first, int second, int length) {
+        for (int i = 0; i < length; i++) {
+            if (bytes[first + i] != bytes[second + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,341 @@
+/*
+ * #%L
+ * OW2 Chameleon - Core
+ * %%
+ * Copyright (C) 2009 - 2014 OW2 Chameleon
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.ow2.chameleon.core.utils;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.osgi.framework.Bundle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A persistent snapshot of the deployed state, used by the warm restart mode. For each deployed file, it records
+ * the file length, last modification date and CRC32 checksum, and the id of the installed bundle or the PID of the
+ * configuration created from the file.
+ * <p/>
+ * When the framework storage is kept across restarts, the framework restores the bundles installed during the
+ * previous run. The snapshot lets the deployers reuse these bundles when their file has not changed, instead of
+ * re-installing (and re-resolving) them (see
+ * {@link BundleHelper#install(org.osgi.framework.BundleContext, File, String, java.util.Collection,
+ * DeploymentSnapshot)}). Changed files update the restored bundle.
+ * <p/>
+ * The snapshot is stored in a binary file, read by {@link #load()} and written by {@link #save()}. It is created by
+ * the {@link org.ow2.chameleon.core.ChameleonConfiguration} when the warm restart is enabled, and given to the core
+ * activator and the deployers.
+ *
+ * @author The OW2 Chameleon Team
+ * @version $Id: 1.0.4 $Id
+ * @since 1.10.10
+ */
+public class DeploymentSnapshot {
+
+    /**
+     * The name of the snapshot file, stored in the OSGi storage directory, so it is removed with the cache.
+     */
+    public static final String FILE_NAME = "chameleon-deployment.snapshot";
+
+    /**
+     * Marker of the beginning of the file.
+     */
+    private static final int MAGIC = 0x43484453;
+
+    /**
+     * The version of the file format.
+     */
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * The bundle id of the entries not associated with a bundle.
+     */
+    private static final long NO_BUNDLE = -1L;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DeploymentSnapshot.class);
+
+    private final File file;
+
+    /**
+     * The entries by canonical path.
+     */
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    /**
+     * Whether the entries have been modified since the last load or save.
+     */
+    private volatile boolean dirty;
+
+    /**
+     * Creates a snapshot stored in the given file. The file is not read, call {@link #load()}.
+     *
+     * @param file the snapshot file
+     */
+    public DeploymentSnapshot(File file) {
+        this.file = file;
+    }
+
+    /**
+     * @return the snapshot file.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the number of entries.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Checks whether the given file is recorded in the snapshot.
+     *
+     * @param file the file
+     * @return {@literal true} if the file is recorded
+     */
+    public boolean contains(File file) {
+        return entries.containsKey(path(file));
+    }
+
+    /**
+     * Checks whether the given file has not changed since it was recorded with the given bundle.
+     *
+     * @param file     the file
+     * @param bundleId the bundle id
+     * @return {@literal true} if the file is recorded with this bundle and has not changed
+     */
+    public boolean isUnchanged(File file, long bundleId) {
+        Entry entry = entries.get(path(file));
+        return entry != null && entry.bundleId == bundleId && isUnchanged(file, entry);
+    }
+
+    /**
+     * Gets the PID of the configuration recorded for the given file.
+     *
+     * @param file the configuration file
+     * @return the PID, {@literal null} if none is recorded
+     */
+    public String getConfigurationPid(File file) {
+        Entry entry = entries.get(path(file));
+        return entry != null ? entry.pid : null;
+    }
+
+    /**
+     * Gets the PIDs of the configurations recorded for the files contained in the given directory (recursively).
+     *
+     * @param directory the directory
+     * @return the PIDs by file
+     */
+    public Map<File, String> getConfigurationPids(File directory) {
+        String prefix = path(directory) + File.separator;
+        Map<File, String> pids = new LinkedHashMap<File, String>();
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            if (entry.getValue().pid != null && entry.getKey().startsWith(prefix)) {
+                pids.put(new File(entry.getKey()), entry.getValue().pid);
+            }
+        }
+        return pids;
+    }
+
+    /**
+     * Records the configuration created from the given file.
+     *
+     * @param file the configuration file
+     * @param pid  the PID of the configuration
+     */
+    public void recordConfiguration(File file, String pid) {
+        record(file, NO_BUNDLE, pid);
+    }
+
+    /**
+     * Records the bundle installed from the given file.
+     *
+     * @param file   the bundle file
+     * @param bundle the bundle
+     */
+    public void recordBundle(File file, Bundle bundle) {
+        record(file, bundle.getBundleId(), null);
+    }
+
+    /**
+     * Removes the entry of the given file.
+     *
+     * @param file the file
+     */
+    public void remove(File file) {
+        if (entries.remove(path(file)) != null) {
+            dirty = true;
+        }
+    }
+
+    private void record(File file, long bundleId, String pid) {
+        String path = path(file);
+        Entry entry = entries.get(path);
+        if (entry != null && entry.bundleId == bundleId && equals(entry.pid, pid) && entry.length == file.length()
+                && entry.lastModified == file.lastModified()) {
+            return;
+        }
+        try {
+            entries.put(path, new Entry(file.length(), file.lastModified(), Checksums.crc32(file), bundleId, pid));
+            dirty = true;
+        } catch (IOException e) {
+            // The file will be deployed again on the next start.
+            LOGGER.debug("Cannot compute the checksum of {}", file.getAbsolutePath(), e);
+            remove(file);
+        }
+    }
+
+    private static boolean isUnchanged(File file, Entry entry) {
+        if (entry.length != file.length()) {
+            return false;
+        }
+        if (entry.lastModified == file.lastModified()) {
+            return true;
+        }
+        try {
+            // Touched or copied again, the content may be the same.
+            return entry.checksum == Checksums.crc32(file);
+        } catch (IOException e) {
+            LOGGER.debug("Cannot compute the checksum of {}", file.getAbsolutePath(), e);
+            return false;
+        }
+    }
+
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private static String path(File file) {
+        try {
+            return file.getCanonicalPath();
+        } catch (IOException e) {
+            return file.getAbsolutePath();
+        }
+    }
+
+    /**
+     * Loads the snapshot file. If the file does not exist or cannot be read, the snapshot starts empty.
+     */
+    public void load() {
+        if (!file.isFile()) {
+            return;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                LOGGER.info("Ignoring the deployment snapshot {}, unsupported format", file.getAbsolutePath());
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                long length = in.readLong();
+                long lastModified = in.readLong();
+                long crc = in.readLong();
+                long bundleId = in.readLong();
+                String pid = in.readBoolean() ? in.readUTF() : null;
+                entries.put(path, new Entry(length, lastModified, crc, bundleId, pid));
+            }
+            LOGGER.debug("{} entries loaded from the deployment snapshot", count);
+        } catch (IOException e) {
+            LOGGER.warn("Cannot read the deployment snapshot {}, starting with an empty snapshot",
+                    file.getAbsolutePath(), e);
+            entries.clear();
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+        dirty = false;
+    }
+
+    /**
+     * Writes the snapshot file if it has been modified. Entries of files that do not exist anymore are not written.
+     */
+    public synchronized void save() {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            FileUtils.forceMkdir(file.getParentFile());
+            Map<String, Entry> snapshot = new LinkedHashMap<String, Entry>();
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                if (new File(entry.getKey()).isFile()) {
+                    snapshot.put(entry.getKey(), entry.getValue());
+                }
+            }
+
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(snapshot.size());
+            for (Map.Entry<String, Entry> entry : snapshot.entrySet()) {
+                Entry value = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeLong(value.length);
+                out.writeLong(value.lastModified);
+                out.writeLong(value.checksum);
+                out.writeLong(value.bundleId);
+                out.writeBoolean(value.pid != null);
+                if (value.pid != null) {
+                    out.writeUTF(value.pid);
+                }
+            }
+            out.close();
+            out = null;
+            if (file.isFile()) {
+                FileUtils.forceDelete(file);
+            }
+            FileUtils.moveFile(tmp, file);
+            LOGGER.debug("{} entries written to the deployment snapshot", snapshot.size());
+        } catch (IOException e) {
+            LOGGER.warn("Cannot write the deployment snapshot {}", file.getAbsolutePath(), e);
+            FileUtils.deleteQuietly(tmp);
+        } finally {
+            IOUtils.closeQuietly(out);
+        }
+    }
+
+    /**
+     * The recorded state of a deployed file.
+     */
+    private static final class Entry {
+
+        private final long length;
+        private final long lastModified;
+        private final long checksum;
+        private final long bundleId;
+        private final String pid;
+
+        Entry(long length, long lastModified, long checksum, long bundleId, String pid) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.checksum = checksum;
+            this.bundleId = bundleId;
+            this.pid = pid;
+        }
+    }
+}
@@ -0,0 +1,627 @@
+/*
+ * #%L
+ * OW2 Chameleon - Core
+ * %%
+ * Copyright (C) 2009 - 2014 OW2 Chameleon
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.ow2.chameleon.core.utils;
+
+import org.apache.commons.io.monitor.FileAlterationListener;
+import org.apache.commons.io.monitor.FileAlterationMonitor;
+import org.apache.commons.io.monitor.FileAlterationObserver;
+import org.apache.commons.io.monitor.FileEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Monitors a directory tree and notifies the listeners of a {@link FileAlterationObserver} when files are created,
+ * changed or deleted.
+ * <p>
+ * Two modes are supported:
+ * <ul>
+ * <li><em>polling</em> - the directory is periodically scanned by a commons-io {@link FileAlterationMonitor}</li>
+ * <li><em>native</em> - the directory is watched using the {@link WatchService} of the file system (inotify on
+ * Linux). Every sub-directory is registered, so the whole tree is watched.</li>
+ * </ul>
+ * The native mode falls back to polling when the file system does not support watches, or when the JDK only
+ * provides a polling-based {@link WatchService}. When the watch service overflows (events were lost),
+ * the tree is re-scanned once to resynchronize the state.
+ * <p>
+ * In native mode, the creation of a file is notified once its length and date have not changed for
+ * {@link #SETTLE_PERIOD} milliseconds, so a file still being copied is not reported too early. A file deleted before
+ * being settled is not notified at all.
+ * <p>
+ * In both modes, each batch of notifications is surrounded by calls to
+ * {@link FileAlterationListener#onStart(FileAlterationObserver)} and
+ * {@link FileAlterationListener#onStop(FileAlterationObserver)}.
+ *
+ * @author The OW2 Chameleon Team
+ * @version $Id: 1.0.4 $Id
+ */
+public class FileChangeMonitor implements Runnable {
+
+    /**
+     * A logger.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileChangeMonitor.class);
+
+    /**
+     * The time in milliseconds during which the length and the date of a new file must not change before notifying
+     * its creation (native mode only).
+     */
+    public static final long SETTLE_PERIOD = 500L;
+
+    /**
+     * The observer holding the root directory, the file filter and the listeners.
+     */
+    private final FileAlterationObserver observer;
+
+    /**
+     * The polling period. In native mode, it is the maximum time to wait for the monitor thread when stopping.
+     */
+    private final long interval;
+
+    /**
+     * Whether or not the native mode was requested.
+     */
+    private final boolean nativeWatch;
+
+    /**
+     * The thread factory.
+     */
+    private final ThreadFactory threadFactory;
+
+    /**
+     * The watched directories indexed by watch keys.
+     */
+    private final Map<WatchKey, Path> keys = new HashMap<WatchKey, Path>();
+
+    /**
+     * The known files and directories (native mode only). This map, as well as the keys map, is only accessed by
+     * the monitor thread once started.
+     */
+    private final Map<File, FileEntry> entries = new HashMap<File, FileEntry>();
+
+    /**
+     * The new files whose creation is not notified yet, as they may still be written (native mode only). This map
+     * is only accessed by the monitor thread.
+     */
+    private final Map<File, Settling> settling = new LinkedHashMap<File, Settling>();
+
+    /**
+     * The polling monitor, set in polling mode or when the native mode is not supported.
+     */
+    private FileAlterationMonitor polling;
+
+    /**
+     * The watch service, set in native mode.
+     */
+    private volatile WatchService service;
+
+    /**
+     * The thread processing the native events.
+     */
+    private Thread thread;
+
+    /**
+     * Whether or not the monitor is running.
+     */
+    private volatile boolean running;
+
+    /**
+     * Creates a new file change monitor.
+     *
+     * @param observer      the observer holding the directory and the listeners
+     * @param interval      the polling period in milliseconds
+     * @param nativeWatch   {@literal true} to use the native mode, {@literal false} to use polling
+     * @param threadFactory the thread factory used to create the monitor thread
+     */
+    public FileChangeMonitor(FileAlterationObserver observer, long interval, boolean nativeWatch,
+                             ThreadFactory threadFactory) {
+        this.observer = observer;
+        this.interval = interval;
+        this.nativeWatch = nativeWatch;
+        this.threadFactory = threadFactory;
+    }
+
+    /**
+     * Gets the monitored directory.
+     *
+     * @return the directory
+     */
+    public File getDirectory() {
+        return observer.getDirectory();
+    }
+
+    /**
+     * Checks whether the directory is watched using the native mode. It returns {@literal false} if the native mode
+     * was requested, but was not supported.
+     *
+     * @return {@literal true} if the native mode is used.
+     */
+    public synchronized boolean isNative() {
+        return running && polling == null;
+    }
+
+    /**
+     * Starts the monitoring.
+     *
+     * @throws Exception if the monitoring cannot be started
+     */
+    public synchronized void start() throws Exception {
+        if (running) {
+            throw new IllegalStateException("Monitor is already running");
+        }
+
+        service = null;
+        if (nativeWatch) {
+            service = createWatchService();
+        }
+        keys.clear();
+        entries.clear();
+        settling.clear();
+
+        if (service == null) {
+            startPolling();
+            running = true;
+            return;
+        }
+
+        try {
+            register(getDirectory(), false);
+        } catch (IOException e) {
+            LOGGER.warn("Cannot watch {}, falling back to polling", getDirectory().getAbsolutePath(), e);
+            closeWatchService();
+            service = null;
+            startPolling();
+            running = true;
+            return;
+        }
+
+        running = true;
+        thread = threadFactory.newThread(this);
+        thread.start();
+    }
+
+    /**
+     * Stops the monitoring.
+     *
+     * @throws Exception if the monitoring cannot be stopped
+     */
+    public synchronized void stop() throws Exception {
+        if (!running) {
+            throw new IllegalStateException("Monitor is not running");
+        }
+        running = false;
+
+        if (polling != null) {
+            polling.stop();
+            polling = null;
+            return;
+        }
+
+        closeWatchService();
+        if (thread != null) {
+            try {
+                thread.join(interval);
+            } catch (InterruptedException e) { //NOSONAR
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+        }
+    }
+
+    /**
+     * Processes the events sent by the watch service until the monitor is stopped.
+     */
+    @Override
+    public void run() {
+        while (running) {
+            WatchKey key;
+            try {
+                if (settling.isEmpty()) {
+                    key = service.take();
+                } else {
+                    key = service.poll(SETTLE_PERIOD, TimeUnit.MILLISECONDS);
+                }
+            } catch (ClosedWatchServiceException e) { //NOSONAR
+                // Stopped.
+                return;
+            } catch (InterruptedException e) { //NOSONAR
+                // Stopped.
+                return;
+            }
+
+            List<File> settled = Collections.emptyList();
+            if (key == null) {
+                // Only waiting for new files to settle.
+                settled = getSettledFiles();
+                if (settled.isEmpty()) {
+                    continue;
+                }
+            }
+
+            fireStart();
+            try {
+                // Drain all the keys already signalled so they are notified within the same batch.
+                while (key != null) {
+                    process(key);
+                    key = service.poll();
+                }
+                if (settled.isEmpty()) {
+                    settled = getSettledFiles();
+                }
+                for (File file : settled) {
+                    if (track(file)) {
+                        fireCreate(file, false);
+                    }
+                }
+            } catch (ClosedWatchServiceException e) { //NOSONAR
+                // Stopped while processing, the remaining events are dropped.
+                return;
+            } finally {
+                fireStop();
+            }
+        }
+    }
+
+    /**
+     * Creates the watch service. {@code null} is returned if the file system does not support watches or only
+     * supports them by polling (in this case, the commons-io monitor is preferred as it is configurable).
+     *
+     * @return the watch service, {@code null} if not supported.
+     */
+    private WatchService createWatchService() {
+        WatchService ws;
+        try {
+            ws = getDirectory().toPath().getFileSystem().newWatchService();
+        } catch (UnsupportedOperationException e) {
+            LOGGER.warn("The file system of {} does not support watches, falling back to polling",
+                    getDirectory().getAbsolutePath());
+            return null;
+        } catch (IOException e) {
+            LOGGER.warn("Cannot create the watch service for {}, falling back to polling",
+                    getDirectory().getAbsolutePath(), e);
+            return null;
+        }
+
+        if (ws.getClass().getName().endsWith("PollingWatchService")) {
+            LOGGER.info("No native watch support for {}, falling back to polling", getDirectory().getAbsolutePath());
+            try {
+                ws.close();
+            } catch (IOException e) { //NOSONAR
+                // Ignored.
+            }
+            return null;
+        }
+        return ws;
+    }
+
+    private void closeWatchService() {
+        if (service != null) {
+            try {
+                service.close();
+            } catch (IOException e) {
+                LOGGER.debug("Cannot close the watch service of {}", getDirectory().getAbsolutePath(), e);
+            }
+        }
+    }
+
+    private void startPolling() throws Exception {
+        polling = new FileAlterationMonitor(interval, observer);
+        polling.setThreadFactory(threadFactory);
+        polling.start();
+    }
+
+    /**
+     * Registers the given directory and all its sub-directories to the watch service.
+     *
+     * @param directory the directory
+     * @param notify    whether or not the files found in the tree are notified as created files.
+     * @throws IOException if a directory cannot be registered
+     */
+    private void register(File directory, final boolean notify) throws IOException {
+        final FileFilter filter = observer.getFileFilter();
+        Files.walkFileTree(directory.toPath(), new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                File file = dir.toFile();
+                if (!file.equals(getDirectory()) && filter != null && !filter.accept(file)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                WatchKey key = dir.register(service, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+                keys.put(key, dir);
+                if (!file.equals(getDirectory()) && track(file) && notify) {
+                    fireCreate(file, true);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path path, BasicFileAttributes attrs) {
+                File file = path.toFile();
+                if (filter != null && !filter.accept(file)) {
+                    return FileVisitResult.CONTINUE;
+                }
+                if (!notify) {
+                    track(file);
+                } else if (!entries.containsKey(file)) {
+                    settle(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Starts tracking the given file.
+     *
+     * @param file the file
+     * @return {@literal true} if the file was not tracked yet.
+     */
+    private boolean track(File file) {
+        if (entries.containsKey(file)) {
+            return false;
+        }
+        FileEntry entry = new FileEntry(file);
+        entry.refresh(file);
+        entries.put(file, entry);
+        return true;
+    }
+
+    /**
+     * Starts waiting for the given new file to settle before notifying its creation.
+     *
+     * @param file the file
+     */
+    private void settle(File file) {
+        if (!settling.containsKey(file)) {
+            settling.put(file, new Settling(file));
+        }
+    }
+
+    /**
+     * Gets the new files whose length and date have not changed during the settle period, and stops waiting for
+     * them. The files that have disappeared are dropped.
+     *
+     * @return the settled files
+     */
+    private List<File> getSettledFiles() {
+        List<File> settled = new ArrayList<File>();
+        long now = System.nanoTime();
+        for (Iterator<Map.Entry<File, Settling>> iterator = settling.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<File, Settling> entry = iterator.next();
+            if (!entry.getKey().isFile()) {
+                iterator.remove();
+            } else if (entry.getValue().isSettled(entry.getKey(), now)) {
+                iterator.remove();
+                settled.add(entry.getKey());
+            }
+        }
+        return settled;
+    }
+
+    /**
+     * Processes the events of the given key.
+     *
+     * @param key the key
+     */
+    private void process(WatchKey key) {
+        Path dir = keys.get(key);
+        if (dir == null) {
+            key.cancel();
+            return;
+        }
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                LOGGER.info("Too many changes in {}, re-scanning the directory", getDirectory().getAbsolutePath());
+                resync();
+                continue;
+            }
+
+            File file = dir.resolve((Path) event.context()).toFile();
+            FileFilter filter = observer.getFileFilter();
+            if (filter != null && !entries.containsKey(file) && !settling.containsKey(file) && !filter.accept(file)) {
+                continue;
+            }
+
+            if (event.kind() == ENTRY_CREATE) {
+                onCreate(file);
+            } else if (event.kind() == ENTRY_MODIFY) {
+                onModify(file);
+            } else if (event.kind() == ENTRY_DELETE) {
+                onDelete(file);
+            }
+        }
+
+        if (!key.reset()) {
+            keys.remove(key);
+        }
+    }
+
+    private void onCreate(File file) {
+        if (file.isDirectory()) {
+            try {
+                // Register the new directory and notify the files already created in it.
+                register(file, true);
+            } catch (IOException e) {
+                LOGGER.error("Cannot watch the new directory {}", file.getAbsolutePath(), e);
+            }
+        } else if (!entries.containsKey(file)) {
+            settle(file);
+        } else {
+            // The file has been replaced.
+            onModify(file);
+        }
+    }
+
+    private void onModify(File file) {
+        Settling pending = settling.get(file);
+        if (pending != null) {
+            // Still being written, the creation will be notified once settled.
+            pending.isSettled(file, System.nanoTime());
+            return;
+        }
+        FileEntry entry = entries.get(file);
+        if (entry == null) {
+            // We missed the creation.
+            if (file.isFile()) {
+                settle(file);
+            }
+        } else if (!entry.isDirectory() && entry.refresh(file)) {
+            for (FileAlterationListener listener : observer.getListeners()) {
+                listener.onFileChange(file);
+            }
+        }
+    }
+
+    private void onDelete(File file) {
+        if (settling.remove(file) != null) {
+            // Never notified.
+            return;
+        }
+        FileEntry entry = entries.remove(file);
+        if (entry == null) {
+            return;
+        }
+        if (entry.isDirectory()) {
+            // Delete the contained files first. The files not notified yet are dropped.
+            String prefix = file.getAbsolutePath() + File.separator;
+            for (Iterator<File> iterator = settling.keySet().iterator(); iterator.hasNext(); ) {
+                if (iterator.next().getAbsolutePath().startsWith(prefix)) {
+                    iterator.remove();
+                }
+            }
+            List<File> children = new ArrayList<File>();
+            for (File f : entries.keySet()) {
+                if (f.getAbsolutePath().startsWith(prefix)) {
+                    children.add(f);
+                }
+            }
+            // Deepest first.
+            Collections.sort(children, Collections.reverseOrder());
+            for (File child : children) {
+                fireDelete(child, entries.remove(child).isDirectory());
+            }
+        }
+        fireDelete(file, entry.isDirectory());
+    }
+
+    /**
+     * Re-scans the whole tree and notifies the differences with the known state.
+     */
+    private void resync() {
+        // Deletions and changes of known files.
+        for (File file : new ArrayList<File>(entries.keySet())) {
+            FileEntry entry = entries.get(file);
+            if (entry == null) {
+                // Removed with its parent directory.
+                continue;
+            }
+            if (!file.exists()) {
+                onDelete(file);
+            } else if (!entry.isDirectory()) {
+                onModify(file);
+            }
+        }
+        // New files and directories (new directories are also registered).
+        try {
+            register(getDirectory(), true);
+        } catch (IOException e) {
+            LOGGER.error("Cannot re-scan the directory {}", getDirectory().getAbsolutePath(), e);
+        }
+    }
+
+    private void fireCreate(File file, boolean directory) {
+        for (FileAlterationListener listener : observer.getListeners()) {
+            if (directory) {
+                listener.onDirectoryCreate(file);
+            } else {
+                listener.onFileCreate(file);
+            }
+        }
+    }
+
+    private void fireDelete(File file, boolean directory) {
+        for (FileAlterationListener listener : observer.getListeners()) {
+            if (directory) {
+                listener.onDirectoryDelete(file);
+            } else {
+                listener.onFileDelete(file);
+            }
+        }
+    }
+
+    private void fireStart() {
+        for (FileAlterationListener listener : observer.getListeners()) {
+            listener.onStart(observer);
+        }
+    }
+
+    private void fireStop() {
+        for (FileAlterationListener listener : observer.getListeners()) {
+            listener.onStop(observer);
+        }
+    }
+
+    /**
+     * The last observed state of a new file.
+     */
+    private static final class Settling {
+
+        private long length;
+        private long lastModified;
+        private long since;
+
+        Settling(File file) {
+            this.length = file.length();
+            this.lastModified = file.lastModified();
+            this.since = System.nanoTime();
+        }
+
+        /**
+         * Checks whether the length and the date of the file have not changed during the settle period. If they
+         * have changed, the new state is recorded and the period restarts.
+         *
+         * @param file the file
+         * @param now  the current time (nanoTime)
+         * @return {@literal true} if the file is settled
+         */
+        boolean isSettled(File file, long now) {
+            long currentLength = file.length();
+            long currentDate = file.lastModified();
+            if (currentLength != length || currentDate != lastModified) {
+                length = currentLength;
+                lastModified = currentDate;
+                since = now;
+                return false;
+            }
+            return now - since >= TimeUnit.MILLISECONDS.toNanos(SETTLE_PERIOD);
+        }
+    }
+}
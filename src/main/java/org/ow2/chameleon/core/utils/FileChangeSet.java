@@ -0,0 +1,174 @@
+/*
+ * #%L
+ * OW2 Chameleon - Core
+ * %%
+ * Copyright (C) 2009 - 2014 OW2 Chameleon
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.ow2.chameleon.core.utils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects file events and coalesces them per file. The following sequences are collapsed:
+ * <ul>
+ * <li>created then changed: created</li>
+ * <li>created then deleted: nothing</li>
+ * <li>changed then deleted: deleted</li>
+ * <li>deleted then created: changed</li>
+ * </ul>
+ * Files are kept in the order of their last event. This class is not thread-safe.
+ *
+ * @author The OW2 Chameleon Team
+ * @version $Id: 1.0.4 $Id
+ * @since 1.10.10
+ */
+public class FileChangeSet {
+
+    /**
+     * The kind of change recorded for a file.
+     */
+    public enum Kind {
+        /**
+         * The file was created.
+         */
+        CREATED,
+        /**
+         * The file was updated.
+         */
+        CHANGED,
+        /**
+         * The file was deleted.
+         */
+        DELETED
+    }
+
+    /**
+     * The pending changes, in the order of the last event received for each file.
+     */
+    private final Map<File, Kind> changes = new LinkedHashMap<File, Kind>();
+
+    /**
+     * Records the creation of a file.
+     *
+     * @param file the file
+     */
+    public void created(File file) {
+        Kind previous = changes.remove(file);
+        if (previous == Kind.DELETED || previous == Kind.CHANGED) {
+            // The file was replaced.
+            changes.put(file, Kind.CHANGED);
+        } else {
+            changes.put(file, Kind.CREATED);
+        }
+    }
+
+    /**
+     * Records the update of a file.
+     *
+     * @param file the file
+     */
+    public void changed(File file) {
+        Kind previous = changes.remove(file);
+        if (previous == Kind.CREATED) {
+            // The deployers have not seen the file yet.
+            changes.put(file, Kind.CREATED);
+        } else {
+            changes.put(file, Kind.CHANGED);
+        }
+    }
+
+    /**
+     * Records the deletion of a file.
+     *
+     * @param file the file
+     */
+    public void deleted(File file) {
+        Kind previous = changes.remove(file);
+        if (previous != Kind.CREATED) {
+            changes.put(file, Kind.DELETED);
+        }
+        // Created and deleted within the same batch, the deployers don't have to know about it.
+    }
+
+    /**
+     * @return {@literal true} if there are no pending changes.
+     */
+    public boolean isEmpty() {
+        return changes.isEmpty();
+    }
+
+    /**
+     * @return the pending changes, in the order of the last event received for each file. The returned map is a
+     * copy.
+     */
+    public Map<File, Kind> getChanges() {
+        return new LinkedHashMap<File, Kind>(changes);
+    }
+
+    /**
+     * @return the created files.
+     */
+    public List<File> getCreated() {
+        return get(Kind.CREATED);
+    }
+
+    /**
+     * @return the updated files.
+     */
+    public List<File> getChanged() {
+        return get(Kind.CHANGED);
+    }
+
+    /**
+     * @return the deleted files.
+     */
+    public List<File> getDeleted() {
+        return get(Kind.DELETED);
+    }
+
+    /**
+     * Removes all pending changes.
+     */
+    public void clear() {
+        changes.clear();
+    }
+
+    /**
+     * Moves the pending changes to a new change set. This change set is empty after the call.
+     *
+     * @return a change set containing the changes recorded so far.
+     */
+    public FileChangeSet drain() {
+        FileChangeSet set = new FileChangeSet();
+        set.changes.putAll(changes);
+        changes.clear();
+        return set;
+    }
+
+    private List<File> get(Kind kind) {
+        List<File> files = new ArrayList<File>();
+        for (Map.Entry<File, Kind> entry : changes.entrySet()) {
+            if (entry.getValue() == kind) {
+                files.add(entry.getKey());
+            }
+        }
+        return files;
+    }
+}
@@ -23,18 +23,28 @@ import com.google.common.collect.ImmutableList;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.ow2.chameleon.core.ChameleonConfiguration;
+import org.ow2.chameleon.core.Constants;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.security.AccessController;
+import java.security.CodeSource;
 import java.security.PrivilegedAction;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.Enumeration;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
 
 /**
  * The classloader responsible to load the framework classes and providing access to the classes and resources from
@@ -43,6 +53,17 @@ import java.util.Map;
  * <p>
  * The Framework is loaded in a different classloader to access the jar contained in the 'libs' directory.
  * Notice that the framework jar must be in the Chameleon's classpath.
+ * <p>
+ * This classloader is parallel capable: classes are loaded under a per-class-name lock, so concurrent loads of
+ * different classes do not block each other, and a framework class is never defined twice.
+ * <p>
+ * Classes and resources from the 'libs' directory are looked up in the jars containing their package only, using a
+ * {@link LibsJarIndex}, instead of probing every jar. The classes of a package missing from the index are still
+ * searched in every jar.
+ * <p>
+ * When the 'libs' directory does not contain any jar, the framework classes are not defined by this classloader but
+ * loaded by the parent classloader: they can then be stored in a class data sharing (AppCDS) archive, which is not
+ * possible for classes defined from byte arrays.
  */
 public final class FrameworkClassLoader extends URLClassLoader {
 
@@ -53,10 +74,21 @@ public final class FrameworkClassLoader extends URLClassLoader {
             "org.apache.felix.framework"
     );
 
+    static {
+        ClassLoader.registerAsParallelCapable();
+    }
+
     /**
      * The set of defined classes.
      */
-    private Map<String, Class> classes = new HashMap<String, Class>();
+    private final ConcurrentMap<String, Class<?>> classes = new ConcurrentHashMap<String, Class<?>>();
+
+    /**
+     * The names of the classes that cannot be loaded by the {@link #libsClassLoader}. The set of jars of this
+     * classloader does not change, so the lookup is not attempted again (avoiding the creation of a
+     * {@link ClassNotFoundException} on every load).
+     */
+    private final Set<String> missingFromLibs = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
 
     /**
      * A classloader limited to the jars contained in the 'libs' directory. This classloader is used to ensure the
@@ -66,6 +98,16 @@ public final class FrameworkClassLoader extends URLClassLoader {
      */
     protected final URLClassLoader libsClassLoader;
 
+    /**
+     * Whether the framework classes are defined by this classloader, i.e. if there are jars in the 'libs' directory.
+     */
+    private final boolean defineFrameworkClasses;
+
+    /**
+     * The index of the packages of the 'libs' jars, {@literal null} if the jars are looked up sequentially.
+     */
+    private final LibsJarIndex index;
+
     /**
      * Gets an instance of {@link org.ow2.chameleon.core.utils.FrameworkClassLoader}.
      *
@@ -76,13 +118,16 @@ public final class FrameworkClassLoader extends URLClassLoader {
         return AccessController.doPrivileged(new PrivilegedAction<ClassLoader>() {
             @Override
             public ClassLoader run() {
-                return new FrameworkClassLoader(basedir, null);
+                return new FrameworkClassLoader(basedir, null, true);
             }
         });
     }
 
     /**
      * Gets an instance of {@link org.ow2.chameleon.core.utils.FrameworkClassLoader}.
+     * <p>
+     * The {@link LibsExportIndex} file of the 'libs' directory is not read nor written if the
+     * {@code chameleon.libs.index} property is set to {@literal false}.
      *
      * @param basedir       the base directory. The 'libs' folder must be a direct child of this directory.
      * @param configuration the Chameleon configuration.
@@ -93,9 +138,10 @@ public final class FrameworkClassLoader extends URLClassLoader {
             @Override
             public ClassLoader run() {
                 if (configuration != null) {
-                    return new FrameworkClassLoader(basedir, configuration.get("chameleon.libraries.parent"));
+                    return new FrameworkClassLoader(basedir, configuration.get("chameleon.libraries.parent"),
+                            !"false".equalsIgnoreCase(configuration.get(Constants.CHAMELEON_LIBS_INDEX_PROPERTY)));
                 } else {
-                    return new FrameworkClassLoader(basedir, null);
+                    return new FrameworkClassLoader(basedir, null, true);
                 }
             }
         });
@@ -108,8 +154,10 @@ public final class FrameworkClassLoader extends URLClassLoader {
      *
      * @param basedir               the base directory. The 'libs' folder must be a direct child of this directory.
      * @param librariesParentPolicy the delegation policy for the library classloader
+     * @param persistentIndex       whether the package index of the 'libs' directory is read from (and written to)
+     *                              the {@link LibsExportIndex} file
      */
-    private FrameworkClassLoader(File basedir, String librariesParentPolicy) {
+    private FrameworkClassLoader(File basedir, String librariesParentPolicy, boolean persistentIndex) {
         super(jars(new File(basedir.getAbsoluteFile(), "libs")), FrameworkClassLoader.class.getClassLoader());
 
         ClassLoader parent = null;
@@ -124,8 +172,13 @@ public final class FrameworkClassLoader extends URLClassLoader {
                     " supported: {system, application and parent}");
         }
 
-        libsClassLoader = new URLClassLoader(jars(new File(basedir.getAbsoluteFile(), "libs")),
-                parent);
+        defineFrameworkClasses = getURLs().length > 0;
+        index = LibsJarIndex.create(new File(basedir.getAbsoluteFile(), "libs"), getURLs(), persistentIndex);
+        if (index == null) {
+            libsClassLoader = new URLClassLoader(getURLs(), parent);
+        } else {
+            libsClassLoader = new LibsClassLoader(getURLs(), parent, index);
+        }
     }
 
 
@@ -150,47 +203,108 @@ public final class FrameworkClassLoader extends URLClassLoader {
 
     /**
      * Loads a class.
-     * If the class needs to be defined by this classloader, the byte code of the class is retrieved from the
-     * classpath and defined. Otherwise, the parent classloader is used.
+     * If the class needs to be defined by this classloader (and the 'libs' directory contains jars), the byte code of
+     * the class is retrieved from the classpath and defined. Otherwise, the parent classloader is used.
      * <p>
      * If the byte code of the class cannot be found, it delegates to the parent.
      * <p>
-     * Defined classes are stored, and not redefined.
+     * Defined classes are stored, and not redefined. Classes that cannot be found in the 'libs' directory are
+     * remembered, and directly delegated to the parent the next time.
      *
      * @param name the class name
      * @return the loaded class
      * @throws ClassNotFoundException if the class cannot be found
      */
     @Override
-    public Class loadClass(String name) throws ClassNotFoundException {
-        if (classes.containsKey(name)) {
-            return classes.get(name);
+    public Class<?> loadClass(String name) throws ClassNotFoundException {
+        Class<?> defined = classes.get(name);
+        if (defined != null) {
+            return defined;
         }
 
-        if (hasToBeDefined(name)) {
-            try {
-                byte[] bytes = getByteCode(name);
-                if (bytes.length != 0) {
-                    Class c = defineClass(name, bytes, 0, bytes.length, FrameworkClassLoader.class.getProtectionDomain());
-                    classes.put(name, c);
-                    return c;
+        if (defineFrameworkClasses && hasToBeDefined(name)) {
+            synchronized (getClassLoadingLock(name)) {
+                // Another thread may have defined the class while we were waiting for the lock.
+                defined = classes.get(name);
+                if (defined != null) {
+                    return defined;
+                }
+                try {
+                    byte[] bytes = getByteCode(name);
+                    if (bytes.length != 0) {
+                        Class<?> c = defineClass(name, bytes, 0, bytes.length,
+                                FrameworkClassLoader.class.getProtectionDomain());
+                        classes.put(name, c);
+                        return c;
+                    }
+                } catch (IOException e) { //NOSONAR
+                    // Do nothing, we are going to try with the parent classloader.
                 }
-            } catch (IOException e) { //NOSONAR
-                // Do nothing, we are going to try with the parent classloader.
             }
         }
 
         // We need to ensure that classes are loaded from libs first, to avoid conflicts with the classpath.
-        try {
-            return libsClassLoader.loadClass(name);
-        } catch (ClassNotFoundException e) {
-            // Cannot be found with the lib classloader, just delegate to parent.
-            // Yes, the same classes will be analyzed than the previous attempt, but in the right order.
-            // Indeed, the url class loader delegates to the parent first, and then checks its own content.
-            return super.loadClass(name);
+        if (!missingFromLibs.contains(name)) {
+            try {
+                return libsClassLoader.loadClass(name);
+            } catch (ClassNotFoundException e) { //NOSONAR
+                missingFromLibs.add(name);
+            }
+        }
+        // Cannot be found with the lib classloader, just delegate to parent.
+        // Yes, the same classes will be analyzed than the previous attempt, but in the right order.
+        // Indeed, the url class loader delegates to the parent first, and then checks its own content.
+        return super.loadClass(name);
+    }
+
+
+    /**
+     * Finds a resource in the 'libs' jars, only looking into the jars containing its package.
+     *
+     * @param name the resource name
+     * @return the url of the resource, {@literal null} if not found
+     */
+    @Override
+    public URL findResource(String name) {
+        if (index != null && index.covers(name)) {
+            return index.findResource(name);
+        }
+        return super.findResource(name);
+    }
+
+    /**
+     * Finds the resources having the given name in the 'libs' jars, only looking into the jars containing their
+     * package.
+     *
+     * @param name the resource name
+     * @return the urls of the resources
+     * @throws IOException if the jars cannot be read
+     */
+    @Override
+    public Enumeration<URL> findResources(String name) throws IOException {
+        if (index != null && index.covers(name)) {
+            return Collections.enumeration(index.findResources(name));
         }
+        return super.findResources(name);
     }
 
+    /**
+     * Closes this classloader, the classloader of the 'libs' jars, and the jar files opened by the
+     * {@link LibsJarIndex}.
+     *
+     * @throws IOException if the jars cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        if (index != null) {
+            index.close();
+        }
+        try {
+            libsClassLoader.close();
+        } finally {
+            super.close();
+        }
+    }
 
     /**
      * Gets the byte code of the given class. The '.class' file is loaded using the parent classloader.
@@ -228,4 +342,84 @@ public final class FrameworkClassLoader extends URLClassLoader {
         return urls.toArray(new URL[urls.size()]);
     }
 
+    /**
+     * The classloader of the 'libs' jars, using the {@link LibsJarIndex} to find classes and resources.
+     */
+    private static final class LibsClassLoader extends URLClassLoader {
+
+        static {
+            ClassLoader.registerAsParallelCapable();
+        }
+
+        private final LibsJarIndex index;
+
+        LibsClassLoader(URL[] urls, ClassLoader parent, LibsJarIndex index) {
+            super(urls, parent);
+            this.index = index;
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            String path = name.replace('.', '/').concat(".class");
+            List<URL> jars = index.covers(path) ? index.getOwners(path) : Collections.<URL>emptyList();
+            if (jars.isEmpty()) {
+                // Not indexed, the jars are searched sequentially.
+                return super.findClass(name);
+            }
+            for (URL jar : jars) {
+                try {
+                    JarFile file = index.getJarFile(jar);
+                    JarEntry entry = file.getJarEntry(path);
+                    if (entry != null) {
+                        return define(name, jar, file, entry);
+                    }
+                } catch (IOException e) {
+                    throw new ClassNotFoundException(name, e);
+                }
+            }
+            throw new ClassNotFoundException(name);
+        }
+
+        private Class<?> define(String name, URL jar, JarFile file, JarEntry entry) throws IOException {
+            byte[] bytes;
+            InputStream stream = file.getInputStream(entry);
+            try {
+                bytes = IOUtils.toByteArray(stream);
+            } finally {
+                IOUtils.closeQuietly(stream);
+            }
+
+            String pckg = name.substring(0, name.lastIndexOf('.'));
+            if (getPackage(pckg) == null) {
+                try {
+                    Manifest manifest = file.getManifest();
+                    if (manifest != null) {
+                        definePackage(pckg, manifest, jar);
+                    } else {
+                        definePackage(pckg, null, null, null, null, null, null, null);
+                    }
+                } catch (IllegalArgumentException e) { //NOSONAR
+                    // Defined concurrently by another thread.
+                }
+            }
+            // The code signers are available once the entry has been read.
+            return defineClass(name, bytes, 0, bytes.length, new CodeSource(jar, entry.getCodeSigners()));
+        }
+
+        @Override
+        public URL findResource(String name) {
+            if (index.covers(name)) {
+                return index.findResource(name);
+            }
+            return super.findResource(name);
+        }
+
+        @Override
+        public Enumeration<URL> findResources(String name) throws IOException {
+            if (index.covers(name)) {
+                return Collections.enumeration(index.findResources(name));
+            }
+            return super.findResources(name);
+        }
+    }
 }
@@ -45,6 +45,7 @@ public class FrameworkManager {
     private static final Logger LOGGER = LoggerFactory.getLogger(FrameworkManager.class);
     private final ChameleonConfiguration configuration;
     private final Chameleon chameleon;
+    private final StartupProfiler profiler;
 
     /**
      * Creates the framework manager.
@@ -54,8 +55,23 @@ public class FrameworkManager {
      * @throws java.io.IOException if any.
      */
     public FrameworkManager(Chameleon chameleon, ChameleonConfiguration configuration) throws IOException {
+        this(chameleon, configuration, null);
+    }
+
+    /**
+     * Creates the framework manager.
+     *
+     * @param chameleon     a {@link org.ow2.chameleon.core.Chameleon} object.
+     * @param configuration a {@link org.ow2.chameleon.core.ChameleonConfiguration} object.
+     * @param profiler      the startup profiler recording the framework start, {@literal null} if disabled
+     * @throws java.io.IOException if any.
+     * @since 1.10.10
+     */
+    public FrameworkManager(Chameleon chameleon, ChameleonConfiguration configuration, StartupProfiler profiler)
+            throws IOException {
         this.configuration = configuration;
         this.chameleon = chameleon;
+        this.profiler = profiler;
         framework = FrameworkUtil.create(configuration.getBaseDirectory(), configuration);
     }
 
@@ -86,7 +102,9 @@ public class FrameworkManager {
      *                                            correctly.
      */
     public Framework start() throws BundleException {
+        StartupProfiler.Span span = StartupProfiler.begin(profiler, "framework init", StartupProfiler.PHASE);
         framework.init();
+        span.end();
 
         if (configuration.isInteractiveModeEnabled()) {
             // The interactive mode is enabled, to avoid issue during the stopping sequence we listen for a specific
@@ -110,15 +128,20 @@ public class FrameworkManager {
             }
         }
 
+        span = StartupProfiler.begin(profiler, "framework start", StartupProfiler.PHASE);
         framework.start();
+        span.end();
 
         for (BundleActivator activator : activators) {
+            span = StartupProfiler.begin(profiler, activator.getClass().getSimpleName(), StartupProfiler.ACTIVATOR);
             try {
                 activator.start(framework.getBundleContext());
             } catch (Exception e) {
                 LOGGER.error("Cannot start internal activator : {}", activator, e);
                 throw new BundleException("Cannot start internal activator : " + activator + " : " + e.getMessage(),
                         e);
+            } finally {
+                span.end();
             }
         }
 
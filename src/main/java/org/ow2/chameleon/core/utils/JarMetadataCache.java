@@ -0,0 +1,371 @@
+/*
+ * #%L
+ * OW2 Chameleon - Core
+ * %%
+ * Copyright (C) 2009 - 2014 OW2 Chameleon
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.ow2.chameleon.core.utils;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.osgi.framework.Constants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+
+/**
+ * A persistent cache of the metadata extracted from jar files (bundle symbolic name, fragment host, version,
+ * exported packages and contained packages). Entries are keyed by the canonical path of the jar and validated using
+ * the file length and last modification date (and optionally a CRC32 checksum of the content), so unchanged jars are
+ * not re-opened.
+ * <p/>
+ * The cache is stored in a binary file, read by {@link #load()} and written by {@link #save()}. It is created by the
+ * {@link org.ow2.chameleon.core.ChameleonConfiguration}, and given to the components checking jars, which pass it to
+ * {@link BundleHelper#isBundle(java.io.File, JarMetadataCache)} and
+ * {@link JarScanner#scan(java.io.File, JarMetadataCache)}.
+ *
+ * @author The OW2 Chameleon Team
+ * @version $Id: 1.0.4 $Id
+ * @since 1.10.10
+ */
+public class JarMetadataCache {
+
+    /**
+     * The name of the cache file.
+     */
+    public static final String FILE_NAME = "chameleon-jar-metadata.cache";
+
+    /**
+     * Identifies the format of the cache file.
+     */
+    private static final int MAGIC = 0x43484A4D;
+
+    /**
+     * The version of the format of the cache file. Files using another version are ignored.
+     */
+    private static final int FORMAT_VERSION = 2;
+
+    /**
+     * Marker used when the checksum has not been computed.
+     */
+    private static final long NO_CHECKSUM = -1L;
+
+    /**
+     * A logger.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(JarMetadataCache.class);
+
+    /**
+     * The cache file.
+     */
+    private final File file;
+
+    /**
+     * Whether the checksum of the content is used to validate the entries whose last modification date has
+     * changed.
+     */
+    private final boolean checksum;
+
+    /**
+     * The entries, by canonical path.
+     */
+    private final ConcurrentMap<String, JarMetadata> entries = new ConcurrentHashMap<String, JarMetadata>();
+
+    /**
+     * Whether the cache has been modified since it was loaded or saved.
+     */
+    private volatile boolean dirty;
+
+    /**
+     * Creates a cache stored in the given file. The file is not read, call {@link #load()}.
+     *
+     * @param file     the cache file
+     * @param checksum whether a CRC32 checksum of the jar content is used to validate the entries whose last
+     *                 modification date has changed but not their length.
+     */
+    public JarMetadataCache(File file, boolean checksum) {
+        this.file = file;
+        this.checksum = checksum;
+    }
+
+    /**
+     * @return the cache file.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the number of entries.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Gets the metadata of the given jar file. If the jar has not changed since the metadata have been cached, the
+     * jar file is not opened.
+     *
+     * @param jar the jar file
+     * @return the metadata
+     * @throws IOException if the jar file cannot be read
+     */
+    public JarMetadata get(File jar) throws IOException {
+        String path = jar.getCanonicalPath();
+        long length = jar.length();
+        long lastModified = jar.lastModified();
+        JarMetadata metadata = entries.get(path);
+        if (metadata != null && metadata.length == length) {
+            if (metadata.lastModified == lastModified) {
+                return metadata;
+            }
+            if (checksum && metadata.checksum != NO_CHECKSUM && metadata.checksum == Checksums.crc32(jar)) {
+                // Touched or copied again, but the content is the same.
+                metadata = metadata.withLastModified(lastModified);
+                entries.put(path, metadata);
+                dirty = true;
+                return metadata;
+            }
+        }
+
+        metadata = read(jar, length, lastModified, checksum ? Checksums.crc32(jar) : NO_CHECKSUM);
+        entries.put(path, metadata);
+        dirty = true;
+        return metadata;
+    }
+
+    private static JarMetadata read(File file, long length, long lastModified, long crc) throws IOException {
+        CentralDirectory directory = CentralDirectory.read(file);
+        String symbolicName = null;
+        String fragmentHost = null;
+        String version = null;
+        Manifest manifest = directory.getManifest();
+        if (manifest != null && manifest.getMainAttributes() != null) {
+            Attributes attributes = manifest.getMainAttributes();
+            symbolicName = attributes.getValue(Constants.BUNDLE_SYMBOLICNAME);
+            fragmentHost = attributes.getValue(Constants.FRAGMENT_HOST);
+            version = attributes.getValue(Constants.BUNDLE_VERSION);
+        }
+        return new JarMetadata(length, lastModified, crc, symbolicName, fragmentHost, version,
+                JarScanner.exports(manifest), directory.getPackages());
+    }
+
+    /**
+     * Loads the cache file. If the file does not exist or cannot be read, the cache starts empty.
+     */
+    public void load() {
+        if (!file.isFile()) {
+            return;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                LOGGER.info("Ignoring the jar metadata cache {}, unsupported format", file.getAbsolutePath());
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                long length = in.readLong();
+                long lastModified = in.readLong();
+                long crc = in.readLong();
+                String symbolicName = readOptionalString(in);
+                String fragmentHost = readOptionalString(in);
+                String version = readOptionalString(in);
+                int exportCount = in.readInt();
+                Map<String, String> exports = new LinkedHashMap<String, String>(exportCount * 2);
+                for (int j = 0; j < exportCount; j++) {
+                    exports.put(in.readUTF().intern(), in.readUTF());
+                }
+                int packageCount = in.readInt();
+                Set<String> packages = new LinkedHashSet<String>(packageCount * 2);
+                for (int j = 0; j < packageCount; j++) {
+                    packages.add(in.readUTF().intern());
+                }
+                entries.put(path, new JarMetadata(length, lastModified, crc, symbolicName, fragmentHost, version,
+                        exports, packages));
+            }
+            LOGGER.debug("{} entries loaded from the jar metadata cache", count);
+        } catch (IOException e) {
+            LOGGER.warn("Cannot read the jar metadata cache {}, starting with an empty cache",
+                    file.getAbsolutePath(), e);
+            entries.clear();
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+        dirty = false;
+    }
+
+    /**
+     * Writes the cache file if the cache has been modified. Entries of jar files that do not exist anymore are
+     * not written.
+     */
+    public synchronized void save() {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            FileUtils.forceMkdir(file.getParentFile());
+            Map<String, JarMetadata> snapshot = new LinkedHashMap<String, JarMetadata>();
+            for (Map.Entry<String, JarMetadata> entry : entries.entrySet()) {
+                if (new File(entry.getKey()).isFile()) {
+                    snapshot.put(entry.getKey(), entry.getValue());
+                }
+            }
+
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(snapshot.size());
+            for (Map.Entry<String, JarMetadata> entry : snapshot.entrySet()) {
+                JarMetadata metadata = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeLong(metadata.length);
+                out.writeLong(metadata.lastModified);
+                out.writeLong(metadata.checksum);
+                writeOptionalString(out, metadata.symbolicName);
+                writeOptionalString(out, metadata.fragmentHost);
+                writeOptionalString(out, metadata.version);
+                out.writeInt(metadata.exports.size());
+                for (Map.Entry<String, String> export : metadata.exports.entrySet()) {
+                    out.writeUTF(export.getKey());
+                    out.writeUTF(export.getValue());
+                }
+                out.writeInt(metadata.packages.size());
+                for (String pckg : metadata.packages) {
+                    out.writeUTF(pckg);
+                }
+            }
+            out.close();
+            out = null;
+            if (file.isFile()) {
+                FileUtils.forceDelete(file);
+            }
+            FileUtils.moveFile(tmp, file);
+            LOGGER.debug("{} entries written to the jar metadata cache", snapshot.size());
+        } catch (IOException e) {
+            LOGGER.warn("Cannot write the jar metadata cache {}", file.getAbsolutePath(), e);
+            FileUtils.deleteQuietly(tmp);
+        } finally {
+            IOUtils.closeQuietly(out);
+        }
+    }
+
+    private static String readOptionalString(DataInput in) throws IOException {
+        if (in.readBoolean()) {
+            return in.readUTF();
+        }
+        return null;
+    }
+
+    private static void writeOptionalString(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    /**
+     * The metadata extracted from a jar file.
+     */
+    public static final class JarMetadata {
+
+        private final long length;
+        private final long lastModified;
+        private final long checksum;
+        private final String symbolicName;
+        private final String fragmentHost;
+        private final String version;
+        private final Map<String, String> exports;
+        private final Set<String> packages;
+
+        JarMetadata(long length, long lastModified, long checksum, String symbolicName, String fragmentHost,
+                    String version, Map<String, String> exports, Set<String> packages) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.checksum = checksum;
+            this.symbolicName = symbolicName;
+            this.fragmentHost = fragmentHost;
+            this.version = version;
+            this.exports = Collections.unmodifiableMap(exports);
+            this.packages = Collections.unmodifiableSet(packages);
+        }
+
+        private JarMetadata withLastModified(long date) {
+            return new JarMetadata(length, date, checksum, symbolicName, fragmentHost, version, exports, packages);
+        }
+
+        /**
+         * @return the value of the {@literal Bundle-SymbolicName} header, {@literal null} if not set.
+         */
+        public String getSymbolicName() {
+            return symbolicName;
+        }
+
+        /**
+         * @return the value of the {@literal Fragment-Host} header, {@literal null} if not set.
+         */
+        public String getFragmentHost() {
+            return fragmentHost;
+        }
+
+        /**
+         * @return the value of the {@literal Bundle-Version} header, {@literal null} if not set.
+         */
+        public String getVersion() {
+            return version;
+        }
+
+        /**
+         * @return the versions of the packages declared in the {@literal Export-Package} header, by package name,
+         * never {@literal null}.
+         */
+        public Map<String, String> getExports() {
+            return exports;
+        }
+
+        /**
+         * @return the packages containing at least one file (excluding {@literal META-INF}), never {@literal null}.
+         */
+        public Set<String> getPackages() {
+            return packages;
+        }
+
+        /**
+         * @return {@literal true} if the jar is a bundle (its manifest declares a symbolic name).
+         */
+        public boolean isBundle() {
+            return symbolicName != null;
+        }
+
+        /**
+         * @return {@literal true} if the jar is a fragment.
+         */
+        public boolean isFragment() {
+            return fragmentHost != null;
+        }
+    }
+}
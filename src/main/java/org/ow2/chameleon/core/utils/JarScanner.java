@@ -19,18 +19,33 @@
  */
 package org.ow2.chameleon.core.utils;
 
+import org.osgi.framework.Constants;
+import org.osgi.framework.Version;
+
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.jar.Attributes;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
+import java.util.jar.Manifest;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
  * Extracts the set of packages from a Jar file.
+ * <p/>
+ * When scanning a file, only the zip central directory and the manifest are read. Packages declared in the
+ * {@literal Export-Package} header of the manifest are exported with their declared version, other packages use the
+ * version guessed from the file name.
  */
 public class JarScanner {
 
@@ -110,20 +125,145 @@ public class JarScanner {
      * @return the set of packages.
      */
     public static Set<Pckg> scan(JarFile jar, String version) {
+        Map<String, String> exports = Collections.emptyMap();
+        try {
+            exports = exports(jar.getManifest());
+        } catch (IOException e) { //NOSONAR
+            // Cannot read the manifest, use the given version.
+        }
+        return toPackages(packages(jar), version, exports);
+    }
+
+    /**
+     * Collects the name of the packages containing at least one file in the given jar file.
+     * Notice that "META-INF" directory and sub-directories, as well as the default package, are ignored.
+     *
+     * @param jar the jar file
+     * @return the set of package names
+     */
+    public static Set<String> packages(JarFile jar) {
         Enumeration<JarEntry> entries = jar.entries();
 
-        Set<Pckg> packages = new HashSet<Pckg>();
+        Set<String> packages = new LinkedHashSet<String>();
+        // The entries of a directory are generally contiguous: the directory of the previous entry is kept, so the
+        // package name is only computed (and allocated) when the directory changes.
+        String directory = null;
         while (entries.hasMoreElements()) {
             JarEntry entry = entries.nextElement();
-            if (!entry.isDirectory() && !entry.getName().startsWith("META-INF")) {
-                final Pckg pckg = toPackage(entry, version);
-                if (pckg != null) {
-                    // We ignore the default-package.
-                    packages.add(pckg);
+            String name = entry.getName();
+            if (entry.isDirectory() || name.startsWith("META-INF")) {
+                continue;
+            }
+            int index = name.lastIndexOf('/');
+            if (index < 0) {
+                // We ignore the default-package.
+                continue;
+            }
+            if (directory != null && index == directory.length() && name.startsWith(directory)) {
+                continue;
+            }
+            directory = name.substring(0, index);
+            packages.add(directory.replace('/', '.').intern());
+        }
+
+        return packages;
+    }
+
+    /**
+     * Parses the {@literal Export-Package} header of the given manifest.
+     *
+     * @param manifest the manifest, may be {@literal null}
+     * @return the exported versions by package name, empty if the manifest does not declare exported packages.
+     */
+    public static Map<String, String> exports(Manifest manifest) {
+        if (manifest == null || manifest.getMainAttributes() == null) {
+            return Collections.emptyMap();
+        }
+        Attributes attributes = manifest.getMainAttributes();
+        return exports(attributes.getValue(Constants.EXPORT_PACKAGE));
+    }
+
+    /**
+     * Parses an {@literal Export-Package} header. Packages declared without version are exported with the version
+     * {@literal 0.0.0}, and packages declared with an invalid version are ignored (so the version guessed from the
+     * file name is used).
+     *
+     * @param header the header value, may be {@literal null}
+     * @return the exported versions by package name.
+     */
+    public static Map<String, String> exports(String header) {
+        if (header == null) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> exports = new LinkedHashMap<String, String>();
+        for (String clause : split(header, ',')) {
+            List<String> names = new ArrayList<String>();
+            String version = Version.emptyVersion.toString();
+            for (String element : split(clause, ';')) {
+                int index = element.indexOf('=');
+                if (index < 0) {
+                    names.add(element.intern());
+                } else if ("version".equals(element.substring(0, index).trim())) {
+                    version = toVersion(element.substring(index + 1));
+                }
+            }
+            if (version != null) {
+                for (String name : names) {
+                    exports.put(name, version);
                 }
             }
         }
+        return exports;
+    }
 
+    private static String toVersion(String value) {
+        String version = value.trim();
+        if (version.length() > 1 && version.startsWith("\"") && version.endsWith("\"")) {
+            version = version.substring(1, version.length() - 1);
+        }
+        try {
+            return Version.parseVersion(version).toString();
+        } catch (IllegalArgumentException e) { //NOSONAR
+            // Not a version (a range for instance).
+            return null;
+        }
+    }
+
+    /**
+     * Splits the given header on the given separator, ignoring separators between quotes. Elements are trimmed,
+     * empty elements are ignored.
+     */
+    private static List<String> split(String value, char separator) {
+        List<String> result = new ArrayList<String>();
+        boolean quoted = false;
+        int start = 0;
+        for (int i = 0; i <= value.length(); i++) {
+            char c = i < value.length() ? value.charAt(i) : separator;
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (c == separator && (!quoted || i == value.length())) {
+                String element = value.substring(start, i).trim();
+                if (!element.isEmpty()) {
+                    result.add(element);
+                }
+                start = i + 1;
+            }
+        }
+        return result;
+    }
+
+    private static Set<Pckg> toPackages(Set<String> names, String version, Map<String, String> exports) {
+        Set<Pckg> packages = new HashSet<Pckg>();
+        for (String name : names) {
+            String exported = exports.get(name);
+            packages.add(new Pckg(name, exported != null ? exported : version));
+        }
+        // Declared packages may not contain files (split packages for instance).
+        for (Map.Entry<String, String> export : exports.entrySet()) {
+            if (!names.contains(export.getKey())) {
+                packages.add(new Pckg(export.getKey(), export.getValue()));
+            }
+        }
         return packages;
     }
 
@@ -132,12 +272,28 @@ public class JarScanner {
      * If the given file's name does not end with {@literal .jar}, {@code null} is returned.
      * <p>
      * This methods also try to guess the version of the jar file. If it can't be guesses, {@literal 0.0.0} is used.
+     * Packages listed in the {@literal Export-Package} header of the manifest use their declared version instead.
+     * Only the central directory and the manifest of the jar are read.
      *
      * @param jarFile the file to scan
      * @return the set of packages to be exported
      * @throws IOException if the file cannot be read
      */
     public static Set<Pckg> scan(File jarFile) throws IOException {
+        return scan(jarFile, null);
+    }
+
+    /**
+     * Builds the set of {@link org.ow2.chameleon.core.utils.Pckg} to export from the given file (must be a jar file),
+     * as {@link #scan(File)} does. The packages are retrieved from the given cache when the file has not changed.
+     *
+     * @param jarFile the file to scan
+     * @param cache   the jar metadata cache, {@literal null} to read the jar
+     * @return the set of packages to be exported
+     * @throws IOException if the file cannot be read
+     * @since 1.10.10
+     */
+    public static Set<Pckg> scan(File jarFile, JarMetadataCache cache) throws IOException {
         // Quick check: is it a jar file
         if (!jarFile.getName().endsWith(".jar")) {
             return null;
@@ -149,25 +305,13 @@ public class JarScanner {
             version = "0.0.0";
         }
 
-        JarFile jar = new JarFile(jarFile);
-
-        return scan(jar, version);
-    }
-
-    /**
-     * Transforms the give jar entry to it's java package name. The entry must be a file not a directory.
-     *
-     * @param entry   the entry
-     * @param version the version
-     * @return the package object
-     */
-    private static Pckg toPackage(JarEntry entry, String version) {
-        String name = entry.getName();
-        if (!name.contains("/")) {
-            return null;
+        if (cache != null) {
+            JarMetadataCache.JarMetadata metadata = cache.get(jarFile);
+            return toPackages(metadata.getPackages(), version, metadata.getExports());
         }
-        String dir = name.substring(0, name.lastIndexOf("/"));
-        return new Pckg(dir.replace("/", "."), version);
+
+        CentralDirectory directory = CentralDirectory.read(jarFile);
+        return toPackages(directory.getPackages(), version, exports(directory.getManifest()));
     }
 
 }
@@ -0,0 +1,348 @@
+/*
+ * #%L
+ * OW2 Chameleon - Core
+ * %%
+ * Copyright (C) 2009 - 2014 OW2 Chameleon
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.ow2.chameleon.core.utils;
+
+import com.google.common.collect.ImmutableList;
+import org.apache.commons.io.FileUtils;
+import org.ow2.chameleon.core.services.ConfigurationParser;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.List;
+
+/**
+ * Parses {@literal .json} configuration files. The file contains a single JSON object whose members are the
+ * configuration properties. Values are typed: strings are {@link String}, integral numbers {@link Long}, other
+ * numbers {@link Double}, booleans {@link Boolean}, and arrays of these are converted to arrays. Members whose value
+ * is {@literal null} are ignored, nested objects are not supported.
+ * <p>
+ * As in the OSGi Configurator format, the type of a property can be given as a suffix of its key, such as
+ * {@code "port:Integer": 8080} or {@code "names:String[]": ["a", "b"]}. Supported types are {@literal String},
+ * {@literal Integer}, {@literal Long}, {@literal Short}, {@literal Byte}, {@literal Float}, {@literal Double},
+ * {@literal Boolean} and {@literal Character}, and arrays of them.
+ *
+ * @author The OW2 Chameleon Team
+ * @version $Id: 1.0.4 $Id
+ * @since 1.10.10
+ */
+public class JsonConfigurationParser implements ConfigurationParser {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<String> getExtensions() {
+        return ImmutableList.of("json");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Dictionary<String, Object> parse(File file) throws IOException {
+        return new Reader(FileUtils.readFileToString(file, "UTF-8"), file).readConfiguration();
+    }
+
+    private static Class<?> getType(String name) {
+        if ("String".equals(name)) {
+            return String.class;
+        } else if ("Integer".equals(name)) {
+            return Integer.class;
+        } else if ("Long".equals(name)) {
+            return Long.class;
+        } else if ("Short".equals(name)) {
+            return Short.class;
+        } else if ("Byte".equals(name)) {
+            return Byte.class;
+        } else if ("Float".equals(name)) {
+            return Float.class;
+        } else if ("Double".equals(name)) {
+            return Double.class;
+        } else if ("Boolean".equals(name)) {
+            return Boolean.class;
+        } else if ("Character".equals(name)) {
+            return Character.class;
+        }
+        return null;
+    }
+
+    /**
+     * A reader of a JSON document.
+     */
+    private static final class Reader {
+
+        private final String text;
+        private final File file;
+        private int position;
+
+        Reader(String text, File file) {
+            this.text = text;
+            this.file = file;
+        }
+
+        Dictionary<String, Object> readConfiguration() throws IOException {
+            Dictionary<String, Object> properties = new Hashtable<String, Object>();
+            expect('{');
+            if (peek() == '}') {
+                position++;
+            } else {
+                do {
+                    expect('"');
+                    String key = readString();
+                    expect(':');
+                    Object value = readValue();
+                    if (value != null) {
+                        put(properties, key, value);
+                    }
+                } while (next(',', '}') == ',');
+            }
+            if (peek() != 0) {
+                throw error("Unexpected content after the configuration object");
+            }
+            return properties;
+        }
+
+        private void put(Dictionary<String, Object> properties, String key, Object value) throws IOException {
+            int index = key.lastIndexOf(':');
+            if (index > 0) {
+                String type = key.substring(index + 1);
+                boolean array = type.endsWith("[]");
+                Class<?> clazz = getType(array ? type.substring(0, type.length() - 2) : type);
+                if (clazz != null) {
+                    String name = key.substring(0, index);
+                    if (array) {
+                        List<?> list = value instanceof List ? (List<?>) value : ImmutableList.of(value);
+                        properties.put(name, toArray(name, list, clazz));
+                    } else {
+                        properties.put(name, convert(name, value, clazz));
+                    }
+                    return;
+                }
+            }
+            if (value instanceof List) {
+                properties.put(key, toArray(key, (List<?>) value, getElementType(key, (List<?>) value)));
+            } else {
+                properties.put(key, value);
+            }
+        }
+
+        private Class<?> getElementType(String key, List<?> list) throws IOException {
+            Class<?> type = null;
+            for (Object element : list) {
+                Class<?> clazz = element.getClass();
+                if (type == null || type == clazz) {
+                    type = clazz;
+                } else if (Number.class.isAssignableFrom(type) && element instanceof Number) {
+                    // Mix of integral and decimal numbers.
+                    type = Double.class;
+                } else {
+                    throw error("The array '" + key + "' mixes values of different types");
+                }
+            }
+            return type == null ? String.class : type;
+        }
+
+        private Object toArray(String key, List<?> list, Class<?> type) throws IOException {
+            Object array = Array.newInstance(type, list.size());
+            for (int i = 0; i < list.size(); i++) {
+                Array.set(array, i, convert(key, list.get(i), type));
+            }
+            return array;
+        }
+
+        private Object convert(String key, Object value, Class<?> type) throws IOException {
+            if (value instanceof List || value == null) {
+                throw error("The value of '" + key + "' must be a single " + type.getSimpleName());
+            }
+            if (type.isInstance(value)) {
+                return value;
+            }
+            String string = value.toString();
+            try {
+                if (type == String.class) {
+                    return string;
+                } else if (type == Boolean.class) {
+                    return Boolean.valueOf(string);
+                } else if (type == Character.class && string.length() == 1) {
+                    return string.charAt(0);
+                } else if (type == Double.class) {
+                    return Double.valueOf(string);
+                } else if (type == Float.class) {
+                    return Float.valueOf(string);
+                } else if (type == Long.class) {
+                    return Long.valueOf(string);
+                } else if (type == Integer.class) {
+                    return Integer.valueOf(string);
+                } else if (type == Short.class) {
+                    return Short.valueOf(string);
+                } else if (type == Byte.class) {
+                    return Byte.valueOf(string);
+                }
+            } catch (NumberFormatException e) { //NOSONAR
+                // Reported below.
+            }
+            throw error("Cannot convert the value of '" + key + "' (" + string + ") to " + type.getSimpleName());
+        }
+
+        private Object readValue() throws IOException {
+            char c = peek();
+            if (c == '"') {
+                position++;
+                return readString();
+            } else if (c == '[') {
+                position++;
+                List<Object> list = new ArrayList<Object>();
+                if (peek() == ']') {
+                    position++;
+                    return list;
+                }
+                do {
+                    Object element = readValue();
+                    if (element == null || element instanceof List) {
+                        throw error("Arrays can only contain strings, numbers and booleans");
+                    }
+                    list.add(element);
+                } while (next(',', ']') == ',');
+                return list;
+            } else if (c == '{') {
+                throw error("Nested objects are not supported");
+            } else if (text.startsWith("true", position)) {
+                position += 4;
+                return Boolean.TRUE;
+            } else if (text.startsWith("false", position)) {
+                position += 5;
+                return Boolean.FALSE;
+            } else if (text.startsWith("null", position)) {
+                position += 4;
+                return null;
+            }
+            return readNumber();
+        }
+
+        private Object readNumber() throws IOException {
+            int start = position;
+            boolean integral = true;
+            while (position < text.length()) {
+                char c = text.charAt(position);
+                if (c == '.' || c == 'e' || c == 'E') {
+                    integral = false;
+                } else if (!(c >= '0' && c <= '9') && c != '-' && c != '+') {
+                    break;
+                }
+                position++;
+            }
+            String number = text.substring(start, position);
+            try {
+                if (integral) {
+                    return Long.valueOf(number);
+                }
+                return Double.valueOf(number);
+            } catch (NumberFormatException e) {
+                position = start;
+                throw error("Invalid value");
+            }
+        }
+
+        private String readString() throws IOException {
+            StringBuilder builder = new StringBuilder();
+            while (position < text.length()) {
+                char c = text.charAt(position++);
+                if (c == '"') {
+                    return builder.toString();
+                }
+                if (c != '\\') {
+                    builder.append(c);
+                    continue;
+                }
+                if (position >= text.length()) {
+                    break;
+                }
+                c = text.charAt(position++);
+                switch (c) {
+                    case 'b':
+                        builder.append('\b');
+                        break;
+                    case 'f':
+                        builder.append('\f');
+                        break;
+                    case 'n':
+                        builder.append('\n');
+                        break;
+                    case 'r':
+                        builder.append('\r');
+                        break;
+                    case 't':
+                        builder.append('\t');
+                        break;
+                    case 'u':
+                        if (position + 4 > text.length()) {
+                            throw error("Invalid unicode escape sequence");
+                        }
+                        try {
+                            builder.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw error("Invalid unicode escape sequence");
+                        }
+                        position += 4;
+                        break;
+                    default:
+                        builder.append(c);
+                }
+            }
+            throw error("Unterminated string");
+        }
+
+        /**
+         * Skips the whitespaces and returns the next character, without consuming it.
+         *
+         * @return the next character, {@literal 0} at the end of the text
+         */
+        private char peek() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+            return position < text.length() ? text.charAt(position) : 0;
+        }
+
+        private void expect(char expected) throws IOException {
+            if (peek() != expected) {
+                throw error("'" + expected + "' expected");
+            }
+            position++;
+        }
+
+        private char next(char first, char second) throws IOException {
+            char c = peek();
+            if (c != first && c != second) {
+                throw error("'" + first + "' or '" + second + "' expected");
+            }
+            position++;
+            return c;
+        }
+
+        private IOException error(String message) {
+            return new IOException(message + " at offset " + position + " of " + file.getAbsolutePath());
+        }
+    }
+}
@@ -0,0 +1,410 @@
+/*
+ * #%L
+ * OW2 Chameleon - Core
+ * %%
+ * Copyright (C) 2009 - 2014 OW2 Chameleon
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.ow2.chameleon.core.utils;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.*;
+
+/**
+ * An index of the packages exported by the jars of the 'libs' directory, stored in the directory itself.
+ * <p/>
+ * For each jar, the index records its length and last modification date and the export clauses of its packages. On
+ * startup, only the jars whose length or date have changed (and the new ones) are scanned, so the list of
+ * exported packages is computed without opening the jars.
+ * <p/>
+ * The index can also be produced at build time, and shipped in the 'libs' directory of a distribution, using
+ * {@link #main(String[])}. As the dates of the files are not kept when a distribution is unpacked, such an index
+ * is built in portable mode: its entries are validated using the length and the checksum of the jars, and are
+ * stamped with the date of the jars the first time they are confirmed.
+ * <p/>
+ * The index is a text file, with one line per jar: {@code relative-path|length|date|checksum|clause,clause...}. The
+ * date is {@literal -1} in portable mode, and the checksum (CRC32) is only computed in portable mode.
+ * <p/>
+ * The index is also used by the {@link FrameworkClassLoader} to find the jars containing a package.
+ *
+ * @author The OW2 Chameleon Team
+ * @version $Id: 1.0.4 $Id
+ * @since 1.10.10
+ */
+public class LibsExportIndex {
+
+    /**
+     * The name of the index file, stored in the 'libs' directory.
+     */
+    public static final String FILE_NAME = "chameleon-exports.index";
+
+    /**
+     * The first line of the file, identifying the format.
+     */
+    private static final String HEADER = "# Chameleon libs export index v2";
+
+    /**
+     * The date of the entries validated using the length and the checksum.
+     */
+    private static final long PORTABLE = -1L;
+
+    /**
+     * The checksum of the entries validated using the length and the date.
+     */
+    private static final long NO_CHECKSUM = -1L;
+
+    private static final char SEPARATOR = '|';
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LibsExportIndex.class);
+
+    /**
+     * The 'libs' directory.
+     */
+    private final File directory;
+
+    /**
+     * The index file.
+     */
+    private final File file;
+
+    /**
+     * The entries by relative path (using '/' as separator), sorted.
+     */
+    private final SortedMap<String, Entry> entries = new TreeMap<String, Entry>();
+
+    /**
+     * The jar metadata cache used to scan the jars, {@literal null} if none.
+     */
+    private final JarMetadataCache cache;
+
+    /**
+     * Whether the entries have been modified since the last load or save.
+     */
+    private boolean dirty;
+
+    /**
+     * Creates an index of the given 'libs' directory, stored in the {@link #FILE_NAME} file of the directory. The
+     * file is not read, call {@link #load()}.
+     *
+     * @param directory the 'libs' directory
+     */
+    public LibsExportIndex(File directory) {
+        this(directory, new File(directory, FILE_NAME));
+    }
+
+    /**
+     * Creates an index of the given 'libs' directory, stored in the given file. The file is not read, call
+     * {@link #load()}.
+     *
+     * @param directory the 'libs' directory
+     * @param file      the index file
+     */
+    public LibsExportIndex(File directory, File file) {
+        this(directory, file, null);
+    }
+
+    /**
+     * Creates an index of the given 'libs' directory, stored in the given file. The file is not read, call
+     * {@link #load()}. The jars to scan are looked up in the given cache first.
+     *
+     * @param directory the 'libs' directory
+     * @param file      the index file
+     * @param cache     the jar metadata cache, {@literal null} if none
+     */
+    public LibsExportIndex(File directory, File file, JarMetadataCache cache) {
+        this.directory = directory;
+        this.file = file;
+        this.cache = cache;
+    }
+
+    /**
+     * @return the index file.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the number of indexed jars.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Computes the export clauses of the packages contained in the jars of the directory. The jars that are not
+     * indexed, or whose length or date have changed, are scanned, and the entries of the removed jars are dropped.
+     * The portable entries are confirmed using the checksum of the jars, and then stamped with their date.
+     *
+     * @return the comma-separated list of export clauses, sorted by jar path, without duplicates
+     * @throws IOException if a jar cannot be scanned
+     */
+    public String getExports() throws IOException {
+        return getExports(false);
+    }
+
+    private String getExports(boolean portable) throws IOException {
+        Set<String> found = new HashSet<String>();
+        int scanned = 0;
+        if (directory.isDirectory()) {
+            for (File jar : FileUtils.listFiles(directory, new String[]{"jar"}, true)) {
+                String path = relativize(jar);
+                found.add(path);
+                Entry entry = entries.get(path);
+                if (entry != null && entry.matches(jar)) {
+                    continue;
+                }
+                if (entry != null && entry.isConfirmedBy(jar)) {
+                    // Stamp the entry, so the checksum is not computed on the next startups.
+                    entries.put(path, new Entry(entry.length, jar.lastModified(), entry.checksum, entry.clauses));
+                    dirty = true;
+                    continue;
+                }
+                if (portable) {
+                    entries.put(path, new Entry(jar.length(), PORTABLE, Checksums.crc32(jar), scan(jar)));
+                } else {
+                    entries.put(path, new Entry(jar.length(), jar.lastModified(), NO_CHECKSUM, scan(jar)));
+                }
+                dirty = true;
+                scanned++;
+            }
+        }
+        if (entries.keySet().retainAll(found)) {
+            dirty = true;
+        }
+        LOGGER.debug("{} jar(s) of {} scanned, {} read from the export index", scanned,
+                directory.getAbsolutePath(), entries.size() - scanned);
+
+        Set<String> clauses = new LinkedHashSet<String>();
+        for (Entry entry : entries.values()) {
+            clauses.addAll(entry.clauses);
+        }
+        StringBuilder exports = new StringBuilder();
+        for (String clause : clauses) {
+            if (exports.length() > 0) {
+                exports.append(',');
+            }
+            exports.append(clause);
+        }
+        return exports.toString();
+    }
+
+    /**
+     * Gets the names of the packages of the given jar, as recorded in the index. {@link #getExports()} must have
+     * been called to index the jars of the directory.
+     *
+     * @param jar the jar file, located in the 'libs' directory
+     * @return the package names, {@literal null} if the jar is not indexed.
+     */
+    public List<String> getPackages(File jar) {
+        Entry entry = entries.get(relativize(jar));
+        if (entry == null) {
+            return null;
+        }
+        List<String> packages = new ArrayList<String>(entry.clauses.size());
+        for (String clause : entry.clauses) {
+            int index = clause.indexOf(';');
+            packages.add(index < 0 ? clause : clause.substring(0, index));
+        }
+        return packages;
+    }
+
+    private List<String> scan(File jar) throws IOException {
+        Set<Pckg> packages = JarScanner.scan(jar, cache);
+        List<String> clauses = new ArrayList<String>(packages.size());
+        for (Pckg pckg : packages) {
+            clauses.add(pckg.toExportClause());
+        }
+        Collections.sort(clauses);
+        return clauses;
+    }
+
+    private String relativize(File jar) {
+        String root = directory.getAbsolutePath();
+        String path = jar.getAbsolutePath();
+        if (path.startsWith(root) && path.length() > root.length()) {
+            path = path.substring(root.length() + 1);
+        }
+        return path.replace(File.separatorChar, '/');
+    }
+
+    /**
+     * Loads the index file. If the file does not exist or cannot be read, the index starts empty.
+     */
+    public void load() {
+        if (!file.isFile()) {
+            return;
+        }
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF_8));
+            if (!HEADER.equals(reader.readLine())) {
+                LOGGER.info("Ignoring the export index {}, unsupported format", file.getAbsolutePath());
+                return;
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                int first = line.indexOf(SEPARATOR);
+                int second = line.indexOf(SEPARATOR, first + 1);
+                int third = line.indexOf(SEPARATOR, second + 1);
+                int fourth = line.indexOf(SEPARATOR, third + 1);
+                if (first < 0 || second < 0 || third < 0 || fourth < 0) {
+                    throw new IOException("Malformed line: " + line);
+                }
+                String clauses = line.substring(fourth + 1);
+                entries.put(line.substring(0, first), new Entry(Long.parseLong(line.substring(first + 1, second)),
+                        Long.parseLong(line.substring(second + 1, third)),
+                        Long.parseLong(line.substring(third + 1, fourth)),
+                        clauses.isEmpty() ? Collections.<String>emptyList() : Arrays.asList(clauses.split(","))));
+            }
+            LOGGER.debug("{} jar(s) loaded from the export index {}", entries.size(), file.getAbsolutePath());
+        } catch (IOException e) {
+            LOGGER.warn("Cannot read the export index {}, scanning the libs directory", file.getAbsolutePath(), e);
+            entries.clear();
+        } catch (NumberFormatException e) {
+            LOGGER.warn("Cannot read the export index {}, scanning the libs directory", file.getAbsolutePath(), e);
+            entries.clear();
+        } finally {
+            IOUtils.closeQuietly(reader);
+        }
+        dirty = false;
+    }
+
+    /**
+     * Writes the index file if it has been modified.
+     */
+    public void save() {
+        if (!dirty) {
+            return;
+        }
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        Writer writer = null;
+        try {
+            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), UTF_8));
+            writer.write(HEADER);
+            writer.write('\n');
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                writer.write(entry.getKey());
+                writer.write(SEPARATOR);
+                writer.write(Long.toString(entry.getValue().length));
+                writer.write(SEPARATOR);
+                writer.write(Long.toString(entry.getValue().lastModified));
+                writer.write(SEPARATOR);
+                writer.write(Long.toString(entry.getValue().checksum));
+                writer.write(SEPARATOR);
+                boolean firstClause = true;
+                for (String clause : entry.getValue().clauses) {
+                    if (!firstClause) {
+                        writer.write(',');
+                    }
+                    writer.write(clause);
+                    firstClause = false;
+                }
+                writer.write('\n');
+            }
+            writer.close();
+            writer = null;
+            if (file.isFile()) {
+                FileUtils.forceDelete(file);
+            }
+            FileUtils.moveFile(tmp, file);
+            dirty = false;
+        } catch (IOException e) {
+            // The libs directory may be read-only.
+            LOGGER.warn("Cannot write the export index {}", file.getAbsolutePath(), e);
+            FileUtils.deleteQuietly(tmp);
+        } finally {
+            IOUtils.closeQuietly(writer);
+        }
+    }
+
+    /**
+     * Builds the export index of a 'libs' directory, at build time for instance. The index is built in portable
+     * mode (the entries are validated using the length and the checksum of the jars).
+     * <p/>
+     * Usage: {@code LibsExportIndex <libs directory> [<index file>]}, the index file being
+     * {@code <libs directory>/chameleon-exports.index} by default.
+     *
+     * @param args the arguments
+     * @throws IOException if a jar cannot be scanned
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: LibsExportIndex <libs directory> [<index file>]"); //NOSONAR
+            System.exit(1);
+        }
+        File directory = new File(args[0]);
+        LibsExportIndex index = args.length == 2 ? new LibsExportIndex(directory, new File(args[1]))
+                : new LibsExportIndex(directory);
+        index.build();
+        System.out.println(index.size() + " jar(s) indexed in " + index.getFile().getAbsolutePath()); //NOSONAR
+    }
+
+    /**
+     * Builds and writes the index in portable mode, from scratch.
+     *
+     * @throws IOException if a jar cannot be scanned
+     */
+    public void build() throws IOException {
+        entries.clear();
+        getExports(true);
+        dirty = true;
+        save();
+    }
+
+    /**
+     * The indexed data of a jar.
+     */
+    private static final class Entry {
+
+        private final long length;
+        private final long lastModified;
+        private final long checksum;
+        private final List<String> clauses;
+
+        Entry(long length, long lastModified, long checksum, List<String> clauses) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.checksum = checksum;
+            this.clauses = clauses;
+        }
+
+        /**
+         * Checks whether the entry is stamped with the length and date of the jar.
+         */
+        boolean matches(File jar) {
+            return lastModified != PORTABLE && length == jar.length() && lastModified == jar.lastModified();
+        }
+
+        /**
+         * Checks whether the entry is portable, and its length and checksum are the ones of the jar.
+         */
+        boolean isConfirmedBy(File jar) throws IOException {
+            return lastModified == PORTABLE && checksum != NO_CHECKSUM && length == jar.length()
+                    && checksum == Checksums.crc32(jar);
+        }
+    }
+}
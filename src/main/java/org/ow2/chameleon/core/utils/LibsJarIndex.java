@@ -0,0 +1,234 @@
+/*
+ * #%L
+ * OW2 Chameleon - Core
+ * %%
+ * Copyright (C) 2009 - 2014 OW2 Chameleon
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.ow2.chameleon.core.utils;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.jar.JarFile;
+
+/**
+ * Maps the packages of the jars of the 'libs' directory to the jars containing them, so class and resource lookups
+ * only open the jars containing the package of the looked-up entry.
+ * <p/>
+ * The index is computed from the {@link LibsExportIndex} of the directory, which has generally been written while
+ * computing the packages exported by the framework, so the jars are not scanned again. Only the resources located in
+ * a package are indexed: resources of the {@literal META-INF} directory, of the root of the jars, and directories are
+ * not covered by the index.
+ *
+ * @author The OW2 Chameleon Team
+ * @version $Id: 1.0.4 $Id
+ * @since 1.10.10
+ */
+final class LibsJarIndex {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LibsJarIndex.class);
+
+    /**
+     * The jars containing each package, in the order of the classloader urls.
+     */
+    private final Map<String, List<URL>> owners;
+
+    /**
+     * The jar files opened by the lookups.
+     */
+    private final ConcurrentMap<URL, JarFile> files = new ConcurrentHashMap<URL, JarFile>();
+
+    /**
+     * Whether the index has been closed, the jars are not opened anymore.
+     */
+    private volatile boolean closed;
+
+    private LibsJarIndex(Map<String, List<URL>> owners) {
+        this.owners = owners;
+    }
+
+    /**
+     * Creates the index of the given jars.
+     *
+     * @param directory  the 'libs' directory
+     * @param jars       the urls of the jars of the 'libs' directory, in the classloader order
+     * @param persistent whether the {@link LibsExportIndex} file of the directory is read and updated
+     * @return the index, {@literal null} if a jar cannot be indexed
+     */
+    static LibsJarIndex create(File directory, URL[] jars, boolean persistent) {
+        if (jars.length == 0) {
+            return null;
+        }
+        LibsExportIndex exports = new LibsExportIndex(directory);
+        Map<String, List<URL>> owners = new HashMap<String, List<URL>>();
+        try {
+            if (persistent) {
+                exports.load();
+            }
+            exports.getExports();
+            if (persistent) {
+                exports.save();
+            }
+            for (URL jar : jars) {
+                List<String> packages = exports.getPackages(new File(jar.toURI()));
+                if (packages == null) {
+                    LOGGER.warn("Cannot index the packages of {}, the 'libs' jars are looked up sequentially", jar);
+                    return null;
+                }
+                for (String pckg : packages) {
+                    List<URL> list = owners.get(pckg);
+                    if (list == null) {
+                        owners.put(pckg, Collections.singletonList(jar));
+                    } else {
+                        list = new ArrayList<URL>(list);
+                        list.add(jar);
+                        owners.put(pckg, list);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Cannot index the packages of the 'libs' jars, they are looked up sequentially", e);
+            return null;
+        } catch (URISyntaxException e) {
+            LOGGER.warn("Cannot index the packages of the 'libs' jars, they are looked up sequentially", e);
+            return null;
+        }
+        LOGGER.debug("{} package(s) indexed in {} 'libs' jar(s)", owners.size(), jars.length);
+        return new LibsJarIndex(owners);
+    }
+
+    /**
+     * Checks whether the given resource is covered by the index, i.e. is located in a package.
+     *
+     * @param name the resource name ('/' separated)
+     * @return {@literal true} if {@link #getOwners(String)} can be used for this resource
+     */
+    boolean covers(String name) {
+        return name.indexOf('/') > 0 && !name.endsWith("/") && !name.startsWith("META-INF");
+    }
+
+    /**
+     * Gets the jars containing the package of the given resource. The resource must be {@link #covers(String)
+     * covered} by the index.
+     *
+     * @param name the resource name ('/' separated)
+     * @return the jars containing the package, empty if none
+     */
+    List<URL> getOwners(String name) {
+        String pckg = name.substring(0, name.lastIndexOf('/')).replace('/', '.');
+        List<URL> list = owners.get(pckg);
+        if (list == null) {
+            return Collections.emptyList();
+        }
+        return list;
+    }
+
+    /**
+     * Gets the jar file of the given jar url, opening it on the first call.
+     *
+     * @param jar the jar url
+     * @return the jar file
+     * @throws IOException if the jar cannot be opened, or if the index is closed
+     */
+    JarFile getJarFile(URL jar) throws IOException {
+        JarFile file = files.get(jar);
+        if (file == null) {
+            if (closed) {
+                throw new IOException("The index is closed, cannot open " + jar);
+            }
+            try {
+                file = new JarFile(new File(jar.toURI()));
+            } catch (URISyntaxException e) {
+                throw new IOException("Invalid jar url " + jar, e);
+            }
+            JarFile previous = files.putIfAbsent(jar, file);
+            if (previous != null) {
+                IOUtils.closeQuietly(file);
+                file = previous;
+            } else if (closed) {
+                // Closed while opening the jar.
+                close();
+                throw new IOException("The index is closed, cannot open " + jar);
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Finds the resources having the given name in the jars containing its package. The resource must be
+     * {@link #covers(String) covered} by the index.
+     *
+     * @param name the resource name ('/' separated)
+     * @return the urls of the resources, empty if none
+     */
+    List<URL> findResources(String name) {
+        return find(name, false);
+    }
+
+    private List<URL> find(String name, boolean first) {
+        List<URL> urls = new ArrayList<URL>(1);
+        for (URL jar : getOwners(name)) {
+            try {
+                if (getJarFile(jar).getJarEntry(name) != null) {
+                    urls.add(new URL("jar:" + jar.toExternalForm() + "!/" + name));
+                    if (first) {
+                        break;
+                    }
+                }
+            } catch (MalformedURLException e) { //NOSONAR
+                // Cannot happen, the jar url is valid.
+            } catch (IOException e) {
+                LOGGER.debug("Cannot open {}", jar, e);
+            }
+        }
+        return urls;
+    }
+
+    /**
+     * Finds the first resource having the given name in the jars containing its package. The resource must be
+     * {@link #covers(String) covered} by the index.
+     *
+     * @param name the resource name ('/' separated)
+     * @return the url of the resource, {@literal null} if not found
+     */
+    URL findResource(String name) {
+        List<URL> urls = find(name, true);
+        return urls.isEmpty() ? null : urls.get(0);
+    }
+
+    /**
+     * Closes the jar files opened by the lookups. The next lookups do not find anything.
+     */
+    void close() {
+        closed = true;
+        for (URL jar : files.keySet()) {
+            IOUtils.closeQuietly(files.remove(jar));
+        }
+    }
+}
@@ -21,9 +21,13 @@ package org.ow2.chameleon.core.utils;
 
 import java.io.File;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The thread factory used to create the monitor thread.
+ * <p>
+ * Factories created with a name are used by thread pools: their threads are numbered, and are daemon threads so a
+ * pool that is not shut down does not keep the JVM alive.
  *
  * @author The OW2 Chameleon Team
  * @version $Id: 1.0.4 $Id
@@ -41,6 +45,11 @@ public class MonitorThreadFactory implements ThreadFactory {
      */
     private final String name;
 
+    /**
+     * The number of created threads, {@literal null} if the threads are not numbered.
+     */
+    private final AtomicInteger counter;
+
     /**
      * Creates a monitor thread factory.
      *
@@ -48,6 +57,19 @@ public class MonitorThreadFactory implements ThreadFactory {
      */
     public MonitorThreadFactory(File directory) {
         this.name = PREFIX + directory.getName();
+        this.counter = null;
+    }
+
+    /**
+     * Creates a thread factory for a pool. The threads are named {@code monitor-<name>-<number>}, and are daemon
+     * threads.
+     *
+     * @param name the name of the pool
+     * @since 1.10.10
+     */
+    public MonitorThreadFactory(String name) {
+        this.name = PREFIX + name;
+        this.counter = new AtomicInteger();
     }
 
     /**
@@ -56,7 +78,12 @@ public class MonitorThreadFactory implements ThreadFactory {
     @Override
     public Thread newThread(Runnable runnable) {
         Thread thread = new Thread(runnable);
-        thread.setName(name);
+        if (counter == null) {
+            thread.setName(name);
+        } else {
+            thread.setName(name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+        }
         return thread;
     }
 }
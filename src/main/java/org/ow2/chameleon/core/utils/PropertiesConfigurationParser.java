@@ -0,0 +1,71 @@
+/*
+ * #%L
+ * OW2 Chameleon - Core
+ * %%
+ * Copyright (C) 2009 - 2014 OW2 Chameleon
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.ow2.chameleon.core.utils;
+
+import com.google.common.collect.ImmutableList;
+import org.apache.commons.io.IOUtils;
+import org.ow2.chameleon.core.services.ConfigurationParser;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Parses {@literal .cfg} configuration files, using the {@link Properties} format. All values are strings.
+ *
+ * @author The OW2 Chameleon Team
+ * @version $Id: 1.0.4 $Id
+ * @since 1.10.10
+ */
+public class PropertiesConfigurationParser implements ConfigurationParser {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<String> getExtensions() {
+        return ImmutableList.of("cfg");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Dictionary<String, Object> parse(File file) throws IOException {
+        InputStream in = null;
+        try {
+            Properties properties = new Properties();
+            in = new FileInputStream(file);
+            properties.load(in);
+            Dictionary<String, Object> dictionary = new Hashtable<String, Object>();
+            for (String key : properties.stringPropertyNames()) {
+                dictionary.put(key, properties.getProperty(key));
+            }
+            return dictionary;
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * #%L
+ * OW2 Chameleon - Core
+ * %%
+ * Copyright (C) 2009 - 2014 OW2 Chameleon
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.ow2.chameleon.core.utils;
+
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleException;
+import org.osgi.framework.wiring.BundleWiring;
+import org.osgi.framework.wiring.FrameworkWiring;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Plans and executes the start of a set of bundles.
+ * <p/>
+ * The bundles are resolved at once using {@link FrameworkWiring#resolveBundles(java.util.Collection)}, and then
+ * started:
+ * <ol>
+ * <li>by start level: all the bundles of a level are started before the bundles of the next level. The level of a
+ * bundle is configured in {@code chameleon.properties} (see {@link #parseStartLevels(String)}) or using the
+ * {@link #START_LEVEL_HEADER} manifest header, and is {@link #DEFAULT_START_LEVEL} otherwise.</li>
+ * <li>in dependency order within a level: the bundles are grouped in waves computed from their wiring (see
+ * {@link BundleHelper#groupByDependencies(java.util.Collection)}). The bundles of a wave are independent, and are
+ * started concurrently when the planner has more than one thread.</li>
+ * </ol>
+ * Bundles that cannot be resolved are not started (so their start does not fail again and again), unless they are
+ * explicitly required: their start is then attempted to report the resolution error.
+ *
+ * @author The OW2 Chameleon Team
+ * @version $Id: 1.0.4 $Id
+ * @since 1.10.10
+ */
+public class StartPlanner {
+
+    /**
+     * The manifest header setting the start level of a bundle.
+     */
+    public static final String START_LEVEL_HEADER = "Chameleon-StartLevel";
+
+    /**
+     * The start level of the bundles without configured level.
+     */
+    public static final int DEFAULT_START_LEVEL = 1;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StartPlanner.class);
+
+    /**
+     * The start levels configured by bundle symbolic name.
+     */
+    private final Map<String, Integer> levels;
+
+    /**
+     * The number of threads starting the bundles of a wave.
+     */
+    private final int threads;
+
+    /**
+     * Creates a planner starting the bundles sequentially, without configured start levels.
+     */
+    public StartPlanner() {
+        this(Collections.<String, Integer>emptyMap(), 1);
+    }
+
+    /**
+     * Creates a planner.
+     *
+     * @param levels  the start levels by bundle symbolic name
+     * @param threads the number of threads starting the bundles of a wave, {@literal 1} to start them sequentially
+     */
+    public StartPlanner(Map<String, Integer> levels, int threads) {
+        this.levels = new HashMap<String, Integer>(levels);
+        this.threads = threads;
+    }
+
+    /**
+     * Parses the start levels configured as a comma-separated list of {@code symbolic-name=level} entries.
+     *
+     * @param value the value, may be {@literal null} or empty
+     * @return the start levels by symbolic name
+     * @throws IllegalArgumentException if an entry is malformed
+     */
+    public static Map<String, Integer> parseStartLevels(String value) {
+        Map<String, Integer> map = new LinkedHashMap<String, Integer>();
+        if (value == null || value.trim().isEmpty()) {
+            return map;
+        }
+        for (String entry : value.split(",")) {
+            if (entry.trim().isEmpty()) {
+                continue;
+            }
+            int index = entry.indexOf('=');
+            if (index <= 0) {
+                throw new IllegalArgumentException("Invalid start level '" + entry.trim() + "', expected " +
+                        "symbolic-name=level");
+            }
+            try {
+                map.put(entry.substring(0, index).trim(), Integer.parseInt(entry.substring(index + 1).trim()));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid start level '" + entry.trim() + "', the level must " +
+                        "be an integer", e);
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Gets the start level of a bundle: the configured level if any, the level set in its manifest otherwise, and
+     * {@link #DEFAULT_START_LEVEL} by default.
+     *
+     * @param bundle the bundle
+     * @return the start level
+     */
+    public int getStartLevel(Bundle bundle) {
+        Integer level = levels.get(bundle.getSymbolicName());
+        if (level != null) {
+            return level;
+        }
+        // The raw headers, as the localization is not needed.
+        Dictionary<String, String> headers = bundle.getHeaders("");
+        String header = headers != null ? headers.get(START_LEVEL_HEADER) : null;
+        if (header != null) {
+            try {
+                return Integer.parseInt(header.trim());
+            } catch (NumberFormatException e) {
+                LOGGER.warn("Invalid {} header in {}: {}", START_LEVEL_HEADER, bundle.getSymbolicName(), header);
+            }
+        }
+        return DEFAULT_START_LEVEL;
+    }
+
+    /**
+     * Computes the start plan of the given (resolved) bundles: the waves of bundles to start, by increasing start
+     * level, then in dependency order.
+     *
+     * @param bundles the bundles
+     * @return the waves, in start order
+     */
+    public List<List<Bundle>> plan(Collection<Bundle> bundles) {
+        SortedMap<Integer, List<Bundle>> tiers = new TreeMap<Integer, List<Bundle>>();
+        for (Bundle bundle : bundles) {
+            int level = getStartLevel(bundle);
+            List<Bundle> tier = tiers.get(level);
+            if (tier == null) {
+                tier = new ArrayList<Bundle>();
+                tiers.put(level, tier);
+            }
+            tier.add(bundle);
+        }
+        List<List<Bundle>> waves = new ArrayList<List<Bundle>>();
+        for (List<Bundle> tier : tiers.values()) {
+            waves.addAll(BundleHelper.groupByDependencies(tier));
+        }
+        return waves;
+    }
+
+    /**
+     * Resolves and starts the given bundles. Fragments and bundles already active or uninstalled are ignored.
+     *
+     * @param context  a bundle context
+     * @param bundles  the bundles to start
+     * @param required the bundles whose start must be attempted (and the failure reported) even if they cannot be
+     *                 resolved
+     */
+    public void start(BundleContext context, Collection<Bundle> bundles, Collection<Bundle> required) {
+        List<Bundle> candidates = new ArrayList<Bundle>();
+        for (Bundle bundle : new LinkedHashSet<Bundle>(bundles)) {
+            if (bundle.getState() != Bundle.UNINSTALLED && bundle.getState() != Bundle.ACTIVE
+                    && !BundleHelper.isFragment(bundle)) {
+                candidates.add(bundle);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return;
+        }
+
+        // Resolve everything at once, so the start order can be computed from the wiring.
+        FrameworkWiring wiring = context.getBundle(0L).adapt(FrameworkWiring.class);
+        if (wiring != null) {
+            wiring.resolveBundles(candidates);
+        }
+
+        ExecutorService pool = null;
+        if (threads > 1 && candidates.size() > 1) {
+            pool = Executors.newFixedThreadPool(Math.min(threads, candidates.size()),
+                    new MonitorThreadFactory("start"));
+        }
+        try {
+            for (List<Bundle> wave : plan(candidates)) {
+                startWave(wave, required, pool);
+            }
+        } finally {
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    private void startWave(List<Bundle> wave, Collection<Bundle> required, ExecutorService pool) {
+        List<Future<?>> starts = new ArrayList<Future<?>>();
+        for (final Bundle bundle : wave) {
+            final boolean mandatory = required.contains(bundle);
+            if (bundle.adapt(BundleWiring.class) == null && !mandatory) {
+                LOGGER.debug("Not starting {}, it cannot be resolved", bundle.getSymbolicName());
+                continue;
+            }
+            if (pool == null || wave.size() == 1) {
+                start(bundle, mandatory);
+            } else {
+                starts.add(pool.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        start(bundle, mandatory);
+                    }
+                }));
+            }
+        }
+        for (Future<?> start : starts) {
+            try {
+                start.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while starting the bundles", e);
+            } catch (ExecutionException e) {
+                LOGGER.error("Unexpected error while starting a bundle", e.getCause());
+            }
+        }
+    }
+
+    private static void start(Bundle bundle, boolean mandatory) {
+        try {
+            LOGGER.debug("Starting bundle {} - {}", bundle.getSymbolicName(), bundle.getLocation());
+            bundle.start();
+        } catch (BundleException e) {
+            if (mandatory) {
+                LOGGER.error("Error during the starting of {}", bundle.getSymbolicName(), e);
+            } else {
+                LOGGER.debug("Failed to start bundle {}", bundle.getSymbolicName(), e);
+            }
+        } catch (IllegalStateException e) {
+            LOGGER.error("Cannot start the bundle {} - the framework is either stopping or restarting",
+                    bundle.getLocation());
+            LOGGER.debug("Invalid bundle context", e);
+        }
+    }
+}
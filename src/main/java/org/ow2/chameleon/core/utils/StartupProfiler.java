@@ -0,0 +1,411 @@
+/*
+ * #%L
+ * OW2 Chameleon - Core
+ * %%
+ * Copyright (C) 2009 - 2014 OW2 Chameleon
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.ow2.chameleon.core.utils;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.ServiceRegistration;
+import org.osgi.framework.SynchronousBundleListener;
+import org.ow2.chameleon.core.services.StabilityChecker;
+import org.ow2.chameleon.core.services.StabilityListener;
+import org.ow2.chameleon.core.services.StabilityResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Records the timeline of the Chameleon startup: the boot phases, the internal activators, and the bundle
+ * installations and starts. Once the stability is reached (or when Chameleon stops before), the timeline is written
+ * in the Chrome trace format (to be opened with {@code chrome://tracing} or Perfetto), and a summary table is
+ * logged.
+ * <p/>
+ * The profiler is created by {@link org.ow2.chameleon.core.Chameleon} and given to the components recording spans,
+ * which use {@link #begin(StartupProfiler, String, String)}. When the profiler is disabled ({@literal null}), this
+ * method returns a span doing nothing.
+ *
+ * @author The OW2 Chameleon Team
+ * @version $Id: 1.0.4 $Id
+ * @since 1.10.10
+ */
+public class StartupProfiler {
+
+    /**
+     * The default name of the trace file, relative to the base directory.
+     */
+    public static final String DEFAULT_TRACE_FILE = "chameleon-startup-trace.json";
+
+    /**
+     * The category of the boot phases.
+     */
+    public static final String PHASE = "phase";
+
+    /**
+     * The category of the internal activators.
+     */
+    public static final String ACTIVATOR = "activator";
+
+    /**
+     * The category of the bundle installations.
+     */
+    public static final String INSTALL = "bundle install";
+
+    /**
+     * The category of the bundle starts.
+     */
+    public static final String START = "bundle start";
+
+    /**
+     * The number of slowest spans listed in the summary.
+     */
+    private static final int SLOWEST = 15;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StartupProfiler.class);
+
+    /**
+     * The span returned when the profiler is disabled or completed.
+     */
+    private static final Span NOOP = new Span(null, null, null, 0L);
+
+    /**
+     * The time origin of the timeline (nanoTime).
+     */
+    private final long origin;
+
+    /**
+     * The completed spans, guarded by itself.
+     */
+    private final List<Span> spans = new ArrayList<Span>();
+
+    /**
+     * The start time of the bundles being started, by bundle id.
+     */
+    private final Map<Long, Long> starting = new ConcurrentHashMap<Long, Long>();
+
+    /**
+     * Set once the timeline has been emitted.
+     */
+    private final AtomicBoolean completed = new AtomicBoolean();
+
+    private File traceFile;
+    private BundleContext context;
+    private SynchronousBundleListener bundleListener;
+    private ServiceRegistration<StabilityListener> stabilityRegistration;
+
+    /**
+     * Creates a profiler. The timeline starts now.
+     */
+    public StartupProfiler() {
+        this.origin = System.nanoTime();
+    }
+
+    /**
+     * Begins a span on the given profiler.
+     *
+     * @param profiler the profiler, {@literal null} if disabled
+     * @param name     the span name
+     * @param category the span category
+     * @return the span to end once the operation is completed, doing nothing if the profiler is disabled or
+     * completed.
+     */
+    public static Span begin(StartupProfiler profiler, String name, String category) {
+        if (profiler == null || profiler.completed.get()) {
+            return NOOP;
+        }
+        return profiler.span(name, category);
+    }
+
+    /**
+     * Begins a span on this profiler.
+     *
+     * @param name     the span name
+     * @param category the span category
+     * @return the span to end once the operation is completed
+     */
+    public Span span(String name, String category) {
+        return new Span(this, name, category, System.nanoTime());
+    }
+
+    /**
+     * Sets the file in which the trace is written.
+     *
+     * @param file the file
+     */
+    public void setTraceFile(File file) {
+        this.traceFile = file;
+    }
+
+    /**
+     * Starts recording the bundle starts and waits for the stability to emit the timeline. The framework must be
+     * started.
+     *
+     * @param context the bundle context of the framework
+     */
+    public void attach(BundleContext context) {
+        this.context = context;
+        bundleListener = new SynchronousBundleListener() {
+            @Override
+            public void bundleChanged(BundleEvent event) {
+                long id = event.getBundle().getBundleId();
+                if (event.getType() == BundleEvent.STARTING) {
+                    starting.put(id, System.nanoTime());
+                } else if (event.getType() == BundleEvent.STARTED) {
+                    Long start = starting.remove(id);
+                    if (start != null) {
+                        record(new Span(StartupProfiler.this, event.getBundle().getSymbolicName(), START, start),
+                                System.nanoTime());
+                    }
+                }
+            }
+        };
+        context.addBundleListener(bundleListener);
+
+        final Span stability = span("stability", PHASE);
+        stabilityRegistration = context.registerService(StabilityListener.class, new StabilityListener() {
+            @Override
+            public void stabilityChanged(boolean stable, Map<StabilityChecker, StabilityResult> results) {
+                if (stable) {
+                    stability.end();
+                    complete();
+                }
+            }
+        }, null);
+    }
+
+    /**
+     * Emits the timeline, if not done already: writes the trace file, logs the summary, stops listening to the
+     * framework. This method is called when the stability is reached, and should be called when Chameleon stops.
+     */
+    public void complete() {
+        if (!completed.compareAndSet(false, true)) {
+            return;
+        }
+        detach();
+        if (traceFile != null) {
+            try {
+                writeTrace(traceFile);
+                LOGGER.info("Startup trace written to {}", traceFile.getAbsolutePath());
+            } catch (IOException e) {
+                LOGGER.error("Cannot write the startup trace in {}", traceFile.getAbsolutePath(), e);
+            }
+        }
+        LOGGER.info("Startup summary:\n{}", getSummary());
+    }
+
+    private void detach() {
+        if (context == null) {
+            return;
+        }
+        try {
+            context.removeBundleListener(bundleListener);
+            BundleHelper.unregisterQuietly(stabilityRegistration);
+        } catch (IllegalStateException e) { //NOSONAR the framework is stopped
+            // Ignored.
+        }
+        context = null;
+    }
+
+    private void record(Span span, long end) {
+        span.end = end;
+        synchronized (spans) {
+            spans.add(span);
+        }
+    }
+
+    /**
+     * @return a copy of the completed spans, in completion order.
+     */
+    public List<Span> getSpans() {
+        synchronized (spans) {
+            return new ArrayList<Span>(spans);
+        }
+    }
+
+    /**
+     * Writes the timeline in the Chrome trace format.
+     *
+     * @param file the output file
+     * @throws IOException if the file cannot be written
+     */
+    public void writeTrace(File file) throws IOException {
+        if (file.getParentFile() != null) {
+            FileUtils.forceMkdir(file.getParentFile());
+        }
+        Writer writer = null;
+        try {
+            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+            writeTrace(writer);
+        } finally {
+            IOUtils.closeQuietly(writer);
+        }
+    }
+
+    /**
+     * Writes the timeline in the Chrome trace format: a complete event ({@code "ph": "X"}) per span, with
+     * timestamps in microseconds, and the thread names as metadata events.
+     *
+     * @param writer the writer
+     * @throws IOException if the timeline cannot be written
+     */
+    public void writeTrace(Writer writer) throws IOException {
+        List<Span> list = getSpans();
+        Map<Long, String> threads = new TreeMap<Long, String>();
+        writer.write("{\"traceEvents\":[");
+        boolean first = true;
+        for (Span span : list) {
+            threads.put(span.threadId, span.threadName);
+            writer.write(first ? "\n" : ",\n");
+            first = false;
+            writer.write("{\"name\":" + quote(span.name) + ",\"cat\":" + quote(span.category)
+                    + ",\"ph\":\"X\",\"ts\":" + toMicros(span.start - origin) + ",\"dur\":"
+                    + toMicros(span.end - span.start) + ",\"pid\":1,\"tid\":" + span.threadId + "}");
+        }
+        for (Map.Entry<Long, String> thread : threads.entrySet()) {
+            writer.write(first ? "\n" : ",\n");
+            first = false;
+            writer.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":" + thread.getKey()
+                    + ",\"args\":{\"name\":" + quote(thread.getValue()) + "}}");
+        }
+        writer.write("\n],\"displayTimeUnit\":\"ms\"}\n");
+        writer.flush();
+    }
+
+    /**
+     * Builds the summary table: the total time and count per category, and the slowest spans.
+     *
+     * @return the summary
+     */
+    public String getSummary() {
+        List<Span> list = getSpans();
+        Map<String, long[]> categories = new LinkedHashMap<String, long[]>();
+        for (Span span : list) {
+            long[] total = categories.get(span.category);
+            if (total == null) {
+                total = new long[2];
+                categories.put(span.category, total);
+            }
+            total[0] += span.getDuration();
+            total[1]++;
+        }
+
+        StringBuilder summary = new StringBuilder();
+        summary.append(String.format("%-20s %8s %12s%n", "Category", "Count", "Total (ms)"));
+        for (Map.Entry<String, long[]> entry : categories.entrySet()) {
+            summary.append(String.format("%-20s %8d %12.1f%n", entry.getKey(), entry.getValue()[1],
+                    entry.getValue()[0] / 1e6));
+        }
+
+        Collections.sort(list, new Comparator<Span>() {
+            @Override
+            public int compare(Span o1, Span o2) {
+                return Long.valueOf(o2.getDuration()).compareTo(o1.getDuration());
+            }
+        });
+        summary.append(String.format("%n%-20s %-50s %12s %12s%n", "Category", "Slowest", "Start (ms)",
+                "Duration (ms)"));
+        for (int i = 0; i < list.size() && i < SLOWEST; i++) {
+            Span span = list.get(i);
+            summary.append(String.format("%-20s %-50s %12.1f %12.1f%n", span.category, span.name,
+                    (span.start - origin) / 1e6, span.getDuration() / 1e6));
+        }
+        return summary.toString();
+    }
+
+    private static long toMicros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    private static String quote(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder builder = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                builder.append('\\').append(c);
+            } else if (c < 0x20) {
+                builder.append(String.format("\\u%04x", (int) c));
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder.append('"').toString();
+    }
+
+    /**
+     * A timed operation of the startup.
+     */
+    public static class Span {
+
+        private final StartupProfiler profiler;
+        private final String name;
+        private final String category;
+        private final long start;
+        private final long threadId;
+        private final String threadName;
+        private long end;
+
+        private Span(StartupProfiler profiler, String name, String category, long start) {
+            this.profiler = profiler;
+            this.name = name;
+            this.category = category;
+            this.start = start;
+            Thread thread = Thread.currentThread();
+            this.threadId = thread.getId();
+            this.threadName = thread.getName();
+        }
+
+        /**
+         * Ends the span, and records it. Calling this method more than once has no effect.
+         */
+        public void end() {
+            if (profiler != null && end == 0L) {
+                profiler.record(this, System.nanoTime());
+            }
+        }
+
+        /**
+         * @return the span name
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the span category
+         */
+        public String getCategory() {
+            return category;
+        }
+
+        /**
+         * @return the span duration in nanoseconds
+         */
+        public long getDuration() {
+            return end - start;
+        }
+    }
+}
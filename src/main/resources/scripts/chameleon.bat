@@ -39,6 +39,17 @@ goto BEGIN
     echo %PROGNAME%: %*
 goto :EOF
 
+rem Sets JAVA_VERSION to the version of the JVM (1.8.0_392, 17.0.9...) and JAVA_MAJOR to its major version (8, 17...),
+rem 0 if unknown.
+:java_version
+    set JAVA_VERSION=
+    for /f "tokens=3" %%V in ('"%JAVA%" -version 2^>^&1') do if not defined JAVA_VERSION set JAVA_VERSION=%%~V
+    set JAVA_MAJOR=0
+    for /f "tokens=1,2 delims=.-_+" %%A in ("%JAVA_VERSION%") do (
+        if "%%A" == "1" (set JAVA_MAJOR=%%B) else (set JAVA_MAJOR=%%A)
+    )
+goto :EOF
+
 :BEGIN
 
 rem # # # # # # # # # # # # # # # # # # # # # # # # # # # # # # # # # # # # # #
@@ -73,11 +84,44 @@ goto :EOF
 
 :CLASSPATH_END
 
+rem Class data sharing archive, produced by a training run: "chameleon.bat train" (requires Java 13+).
+rem The archive must be regenerated when the jars of the 'bin' directory change. The version of the JVM producing the
+rem archive is stored in cds\jvm.txt, as the archive cannot be used by another JVM.
+set CDS_ARCHIVE=%CHAMELEON_HOME%cds\chameleon.jsa
+set CDS_JVM=%CHAMELEON_HOME%cds\jvm.txt
+set CDS_ARGS=
+set TRAINING=
+if "%1" == "train" goto TRAIN
+if not exist "%CDS_ARCHIVE%" goto EXECUTE
+call :java_version
+set CDS_VERSION=
+if exist "%CDS_JVM%" set /p CDS_VERSION=<"%CDS_JVM%"
+if "%CDS_VERSION%" == "%JAVA_VERSION%" (
+    set CDS_ARGS=-XX:SharedArchiveFile="%CDS_ARCHIVE%"
+) else (
+    echo [warn] cds\chameleon.jsa was produced by another JVM, it is ignored, run "chameleon.bat train" to regenerate it
+)
+goto EXECUTE
+
+:TRAIN
+call :java_version
+if %JAVA_MAJOR% LSS 13 (
+    echo [error] train requires Java 13+, found: %JAVA_VERSION%
+    goto END
+)
+if not exist "%CHAMELEON_HOME%cds" mkdir "%CHAMELEON_HOME%cds"
+if exist "%CDS_ARCHIVE%" del "%CDS_ARCHIVE%"
+if exist "%CDS_JVM%" del "%CDS_JVM%"
+set CDS_ARGS=-XX:ArchiveClassesAtExit="%CDS_ARCHIVE%" -XX:DumpLoadedClassList="%CHAMELEON_HOME%cds\classes.lst"
+set TRAINING=--training
+set SHIFT=true
+
 :EXECUTE
     if "%SHIFT%" == "true" SET ARGS=%2 %3 %4 %5 %6 %7 %8
     if not "%SHIFT%" == "true" SET ARGS=%1 %2 %3 %4 %5 %6 %7 %8
     rem Execute the Java Virtual Machine
-    "%JAVA%" -cp "%CLASSPATH%" %JVM_ARGS%  -Dchameleon.home=%CHAMELEON_HOME% org.ow2.chameleon.core.Main %ARGS%
+    "%JAVA%" -cp "%CLASSPATH%" %CDS_ARGS% %JVM_ARGS%  -Dchameleon.home=%CHAMELEON_HOME% org.ow2.chameleon.core.Main %TRAINING% %ARGS%
+    if "%TRAINING%" == "--training" if not errorlevel 1 >"%CDS_JVM%" echo %JAVA_VERSION%
 
 rem # # # # # # # # # # # # # # # # # # # # # # # # # # # # # # # # # # # # # #
 
@@ -58,6 +58,7 @@ fi
 if test "$1" = "clean-all"; then
   rm -rf chameleon-cache
   rm -rf logs
+  rm -rf cds
   if [ $# -ne 1 ]
   then
    shift
@@ -100,10 +101,54 @@ do
   CLASSPATH=${CLASSPATH}:${i}
 done
 
+# Prints the major version of the JVM from its 'java -version' output (8 for 1.8.0_392, 17 for 17.0.9), 0 if unknown.
+java_major() {
+  major=`echo "$1" | head -1 | sed -e 's/^[^"]*"1\.\([0-9]*\).*$/\1/' -e 's/^[^"]*"\([0-9]*\).*$/\1/'`
+  case "$major" in
+    ''|*[!0-9]*) echo 0 ;;
+    *) echo "$major" ;;
+  esac
+}
+
+# Training run: starts chameleon, stops it once stable, and dumps the loaded classes in a class data sharing
+# archive (requires Java 13+). The archive is used by the next starts, it must be regenerated when the jars of the
+# 'bin' directory change. The 'java -version' output of the JVM producing the archive is stored in cds/jvm.txt, as
+# the archive cannot be used by another JVM.
+if test "$1" = "train"; then
+  shift
+  JAVA_VERSION=`"$JAVA" -version 2>&1`
+  if [ `java_major "$JAVA_VERSION"` -lt 13 ]; then
+    echo "[error] train requires Java 13+ (found: `echo "$JAVA_VERSION" | head -1`)"
+    exit 1
+  fi
+  mkdir -p cds
+  rm -f cds/chameleon.jsa cds/jvm.txt
+  "$JAVA" -cp ${CLASSPATH} ${JVM_ARGS} -XX:ArchiveClassesAtExit=cds/chameleon.jsa \
+      -XX:DumpLoadedClassList=cds/classes.lst -Dchameleon.home=$dir org.ow2.chameleon.core.Main --training "$@"
+  RESULT=$?
+  if test "$RESULT" = 0; then
+    echo "$JAVA_VERSION" > cds/jvm.txt
+    echo "[info] Class data sharing archive written to cds/chameleon.jsa"
+  else
+    echo "[error] Training run failed ($RESULT)"
+  fi
+  exit ${RESULT}
+fi
+
+if [ -f cds/chameleon.jsa ]; then
+  JAVA_VERSION=`"$JAVA" -version 2>&1`
+  CDS_VERSION=`cat cds/jvm.txt 2>/dev/null`
+  if test "$JAVA_VERSION" = "$CDS_VERSION"; then
+    CDS_ARGS="-XX:SharedArchiveFile=cds/chameleon.jsa"
+  else
+    echo "[warn] cds/chameleon.jsa was produced by another JVM, it is ignored (run '$0 train' to regenerate it)"
+  fi
+fi
+
 if test "$1" = "--interactive"; then
-    "$JAVA" -cp ${CLASSPATH} ${JVM_ARGS} -Dchameleon.home=$dir org.ow2.chameleon.core.Main "$@"
+    "$JAVA" -cp ${CLASSPATH} ${CDS_ARGS} ${JVM_ARGS} -Dchameleon.home=$dir org.ow2.chameleon.core.Main "$@"
 else
-    "$JAVA" -cp ${CLASSPATH} ${JVM_ARGS} -Dchameleon.home=$dir org.ow2.chameleon.core.Main "$@" &
+    "$JAVA" -cp ${CLASSPATH} ${CDS_ARGS} ${JVM_ARGS} -Dchameleon.home=$dir org.ow2.chameleon.core.Main "$@" &
     echo $! > RUNNING_PID
 fi
 
@@ -23,8 +23,10 @@ import org.apache.commons.io.FileUtils;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleException;
 import org.osgi.framework.ServiceReference;
+import org.osgi.framework.ServiceRegistration;
 import org.ow2.chameleon.core.activators.BundleStabilityChecker;
 import org.ow2.chameleon.core.activators.IPojoProcessingStabilityChecker;
 import org.ow2.chameleon.core.activators.ServiceStabilityChecker;
@@ -32,13 +34,22 @@ import org.ow2.chameleon.core.hook.MyHook;
 import org.ow2.chameleon.core.services.AbstractStabilityChecker;
 import org.ow2.chameleon.core.services.Stability;
 import org.ow2.chameleon.core.services.StabilityChecker;
+import org.ow2.chameleon.core.services.StabilityListener;
 import org.ow2.chameleon.core.services.StabilityResult;
 import org.ow2.chameleon.core.utils.jul.JulLogManager;
 import org.ow2.chameleon.core.utils.jul.JulWrapper;
 
 import java.io.File;
+import java.util.HashMap;
+import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -125,6 +136,74 @@ public class ChameleonTest {
         assertThat(iterator.next()).isInstanceOf(IPojoProcessingStabilityChecker.class);
     }
 
+    @Test
+    public void testEventDrivenStability() throws Exception {
+        ChameleonConfiguration configuration = new ChameleonConfiguration(CHAMELEON);
+        configuration.put(Constants.CHAMELEON_STABILITY_QUIET_PERIOD_PROPERTY, "20");
+        chameleon.stop();
+        chameleon = new Chameleon(configuration);
+        chameleon.start();
+        Stability stability = chameleon.context().getService(
+                chameleon.context().getServiceReference(Stability.class));
+        assertThat(stability.waitForStability()).isTrue();
+        assertThat(stability.isStable()).isTrue();
+
+        Iterator<StabilityChecker> iterator = stability.getStabilityResult().keySet().iterator();
+        assertThat(iterator.next()).isInstanceOf(BundleStabilityChecker.class);
+        assertThat(iterator.next()).isInstanceOf(ServiceStabilityChecker.class);
+        assertThat(iterator.next()).isInstanceOf(IPojoProcessingStabilityChecker.class);
+    }
+
+    @Test
+    public void testAsyncStability() throws Exception {
+        chameleon.start();
+        Stability stability = chameleon.context().getService(
+                chameleon.context().getServiceReference(Stability.class));
+        Future<Map<StabilityChecker, StabilityResult>> future = stability.stabilityAsync(30, TimeUnit.SECONDS);
+        Map<StabilityChecker, StabilityResult> results = future.get(60, TimeUnit.SECONDS);
+        assertThat(results).hasSize(3);
+        for (StabilityResult result : results.values()) {
+            assertThat(result.isStable).isTrue();
+        }
+    }
+
+    @Test
+    public void testStabilityListener() throws Exception {
+        chameleon.start();
+        final BlockingQueue<Boolean> states = new LinkedBlockingQueue<Boolean>();
+        chameleon.context().registerService(StabilityListener.class, new StabilityListener() {
+            @Override
+            public void stabilityChanged(boolean stable, Map<StabilityChecker, StabilityResult> results) {
+                states.add(stable);
+            }
+        }, null);
+
+        // Wait until the system is stable, it may not be stable when the listener is registered.
+        Boolean state = states.poll(30, TimeUnit.SECONDS);
+        while (state != null && !state) {
+            state = states.poll(30, TimeUnit.SECONDS);
+        }
+        assertThat(state).isTrue();
+
+        chameleon.context().registerService(StabilityChecker.class, new AbstractStabilityChecker() {
+            @Override
+            public String getName() {
+                return "my custom checker";
+            }
+
+            @Override
+            public int getPriority() {
+                return 4;
+            }
+
+            @Override
+            public StabilityResult check() {
+                return StabilityResult.unstable("Bad mood");
+            }
+        }, null);
+        assertThat(states.poll(30, TimeUnit.SECONDS)).isFalse();
+    }
+
     @Test
     public void testStabilityWithCustomChecker() throws BundleException {
         assertThat(chameleon).isNotNull();
@@ -192,4 +271,189 @@ public class ChameleonTest {
         assertThat(stability.isStable()).isFalse();
     }
 
+    @Test
+    public void testConcurrentCheckers() throws Exception {
+        chameleon.start();
+        // Both checkers wait for each other, so they are stable only if they are run concurrently.
+        final CountDownLatch latch = new CountDownLatch(2);
+        Hashtable<String, Object> properties = new Hashtable<String, Object>();
+        properties.put(StabilityChecker.CONCURRENT_PROPERTY, true);
+        for (int i = 0; i < 2; i++) {
+            chameleon.context().registerService(StabilityChecker.class, new AbstractStabilityChecker() {
+                @Override
+                public String getName() {
+                    return "concurrent checker";
+                }
+
+                @Override
+                public int getPriority() {
+                    return 4;
+                }
+
+                @Override
+                public StabilityResult check() {
+                    latch.countDown();
+                    try {
+                        if (latch.await(10, TimeUnit.SECONDS)) {
+                            return StabilityResult.stable();
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return StabilityResult.unstable("Not run concurrently");
+                }
+            }, properties);
+        }
+
+        Stability stability = chameleon.context().getService(
+                chameleon.context().getServiceReference(Stability.class));
+        Map<StabilityChecker, StabilityResult> results = stability.getStabilityResult();
+        assertThat(results).hasSize(5);
+        for (StabilityResult result : results.values()) {
+            assertThat(result.isStable).isTrue();
+            assertThat(result.duration).isGreaterThanOrEqualTo(0);
+        }
+    }
+
+    @Test
+    public void testCheckerTimeout() throws Exception {
+        chameleon.start();
+        Hashtable<String, Object> properties = new Hashtable<String, Object>();
+        properties.put(StabilityChecker.TIMEOUT_PROPERTY, 100L);
+        chameleon.context().registerService(StabilityChecker.class, new AbstractStabilityChecker() {
+            @Override
+            public String getName() {
+                return "slow checker";
+            }
+
+            @Override
+            public int getPriority() {
+                return 4;
+            }
+
+            @Override
+            public StabilityResult check() {
+                try {
+                    Thread.sleep(30000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return StabilityResult.stable();
+            }
+        }, properties);
+
+        Stability stability = chameleon.context().getService(
+                chameleon.context().getServiceReference(Stability.class));
+        long begin = System.currentTimeMillis();
+        assertThat(stability.waitForStability()).isFalse();
+        assertThat(System.currentTimeMillis() - begin).isLessThan(10000);
+
+        StabilityResult result = null;
+        for (Map.Entry<StabilityChecker, StabilityResult> entry : stability.getStabilityResult().entrySet()) {
+            if (entry.getKey().getName().equals("slow checker")) {
+                result = entry.getValue();
+            }
+        }
+        assertThat(result).isNotNull();
+        assertThat(result.isStable).isFalse();
+        assertThat(result.reason).contains("100 ms");
+        assertThat(result.duration).isGreaterThanOrEqualTo(100);
+    }
+
+    @Test
+    public void testCheckerRegistry() throws Exception {
+        chameleon.start();
+        Stability stability = chameleon.context().getService(
+                chameleon.context().getServiceReference(Stability.class));
+        Set<StabilityChecker> builtins = stability.getStabilityResult().keySet();
+        assertThat(builtins).hasSize(3);
+        // The built-in checkers are reused.
+        assertThat(stability.getStabilityResult().keySet()).containsExactlyElementsOf(builtins);
+
+        ServiceRegistration<StabilityChecker> registration = chameleon.context().registerService(
+                StabilityChecker.class, new AbstractStabilityChecker() {
+                    @Override
+                    public String getName() {
+                        return "my custom checker";
+                    }
+
+                    @Override
+                    public int getPriority() {
+                        return 4;
+                    }
+
+                    @Override
+                    public StabilityResult check() {
+                        return StabilityResult.stable();
+                    }
+                }, null);
+        assertThat(stability.getStabilityResult()).hasSize(4);
+        assertThat(registration.getReference().getUsingBundles()).hasSize(1);
+
+        registration.unregister();
+        assertThat(stability.getStabilityResult().keySet()).containsExactlyElementsOf(builtins);
+    }
+
+    @Test
+    public void testStartupProfiler() throws Exception {
+        File trace = new File("target/test/startup-trace.json");
+        FileUtils.deleteQuietly(trace);
+        ChameleonConfiguration configuration = new ChameleonConfiguration(CHAMELEON);
+        configuration.put(Constants.CHAMELEON_STARTUP_PROFILER_PROPERTY, "true");
+        configuration.put(Constants.CHAMELEON_STARTUP_PROFILER_TRACE_PROPERTY, trace.getAbsolutePath());
+        chameleon.stop();
+        chameleon = new Chameleon(configuration);
+        chameleon.start().waitForStability();
+
+        // The trace is written asynchronously, once the stability is notified.
+        for (int i = 0; i < 300 && !trace.isFile(); i++) {
+            Thread.sleep(100);
+        }
+        assertThat(trace).isFile();
+        String content = FileUtils.readFileToString(trace);
+        assertThat(content).contains("\"traceEvents\"").contains("\"framework configuration\"")
+                .contains("\"CoreActivator\"").contains("\"stability\"");
+    }
+
+    @Test
+    public void testConcurrentCoreInstallation() throws Exception {
+        ChameleonConfiguration configuration = new ChameleonConfiguration(CHAMELEON);
+        configuration.put(Constants.CHAMELEON_CORE_INSTALL_THREADS_PROPERTY, "4");
+        chameleon.stop();
+        chameleon = new Chameleon(configuration);
+        chameleon.start().waitForStability();
+
+        assertThat(chameleon.context().getBundles().length).isGreaterThan(1);
+        for (Bundle bundle : chameleon.context().getBundles()) {
+            assertThat(bundle.getState()).isIn(Bundle.ACTIVE, Bundle.RESOLVED);
+        }
+    }
+
+    @Test
+    public void testWarmRestart() throws Exception {
+        ChameleonConfiguration configuration = new ChameleonConfiguration(CHAMELEON);
+        configuration.put(Constants.CHAMELEON_WARM_RESTART_PROPERTY, "true");
+        chameleon.stop();
+        chameleon = new Chameleon(configuration);
+        chameleon.start().waitForStability();
+        assertThat(configuration.getDeploymentSnapshot().getFile()).isFile();
+
+        Map<String, Long> ids = new HashMap<String, Long>();
+        for (Bundle bundle : chameleon.context().getBundles()) {
+            ids.put(bundle.getLocation(), bundle.getBundleId());
+        }
+        chameleon.stop();
+
+        // The bundles restored from the OSGi storage are reused.
+        configuration = new ChameleonConfiguration(CHAMELEON);
+        configuration.put(Constants.CHAMELEON_WARM_RESTART_PROPERTY, "true");
+        chameleon = new Chameleon(configuration);
+        chameleon.start().waitForStability();
+        assertThat(chameleon.context().getBundles()).hasSize(ids.size());
+        for (Bundle bundle : chameleon.context().getBundles()) {
+            assertThat(bundle.getBundleId()).isEqualTo(ids.get(bundle.getLocation()));
+            assertThat(bundle.getState()).isIn(Bundle.ACTIVE, Bundle.RESOLVED);
+        }
+    }
+
 }
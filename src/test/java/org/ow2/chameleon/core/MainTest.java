@@ -22,6 +22,7 @@ package org.ow2.chameleon.core;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Test;
+import org.osgi.framework.Bundle;
 import org.ow2.chameleon.core.utils.jul.JulLogManager;
 import org.ow2.chameleon.core.utils.jul.JulWrapper;
 
@@ -71,6 +72,14 @@ public class MainTest {
         assertThat(chameleon).isNotNull();
     }
 
+    @Test
+    public void testTrainingRun() throws Exception {
+        System.setProperty(Chameleon.CHAMELEON_BASEDIR, "target/test/chameleon");
+        Chameleon chameleon = Main.createChameleon(new String[]{Main.TRAINING_ARGUMENT, Main.INTERACTIVE_ARGUMENT});
+        assertThat(Main.train(chameleon)).isEqualTo(0);
+        assertThat(chameleon.framework().getState()).isEqualTo(Bundle.RESOLVED);
+    }
+
     @Test
     public void testJulFacade() throws IOException {
         System.setProperty(Chameleon.CHAMELEON_BASEDIR, "target/test/chameleon");
@@ -25,9 +25,15 @@ import org.junit.Before;
 import org.junit.Test;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleException;
+import org.osgi.framework.ServiceReference;
+import org.osgi.service.cm.Configuration;
+import org.osgi.service.cm.ConfigurationAdmin;
 import org.ow2.chameleon.core.Chameleon;
+import org.ow2.chameleon.core.ChameleonConfiguration;
+import org.ow2.chameleon.core.Constants;
 
 import java.io.File;
+import java.io.IOException;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.ops4j.pax.tinybundles.core.TinyBundles.bundle;
@@ -135,6 +141,107 @@ public class BundleDeployerTest {
 
     }
 
+    @Test
+    public void testBatchDeploymentWithDependencies() throws Exception {
+        chameleon.start();
+
+        // Dropped in the same batch, the consumer is started after the provider.
+        FileUtils.copyInputStreamToFile(bundle()
+                .set(org.osgi.framework.Constants.BUNDLE_MANIFESTVERSION, "2")
+                .set(org.osgi.framework.Constants.BUNDLE_SYMBOLICNAME, "my-consumer")
+                .set(org.osgi.framework.Constants.BUNDLE_VERSION, "1.0.0")
+                .set(org.osgi.framework.Constants.IMPORT_PACKAGE, "org.acme.api")
+                .build(), new File(APPLICATION, "consumer.jar"));
+        FileUtils.copyInputStreamToFile(bundle()
+                .set(org.osgi.framework.Constants.BUNDLE_MANIFESTVERSION, "2")
+                .set(org.osgi.framework.Constants.BUNDLE_SYMBOLICNAME, "my-provider")
+                .set(org.osgi.framework.Constants.BUNDLE_VERSION, "1.0.0")
+                .set(org.osgi.framework.Constants.EXPORT_PACKAGE, "org.acme.api")
+                .build(), new File(APPLICATION, "provider.jar"));
+
+        waitPolling();
+
+        assertThat(getBundle("my-provider").getState()).isEqualTo(Bundle.ACTIVE);
+        assertThat(getBundle("my-consumer").getState()).isEqualTo(Bundle.ACTIVE);
+
+        // Update the provider, the consumer is refreshed and restarted.
+        FileUtils.copyInputStreamToFile(bundle()
+                .set(org.osgi.framework.Constants.BUNDLE_MANIFESTVERSION, "2")
+                .set(org.osgi.framework.Constants.BUNDLE_SYMBOLICNAME, "my-provider")
+                .set(org.osgi.framework.Constants.BUNDLE_VERSION, "1.1.0")
+                .set(org.osgi.framework.Constants.EXPORT_PACKAGE, "org.acme.api")
+                .build(), new File(APPLICATION, "provider.jar"));
+
+        waitPolling();
+
+        assertThat(getBundle("my-provider").getVersion().toString()).isEqualTo("1.1.0");
+        assertThat(getBundle("my-consumer").getState()).isEqualTo(Bundle.ACTIVE);
+
+        // Remove the provider, the consumer cannot be resolved anymore.
+        FileUtils.deleteQuietly(new File(APPLICATION, "provider.jar"));
+
+        waitPolling();
+
+        assertThat(getBundle("my-provider")).isNull();
+        assertThat(getBundle("my-consumer").getState()).isEqualTo(Bundle.INSTALLED);
+    }
+
+    @Test
+    public void testReconciliationOnWarmRestart() throws Exception {
+        writeBundle("my-bundle", "1.0.0", "bundle1.jar");
+        writeBundle("my-bundle-2", "1.0.0", "bundle2.jar");
+        writeBundle("my-bundle-3", "1.0.0", "bundle3.jar");
+        FileUtils.writeStringToFile(new File(APPLICATION, "org.acme.kept-one.cfg"), "key=value");
+        FileUtils.writeStringToFile(new File(APPLICATION, "org.acme.removed.cfg"), "key=value");
+        chameleon.stop();
+        chameleon = warmChameleon();
+        chameleon.start().waitForStability();
+        long id1 = getBundle("my-bundle").getBundleId();
+        long id3 = getBundle("my-bundle-3").getBundleId();
+        int numberOfBundles = chameleon.context().getBundles().length;
+        assertThat(getConfigurations("(service.factoryPid=org.acme.kept)")).hasSize(1);
+        assertThat(getConfigurations("(service.pid=org.acme.removed)")).hasSize(1);
+        chameleon.stop();
+
+        // Changes done while stopped.
+        FileUtils.forceDelete(new File(APPLICATION, "bundle2.jar"));
+        FileUtils.forceDelete(new File(APPLICATION, "org.acme.removed.cfg"));
+        writeBundle("my-bundle-3", "1.1.0", "bundle3.jar");
+        writeBundle("my-bundle-4", "1.0.0", "bundle4.jar");
+
+        chameleon = warmChameleon();
+        chameleon.start().waitForStability();
+        assertThat(chameleon.context().getBundles()).hasSize(numberOfBundles);
+        assertThat(getBundle("my-bundle").getBundleId()).isEqualTo(id1);
+        assertThat(getBundle("my-bundle").getState()).isEqualTo(Bundle.ACTIVE);
+        assertThat(getBundle("my-bundle-2")).isNull();
+        assertThat(getBundle("my-bundle-3").getBundleId()).isEqualTo(id3);
+        assertThat(getBundle("my-bundle-3").getVersion().toString()).isEqualTo("1.1.0");
+        assertThat(getBundle("my-bundle-4").getState()).isEqualTo(Bundle.ACTIVE);
+        // The factory configuration is reused, not created again.
+        assertThat(getConfigurations("(service.factoryPid=org.acme.kept)")).hasSize(1);
+        assertThat(getConfigurations("(service.pid=org.acme.removed)")).isNull();
+    }
+
+    private Chameleon warmChameleon() throws Exception {
+        ChameleonConfiguration configuration = new ChameleonConfiguration(CHAMELEON);
+        configuration.put(Constants.CHAMELEON_WARM_RESTART_PROPERTY, "true");
+        return new Chameleon(configuration);
+    }
+
+    private void writeBundle(String sn, String version, String name) throws IOException {
+        FileUtils.copyInputStreamToFile(bundle()
+                .set(org.osgi.framework.Constants.BUNDLE_SYMBOLICNAME, sn)
+                .set(org.osgi.framework.Constants.BUNDLE_VERSION, version)
+                .build(withBnd()), new File(APPLICATION, name));
+    }
+
+    private Configuration[] getConfigurations(String filter) throws Exception {
+        ServiceReference<ConfigurationAdmin> reference = chameleon.context()
+                .getServiceReference(ConfigurationAdmin.class);
+        return chameleon.context().getService(reference).listConfigurations(filter);
+    }
+
     private void waitPolling() throws InterruptedException {
         Thread.sleep(2500);
     }
@@ -22,7 +22,10 @@ package org.ow2.chameleon.core.activators;
 import org.junit.Test;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
 import org.osgi.framework.Constants;
+import org.osgi.framework.wiring.BundleRevision;
+import org.ow2.chameleon.core.services.StabilityResult;
 
 import java.lang.reflect.Field;
 import java.util.Dictionary;
@@ -30,6 +33,8 @@ import java.util.Hashtable;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class BundleStabilityCheckerTest {
@@ -115,4 +120,44 @@ public class BundleStabilityCheckerTest {
         assertThat(checker.check().isStable).isTrue();
     }
 
+    @Test
+    public void testOpenedChecker() {
+        Bundle system = mock(Bundle.class);
+        when(system.getState()).thenReturn(Bundle.ACTIVE);
+        when(system.getHeaders()).thenReturn(new Hashtable<String, String>());
+
+        Bundle fragment = mock(Bundle.class);
+        when(fragment.getState()).thenReturn(Bundle.RESOLVED);
+        BundleRevision revision = mock(BundleRevision.class);
+        when(revision.getTypes()).thenReturn(BundleRevision.TYPE_FRAGMENT);
+        when(fragment.adapt(BundleRevision.class)).thenReturn(revision);
+
+        Bundle bundle = mock(Bundle.class);
+        when(bundle.getState()).thenReturn(Bundle.INSTALLED);
+        when(bundle.getSymbolicName()).thenReturn("my.bundle");
+        when(bundle.getBundleId()).thenReturn(42L);
+        when(bundle.getHeaders()).thenReturn(new Hashtable<String, String>());
+
+        BundleContext context = mock(BundleContext.class);
+        when(context.getBundles()).thenReturn(new Bundle[]{system, fragment, bundle});
+        BundleStabilityChecker checker = new BundleStabilityChecker(context, 3);
+        checker.open();
+        verify(context).addBundleListener(checker);
+        assertThat(checker.getUnstableBundles()).containsExactly(bundle);
+        // The fragment status is read from the revision.
+        verify(fragment, never()).getHeaders();
+
+        StabilityResult result = checker.check();
+        assertThat(result.isStable).isFalse();
+        assertThat(result.reason).contains("my.bundle [42]");
+
+        when(bundle.getState()).thenReturn(Bundle.ACTIVE);
+        checker.bundleChanged(new BundleEvent(BundleEvent.STARTED, bundle));
+        assertThat(checker.getUnstableBundles()).isEmpty();
+        assertThat(checker.check().isStable).isTrue();
+
+        checker.close();
+        verify(context).removeBundleListener(checker);
+    }
+
 }
\ No newline at end of file
@@ -28,10 +28,15 @@ import org.osgi.framework.BundleException;
 import org.osgi.framework.ServiceReference;
 import org.osgi.service.cm.Configuration;
 import org.osgi.service.cm.ConfigurationAdmin;
+import org.osgi.service.cm.ConfigurationEvent;
+import org.osgi.service.cm.ConfigurationListener;
 import org.ow2.chameleon.core.Chameleon;
+import org.ow2.chameleon.core.services.Deployer;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.fail;
@@ -119,6 +124,97 @@ public class ConfigDeployerTest {
         assertThat(admin.listConfigurations(null)).isNull();
     }
 
+    @Test
+    public void testJsonConfiguration() throws Exception {
+        FileUtils.writeStringToFile(new File(APPLICATION, "my.json.configuration.json"),
+                "{\"property\": \"value\", \"port:Integer\": 8080, \"hosts\": [\"a\", \"b\"]}");
+        chameleon.start();
+
+        ConfigurationAdmin admin = retrieveConfigurationAdmin();
+        Configuration configuration = admin.getConfiguration("my.json.configuration", "?");
+        assertThat(configuration.getProperties().get("property")).isEqualTo("value");
+        assertThat(configuration.getProperties().get("port")).isEqualTo(8080);
+        assertThat((String[]) configuration.getProperties().get("hosts")).containsExactly("a", "b");
+    }
+
+    @Test
+    public void testUnchangedConfigurationIsNotUpdated() throws Exception {
+        File file = new File(APPLICATION, "my.app.configuration.cfg");
+        FileUtils.writeStringToFile(file, "property = value");
+        chameleon.start();
+
+        final List<ConfigurationEvent> events = new CopyOnWriteArrayList<ConfigurationEvent>();
+        chameleon.context().registerService(ConfigurationListener.class, new ConfigurationListener() {
+            @Override
+            public void configurationEvent(ConfigurationEvent event) {
+                events.add(event);
+            }
+        }, null);
+
+        // Same content, formatted differently.
+        FileUtils.writeStringToFile(file, "# A comment\nproperty=value\n");
+        assertThat(file.setLastModified(file.lastModified() + 5000)).isTrue();
+        waitPolling();
+        assertThat(events).isEmpty();
+
+        FileUtils.writeStringToFile(file, "property = value2");
+        assertThat(file.setLastModified(file.lastModified() + 10000)).isTrue();
+        waitPolling();
+        assertThat(events).hasSize(1);
+        ConfigurationAdmin admin = retrieveConfigurationAdmin();
+        Configuration configuration = admin.getConfiguration("my.app.configuration", "?");
+        assertThat(configuration.getProperties().get("property")).isEqualTo("value2");
+    }
+
+    @Test
+    public void testUpdatesOfTheSameConfigurationAreMerged() throws Exception {
+        File file = new File(APPLICATION, "my.app.configuration.cfg");
+        FileUtils.writeStringToFile(file, "property = value");
+        chameleon.start();
+
+        final List<ConfigurationEvent> events = new CopyOnWriteArrayList<ConfigurationEvent>();
+        chameleon.context().registerService(ConfigurationListener.class, new ConfigurationListener() {
+            @Override
+            public void configurationEvent(ConfigurationEvent event) {
+                events.add(event);
+            }
+        }, null);
+
+        ConfigDeployer deployer = retrieveConfigDeployer();
+
+        // Notify the events directly, as the monitor would do on successive polling cycles.
+        for (int i = 1; i <= 5; i++) {
+            FileUtils.writeStringToFile(file, "property = value" + i);
+            deployer.onFileChange(file);
+        }
+        ConfigurationAdmin admin = retrieveConfigurationAdmin();
+        // Not applied by the notifying thread.
+        assertThat(admin.getConfiguration("my.app.configuration", "?").getProperties().get("property"))
+                .isEqualTo("value");
+
+        Thread.sleep(ConfigDeployer.DEFAULT_UPDATE_WINDOW * 4);
+        assertThat(events).hasSize(1);
+        assertThat(admin.getConfiguration("my.app.configuration", "?").getProperties().get("property"))
+                .isEqualTo("value5");
+    }
+
+    @Test
+    public void testUpdatesOfFilesWithTheSameNameAreNotMerged() throws Exception {
+        chameleon.start();
+        ConfigDeployer deployer = retrieveConfigDeployer();
+
+        File first = new File(APPLICATION, "first/my.component-instance.cfg");
+        File second = new File(APPLICATION, "second/my.component-instance.cfg");
+        FileUtils.writeStringToFile(first, "key = first");
+        FileUtils.writeStringToFile(second, "key = second");
+        deployer.onFileCreate(first);
+        deployer.onFileCreate(second);
+
+        Thread.sleep(ConfigDeployer.DEFAULT_UPDATE_WINDOW * 4);
+        ConfigurationAdmin admin = retrieveConfigurationAdmin();
+        assertThat(admin.listConfigurations("(service.factoryPid=my.component)")).hasSize(2);
+    }
+
     @Test
     public void testConfigurationAdminDynamics() throws Exception {
         // Create a managed service configuration
@@ -205,6 +301,16 @@ public class ConfigDeployerTest {
     }
 
 
+    private ConfigDeployer retrieveConfigDeployer() throws Exception {
+        for (ServiceReference<Deployer> ref : chameleon.context().getServiceReferences(Deployer.class, null)) {
+            if (chameleon.context().getService(ref) instanceof ConfigDeployer) {
+                return (ConfigDeployer) chameleon.context().getService(ref);
+            }
+        }
+        fail("The config deployer is not registered");
+        return null;
+    }
+
     private void waitPolling() throws InterruptedException {
         Thread.sleep(2500);
     }
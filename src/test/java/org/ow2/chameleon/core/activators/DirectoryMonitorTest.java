@@ -25,12 +25,15 @@ import org.junit.Before;
 import org.junit.Test;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceReference;
+import org.ow2.chameleon.core.services.BatchDeployer;
 import org.ow2.chameleon.core.services.Deployer;
 import org.ow2.chameleon.core.services.DirectoryBasedDeployer;
+import org.ow2.chameleon.core.utils.FileChangeMonitor;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -109,6 +112,42 @@ public class DirectoryMonitorTest {
         monitor.stop(context);
     }
 
+    @Test
+    public void testParallelScanKeepsTheOrder() throws Exception {
+        for (int i = 0; i < 50; i++) {
+            createFile("file" + i + (i % 2 == 0 ? ".even" : ".odd"));
+        }
+        List<File> expected = new ArrayList<File>(FileUtils.listFiles(directory, null, true));
+
+        monitor = new DirectoryMonitor(0L, 4);
+        monitor.add(directory, -1L);
+        SpyingDeployer all = new SpyingDeployer();
+        SpyingDeployer even = new SpyingDeployer() {
+            @Override
+            public boolean accept(File file) {
+                return super.accept(file) && file.getName().endsWith(".even");
+            }
+        };
+        BundleContext context = mock(BundleContext.class);
+        monitor.deployers.add(all);
+        monitor.deployers.add(even);
+        monitor.start(context);
+
+        // Deployers are opened when the directory is added.
+        monitor.removeAndStopIfNeeded(directory);
+        monitor.add(directory, -1L);
+        assertThat(all.created).isEqualTo(expected);
+        List<File> expectedEven = new ArrayList<File>();
+        for (File file : expected) {
+            if (file.getName().endsWith(".even")) {
+                expectedEven.add(file);
+            }
+        }
+        assertThat(even.created).hasSize(25).isEqualTo(expectedEven);
+
+        monitor.stop(context);
+    }
+
     private List<String> getFileNames(List<File> files) {
         List<String> names = new ArrayList<String>();
         for (File f : files) {
@@ -148,6 +187,195 @@ public class DirectoryMonitorTest {
         monitor.stop(context);
     }
 
+    @Test
+    public void testFileDynamicsWithNativeMonitoring() throws Exception {
+        File watched = new File("target/test-data/watched");
+        FileUtils.deleteQuietly(watched);
+        watched.mkdirs();
+        directory = watched;
+        monitor = new DirectoryMonitor();
+        monitor.add(watched, 10L, true);
+
+        SpyingDeployer spy = new SpyingDeployer();
+        BundleContext context = mock(BundleContext.class);
+        monitor.deployers.add(spy);
+        monitor.start(context);
+
+        // Create a new file
+        File file = new File(watched, "file1");
+        file.createNewFile();
+        waitFor(spy.created, 1);
+        assertThat(spy.created.get(0).getName()).isEqualTo("file1");
+
+        // Update the file
+        FileUtils.writeStringToFile(file, Long.toString(System.currentTimeMillis()));
+        waitFor(spy.updated, 1);
+        assertThat(spy.updated.get(0).getName()).isEqualTo("file1");
+
+        // Files from new sub-directories are also watched
+        File sub = new File(watched, "sub");
+        sub.mkdirs();
+        File file2 = new File(sub, "file2");
+        FileUtils.writeStringToFile(file2, "hello");
+        waitFor(spy.created, 2);
+        assertThat(spy.created.get(1).getName()).isEqualTo("file2");
+
+        // Delete the sub-directory
+        FileUtils.deleteDirectory(sub);
+        waitFor(spy.deleted, 1);
+        assertThat(spy.deleted.get(0).getName()).isEqualTo("file2");
+
+        monitor.stop(context);
+    }
+
+    @Test
+    public void testNativeMonitoringWaitsForNewFilesToBeWritten() throws Exception {
+        File watched = new File("target/test-data/watched");
+        FileUtils.deleteQuietly(watched);
+        watched.mkdirs();
+        directory = watched;
+        monitor = new DirectoryMonitor();
+        monitor.add(watched, 10L, true);
+
+        SpyingDeployer spy = new SpyingDeployer();
+        BundleContext context = mock(BundleContext.class);
+        monitor.deployers.add(spy);
+        monitor.start(context);
+
+        // Write the file slowly, as a copy from a slow device would do.
+        File file = new File(watched, "file1");
+        for (int i = 0; i < 5; i++) {
+            FileUtils.writeStringToFile(file, "chunk" + i + "\n", true);
+            Thread.sleep(FileChangeMonitor.SETTLE_PERIOD / 5);
+        }
+        assertThat(spy.created).isEmpty();
+
+        waitFor(spy.created, 1);
+        assertThat(spy.created).hasSize(1);
+        assertThat(spy.updated).isEmpty();
+
+        // A file deleted before being settled is not notified.
+        File temporary = new File(watched, "file2");
+        FileUtils.writeStringToFile(temporary, "content");
+        FileUtils.forceDelete(temporary);
+        Thread.sleep(FileChangeMonitor.SETTLE_PERIOD * 2);
+        assertThat(spy.created).hasSize(1);
+        assertThat(spy.deleted).isEmpty();
+
+        monitor.stop(context);
+    }
+
+    @Test
+    public void testInterruptedScanDoesNotOpenTheDeployers() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            createFile("file" + i);
+        }
+        monitor = new DirectoryMonitor(0L, 4);
+        final List<Collection<File>> opened = new ArrayList<Collection<File>>();
+        SpyingDeployer spy = new SpyingDeployer() {
+            @Override
+            public void open(Collection<File> files) {
+                opened.add(files);
+            }
+        };
+        BundleContext context = mock(BundleContext.class);
+        monitor.deployers.add(spy);
+        monitor.start(context);
+
+        Thread.currentThread().interrupt();
+        try {
+            monitor.add(directory, -1L);
+            assertThat(Thread.currentThread().isInterrupted()).isTrue();
+        } finally {
+            Thread.interrupted();
+        }
+        assertThat(opened).isEmpty();
+
+        // Not interrupted anymore.
+        monitor.removeAndStopIfNeeded(directory);
+        monitor.add(directory, -1L);
+        assertThat(opened).hasSize(1);
+        assertThat(opened.get(0)).hasSize(10);
+        monitor.stop(context);
+    }
+
+    @Test
+    public void testContentDigest() throws Exception {
+        FileUtils.writeStringToFile(new File(directory, "file1"), "content");
+        monitor = new DirectoryMonitor(0L, 1, true);
+        monitor.add(directory, 10L);
+        SpyingDeployer spy = new SpyingDeployer();
+        BundleContext context = mock(BundleContext.class);
+        ServiceReference<Deployer> reference = mock(ServiceReference.class);
+        when(context.getService(reference)).thenReturn(spy);
+        monitor.start(context);
+        monitor.addingService(reference);
+        assertThat(spy.created).hasSize(1);
+
+        // Rewrite the same content.
+        File file = new File(directory, "file1");
+        FileUtils.writeStringToFile(file, "content");
+        file.setLastModified(file.lastModified() + 5000);
+        waitPolling();
+        Thread.sleep(50);
+        assertThat(spy.updated).isEmpty();
+        long suppressed = monitor.getSuppressedEventCount();
+        assertThat(suppressed).isGreaterThanOrEqualTo(1);
+
+        // Change the content.
+        FileUtils.writeStringToFile(file, "new content");
+        waitFor(spy.updated, 1);
+        assertThat(spy.updated).hasSize(1);
+        assertThat(monitor.getSuppressedEventCount()).isEqualTo(suppressed);
+
+        monitor.stop(context);
+    }
+
+    @Test
+    public void testBatchesWithQuietPeriod() throws Exception {
+        monitor = new DirectoryMonitor(200L);
+        monitor.add(directory, 10L);
+        SpyingDeployer spy = new SpyingDeployer();
+        BatchSpyingDeployer batchSpy = new BatchSpyingDeployer();
+        BundleContext context = mock(BundleContext.class);
+        monitor.deployers.add(spy);
+        monitor.deployers.add(batchSpy);
+        monitor.start(context);
+
+        // Files dropped over several check cycles
+        createFile("file1");
+        waitPolling();
+        createFile("file2");
+        updateFile("file1");
+        waitPolling();
+        createFile("file3");
+        waitPolling();
+        deleteFile("file3");
+        assertThat(batchSpy.batches).isEmpty();
+
+        waitFor(spy.created, 2);
+        Thread.sleep(50);
+        assertThat(batchSpy.batches).hasSize(1);
+        assertThat(getFileNames(batchSpy.created)).containsExactly("file1", "file2");
+        assertThat(batchSpy.updated).isEmpty();
+        assertThat(batchSpy.deleted).isEmpty();
+
+        // Regular deployers get per-file callbacks
+        assertThat(getFileNames(spy.created)).containsExactly("file1", "file2");
+        assertThat(spy.updated).isEmpty();
+        assertThat(spy.deleted).isEmpty();
+
+        monitor.stop(context);
+    }
+
+    private void waitFor(List<File> files, int size) throws InterruptedException {
+        int attempts = 0;
+        while (files.size() < size && attempts < 200) {
+            Thread.sleep(10);
+            attempts++;
+        }
+    }
+
     @Test
     public void testDeployersDynamics() throws Exception {
         SpyingDeployer spy = new SpyingDeployer();
@@ -247,4 +475,17 @@ public class DirectoryMonitorTest {
         }
     }
 
+    private class BatchSpyingDeployer extends SpyingDeployer implements BatchDeployer {
+
+        public final List<Integer> batches = new ArrayList<Integer>();
+
+        @Override
+        public void onFilesChanged(Collection<File> created, Collection<File> changed, Collection<File> deleted) {
+            batches.add(created.size() + changed.size() + deleted.size());
+            this.created.addAll(created);
+            this.updated.addAll(changed);
+            this.deleted.addAll(deleted);
+        }
+    }
+
 }
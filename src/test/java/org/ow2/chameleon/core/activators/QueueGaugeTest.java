@@ -0,0 +1,83 @@
+/*
+ * #%L
+ * OW2 Chameleon - Core
+ * %%
+ * Copyright (C) 2009 - 2014 OW2 Chameleon
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.ow2.chameleon.core.activators;
+
+import org.apache.felix.ipojo.extender.queue.QueueService;
+import org.junit.Test;
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks the queue gauges.
+ */
+public class QueueGaugeTest {
+
+    @Test
+    public void testQueueServiceGauges() {
+        QueueService queue = mock(QueueService.class);
+        when(queue.getCurrents()).thenReturn(2, 0);
+        when(queue.getWaiters()).thenReturn(5, 0);
+        QueueGauge gauge = new QueueGauge(queue, "async/global");
+        assertThat(gauge.getName()).isEqualTo("async/global");
+        assertThat(gauge.getQueue()).isSameAs(queue);
+        assertThat(gauge.getCurrents()).isEqualTo(2);
+        assertThat(gauge.getWaiters()).isEqualTo(5);
+        assertThat(gauge.isEmpty()).isTrue();
+    }
+
+    @Test
+    public void testQueueWithoutInterface() {
+        QueueGauge gauge = new QueueGauge(new FakeQueue(), "fake");
+        assertThat(gauge.isEmpty()).isFalse();
+        assertThat(gauge.toString()).isEqualTo("fake: 1 current, 3 waiting");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNotAQueue() {
+        new QueueGauge("not a queue", "fake");
+    }
+
+    @Test
+    public void testName() {
+        ServiceReference<?> reference = mock(ServiceReference.class);
+        when(reference.getProperty("ipojo.queue.mode")).thenReturn("async");
+        when(reference.getProperty("ipojo.queue.scope")).thenReturn("global");
+        when(reference.getProperty(Constants.SERVICE_ID)).thenReturn(12L);
+        assertThat(QueueGauge.getName(reference)).isEqualTo("async/global [12]");
+    }
+
+    /**
+     * A queue not implementing the queue service interface.
+     */
+    public static class FakeQueue {
+
+        public int getCurrents() {
+            return 1;
+        }
+
+        public int getWaiters() {
+            return 3;
+        }
+    }
+}
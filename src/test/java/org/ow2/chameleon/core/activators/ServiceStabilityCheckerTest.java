@@ -22,11 +22,15 @@ package org.ow2.chameleon.core.activators;
 import org.junit.Test;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.ServiceEvent;
 import org.osgi.framework.ServiceReference;
+import org.ow2.chameleon.core.services.AbstractStabilityChecker;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class ServiceStabilityCheckerTest {
@@ -57,4 +61,50 @@ public class ServiceStabilityCheckerTest {
         assertThat(checker.check().isStable).isFalse();
     }
 
+    @Test
+    public void testSequenceStability() throws InvalidSyntaxException {
+        BundleContext context = mock(BundleContext.class);
+        ServiceStabilityChecker checker = new ServiceStabilityChecker(context, 3);
+        checker.open();
+        verify(context).addServiceListener(checker);
+
+        checker.serviceChanged(mock(ServiceEvent.class));
+        assertThat(checker.getSequence()).isEqualTo(1);
+        assertThat(checker.check().isStable).isTrue();
+        // The services are not counted.
+        verify(context, never()).getAllServiceReferences(anyString(), anyString());
+
+        checker.close();
+        verify(context).removeServiceListener(checker);
+    }
+
+    @Test
+    public void testSequenceUnStability() throws InterruptedException {
+        BundleContext context = mock(BundleContext.class);
+        final ServiceStabilityChecker checker = new ServiceStabilityChecker(context, 3);
+        checker.open();
+        // Churn: a service arrives and another leaves continuously, the number of services is unchanged.
+        Thread churn = new Thread() {
+            @Override
+            public void run() {
+                while (!isInterrupted()) {
+                    checker.serviceChanged(mock(ServiceEvent.class));
+                    try {
+                        Thread.sleep(AbstractStabilityChecker.getDefaultGracePeriodInMillis() / 10);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        };
+        churn.start();
+        try {
+            assertThat(checker.check().isStable).isFalse();
+        } finally {
+            churn.interrupt();
+            churn.join();
+            checker.close();
+        }
+    }
+
 }
\ No newline at end of file
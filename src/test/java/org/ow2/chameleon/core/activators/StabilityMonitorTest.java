@@ -0,0 +1,140 @@
+/*
+ * #%L
+ * OW2 Chameleon - Core
+ * %%
+ * Copyright (C) 2009 - 2014 OW2 Chameleon
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.ow2.chameleon.core.activators;
+
+import org.apache.felix.ipojo.extender.queue.JobInfo;
+import org.apache.felix.ipojo.extender.queue.QueueListener;
+import org.apache.felix.ipojo.extender.queue.QueueService;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceEvent;
+import org.osgi.framework.ServiceReference;
+
+import java.util.Hashtable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class StabilityMonitorTest {
+
+    @Test
+    public void testServiceQuietPeriod() throws Exception {
+        BundleContext context = mock(BundleContext.class);
+        StabilityMonitor monitor = new StabilityMonitor(context, 50);
+        monitor.open();
+
+        ServiceReference reference = mock(ServiceReference.class);
+        when(reference.getProperty(Constants.OBJECTCLASS)).thenReturn(new String[]{"org.acme.Foo"});
+        monitor.serviceChanged(new ServiceEvent(ServiceEvent.REGISTERED, reference));
+
+        // Not enough time to reach the quiet period.
+        assertThat(monitor.awaitServiceStability(10)).isFalse();
+
+        long begin = System.currentTimeMillis();
+        assertThat(monitor.awaitServiceStability(1000)).isTrue();
+        assertThat(System.currentTimeMillis() - begin).isLessThan(500);
+
+        // Already quiet, returns immediately.
+        begin = System.currentTimeMillis();
+        assertThat(monitor.awaitServiceStability(1000)).isTrue();
+        assertThat(System.currentTimeMillis() - begin).isLessThan(20);
+        monitor.close();
+    }
+
+    @Test
+    public void testBundleEventsWakeUpTheWaiters() throws Exception {
+        final AtomicInteger state = new AtomicInteger(Bundle.STARTING);
+        final Bundle bundle = mock(Bundle.class);
+        when(bundle.getHeaders()).thenReturn(new Hashtable<String, String>());
+        when(bundle.getState()).thenAnswer(new Answer<Integer>() {
+            @Override
+            public Integer answer(InvocationOnMock invocation) {
+                return state.get();
+            }
+        });
+        BundleContext context = mock(BundleContext.class);
+        when(context.getBundles()).thenReturn(new Bundle[]{bundle});
+
+        // Long quiet period, so only the event can wake up the waiting thread early.
+        final StabilityMonitor monitor = new StabilityMonitor(context, 5000);
+        monitor.open();
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    // Ignored
+                }
+                state.set(Bundle.ACTIVE);
+                monitor.bundleChanged(new BundleEvent(BundleEvent.STARTED, bundle));
+            }
+        }.start();
+
+        long begin = System.currentTimeMillis();
+        assertThat(monitor.awaitBundleStability(10000)).isTrue();
+        assertThat(System.currentTimeMillis() - begin).isLessThan(2000);
+        monitor.close();
+    }
+
+    @Test
+    public void testWithoutQueues() {
+        BundleContext context = mock(BundleContext.class);
+        StabilityMonitor monitor = new StabilityMonitor(context, 50);
+        monitor.open();
+        assertThat(monitor.areQueuesEmpty()).isTrue();
+        assertThat(monitor.awaitEmptyQueues(10)).isTrue();
+        monitor.close();
+    }
+
+    @Test
+    public void testQueueActivityWakesUpTheWaiters() throws Exception {
+        ServiceReference reference = mock(ServiceReference.class);
+        QueueService queue = mock(QueueService.class);
+        BundleContext context = mock(BundleContext.class);
+        when(context.getAllServiceReferences(StabilityMonitor.QUEUE_SERVICE, null))
+                .thenReturn(new ServiceReference[]{reference});
+        when(context.getService(reference)).thenReturn(queue);
+
+        StabilityMonitor monitor = new StabilityMonitor(context, 50);
+        monitor.open();
+        assertThat(monitor.getQueueGauges()).hasSize(1);
+        ArgumentCaptor<QueueListener> listener = ArgumentCaptor.forClass(QueueListener.class);
+        verify(queue).addQueueListener(listener.capture());
+
+        long events = monitor.getEventCount();
+        listener.getValue().enlisted(mock(JobInfo.class));
+        assertThat(monitor.getEventCount()).isGreaterThan(events);
+
+        monitor.close();
+        verify(queue).removeQueueListener(listener.getValue());
+        verify(context).ungetService(reference);
+        assertThat(monitor.getQueueGauges()).isEmpty();
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * #%L
+ * OW2 Chameleon - Core
+ * %%
+ * Copyright (C) 2009 - 2014 OW2 Chameleon
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.ow2.chameleon.core.utils;
+
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.wiring.BundleWire;
+import org.osgi.framework.wiring.BundleWiring;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks the dependency ordering of the bundle helper.
+ */
+public class BundleHelperTest {
+
+    @Test
+    public void testGroupByDependencies() {
+        Bundle api = resolved("api");
+        Bundle impl = resolved("impl", api);
+        Bundle client = resolved("client", api, impl);
+        Bundle other = resolved("other");
+        Bundle unresolved = mock(Bundle.class);
+
+        List<List<Bundle>> waves = BundleHelper.groupByDependencies(Arrays.asList(client, unresolved, impl, other,
+                api));
+        assertThat(waves).hasSize(4);
+        assertThat(waves.get(0)).containsExactly(other, api);
+        assertThat(waves.get(1)).containsExactly(impl);
+        assertThat(waves.get(2)).containsExactly(client);
+        assertThat(waves.get(3)).containsExactly(unresolved);
+
+        assertThat(BundleHelper.sortByDependencies(Arrays.asList(client, impl, api)))
+                .containsExactly(api, impl, client);
+    }
+
+    @Test
+    public void testGroupByDependenciesWithCycle() {
+        Bundle a = mock(Bundle.class);
+        Bundle b = mock(Bundle.class);
+        wire(a, b);
+        wire(b, a);
+        List<List<Bundle>> waves = BundleHelper.groupByDependencies(Arrays.asList(a, b));
+        assertThat(waves).hasSize(2);
+        assertThat(waves.get(0)).containsExactly(b);
+        assertThat(waves.get(1)).containsExactly(a);
+    }
+
+    private static Bundle resolved(String name, Bundle... providers) {
+        Bundle bundle = mock(Bundle.class);
+        when(bundle.getSymbolicName()).thenReturn(name);
+        wire(bundle, providers);
+        return bundle;
+    }
+
+    private static void wire(Bundle bundle, Bundle... providers) {
+        BundleWiring wiring = mock(BundleWiring.class);
+        List<BundleWire> wires = new ArrayList<BundleWire>();
+        for (Bundle provider : providers) {
+            BundleWiring providerWiring = mock(BundleWiring.class);
+            when(providerWiring.getBundle()).thenReturn(provider);
+            BundleWire wire = mock(BundleWire.class);
+            when(wire.getProviderWiring()).thenReturn(providerWiring);
+            wires.add(wire);
+        }
+        when(wiring.getRequiredWires(null)).thenReturn(wires);
+        when(bundle.adapt(BundleWiring.class)).thenReturn(wiring);
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * #%L
+ * OW2 Chameleon - Core
+ * %%
+ * Copyright (C) 2009 - 2014 OW2 Chameleon
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.ow2.chameleon.core.utils;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+/**
+ * Checks the deployment snapshot.
+ */
+public class DeploymentSnapshotTest {
+
+    private static final File DIRECTORY = new File("target/test/deployment-snapshot");
+    private static final String LOCATION = "reference:file:bundle.jar";
+
+    private File jar;
+    private File cfg;
+    private BundleContext context;
+    private Bundle bundle;
+
+    @Before
+    public void setUp() throws Exception {
+        FileUtils.deleteQuietly(DIRECTORY);
+        jar = new File(DIRECTORY, "bundle.jar");
+        FileUtils.writeStringToFile(jar, "content");
+        cfg = new File(DIRECTORY, "org.acme-1.cfg");
+        FileUtils.writeStringToFile(cfg, "key=value");
+        context = mock(BundleContext.class);
+        bundle = mock(Bundle.class);
+        when(bundle.getBundleId()).thenReturn(12L);
+        when(context.installBundle(LOCATION)).thenReturn(bundle);
+    }
+
+    @Test
+    public void testInstallThenReuse() throws Exception {
+        DeploymentSnapshot snapshot = new DeploymentSnapshot(new File(DIRECTORY, DeploymentSnapshot.FILE_NAME));
+        snapshot.load();
+        List<Bundle> updated = new ArrayList<Bundle>();
+        assertThat(BundleHelper.install(context, jar, LOCATION, updated, snapshot)).isSameAs(bundle);
+        verify(context).installBundle(LOCATION);
+        assertThat(snapshot.isUnchanged(jar, 12L)).isTrue();
+        assertThat(snapshot.isUnchanged(jar, 13L)).isFalse();
+
+        // The bundle has been restored by the framework.
+        when(context.getBundle(LOCATION)).thenReturn(bundle);
+        assertThat(BundleHelper.install(context, jar, LOCATION, updated, snapshot)).isSameAs(bundle);
+        verify(context, times(1)).installBundle(LOCATION);
+        verify(bundle, never()).update();
+        assertThat(updated).isEmpty();
+
+        // Touched, but same content.
+        assertThat(jar.setLastModified(jar.lastModified() - 10000)).isTrue();
+        assertThat(BundleHelper.install(context, jar, LOCATION, updated, snapshot)).isSameAs(bundle);
+        verify(bundle, never()).update();
+
+        // Changed.
+        FileUtils.writeStringToFile(jar, "new content");
+        assertThat(BundleHelper.install(context, jar, LOCATION, updated, snapshot)).isSameAs(bundle);
+        verify(bundle).update();
+        assertThat(updated).containsExactly(bundle);
+        assertThat(snapshot.isUnchanged(jar, 12L)).isTrue();
+    }
+
+    @Test
+    public void testInstalledBundleNotRecorded() throws Exception {
+        writeJar(jar, "1.0.0");
+        Hashtable<String, String> headers = new Hashtable<String, String>();
+        headers.put("Manifest-Version", "1.0");
+        headers.put("Bundle-SymbolicName", "bundle");
+        headers.put("Bundle-Version", "1.0.0");
+        when(bundle.getHeaders("")).thenReturn(headers);
+        when(context.getBundle(LOCATION)).thenReturn(bundle);
+        List<Bundle> updated = new ArrayList<Bundle>();
+
+        // Installed after the last modification of the file.
+        when(bundle.getLastModified()).thenReturn(jar.lastModified() + 1000);
+        BundleHelper.install(context, jar, LOCATION, updated, null);
+        verify(bundle, never()).update();
+
+        // Replaced by another version keeping an older date.
+        long date = jar.lastModified();
+        writeJar(jar, "0.9.0");
+        assertThat(jar.setLastModified(date)).isTrue();
+        when(bundle.getState()).thenReturn(Bundle.ACTIVE);
+        BundleHelper.install(context, jar, LOCATION, updated, null);
+        verify(bundle).update();
+        assertThat(updated).containsExactly(bundle);
+
+        // Modified after the installation.
+        writeJar(jar, "1.0.0");
+        when(bundle.getLastModified()).thenReturn(jar.lastModified() - 1000);
+        BundleHelper.install(context, jar, LOCATION, updated, null);
+        verify(bundle, times(2)).stop(Bundle.STOP_TRANSIENT);
+        verify(bundle, times(2)).update();
+        verify(context, never()).installBundle(LOCATION);
+    }
+
+    private static void writeJar(File file, String version) throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().putValue("Bundle-SymbolicName", "bundle");
+        manifest.getMainAttributes().putValue("Bundle-Version", version);
+        JarOutputStream stream = new JarOutputStream(new FileOutputStream(file), manifest);
+        stream.close();
+    }
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        File file = new File(DIRECTORY, DeploymentSnapshot.FILE_NAME);
+        DeploymentSnapshot snapshot = new DeploymentSnapshot(file);
+        snapshot.recordBundle(jar, bundle);
+        snapshot.recordConfiguration(cfg, "org.acme.1234");
+        File deleted = new File(DIRECTORY, "deleted.cfg");
+        FileUtils.writeStringToFile(deleted, "key=value");
+        snapshot.recordConfiguration(deleted, "deleted");
+        FileUtils.forceDelete(deleted);
+        snapshot.save();
+        assertThat(file).isFile();
+
+        DeploymentSnapshot loaded = new DeploymentSnapshot(file);
+        loaded.load();
+        assertThat(loaded.size()).isEqualTo(2);
+        assertThat(loaded.isUnchanged(jar, 12L)).isTrue();
+        assertThat(loaded.getConfigurationPid(cfg)).isEqualTo("org.acme.1234");
+        assertThat(loaded.getConfigurationPid(jar)).isNull();
+
+        loaded.remove(cfg);
+        assertThat(loaded.getConfigurationPid(cfg)).isNull();
+    }
+
+    @Test
+    public void testCorruptedFile() throws Exception {
+        File file = new File(DIRECTORY, DeploymentSnapshot.FILE_NAME);
+        FileUtils.writeStringToFile(file, "not a snapshot");
+        DeploymentSnapshot snapshot = new DeploymentSnapshot(file);
+        snapshot.load();
+        assertThat(snapshot.size()).isEqualTo(0);
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * #%L
+ * OW2 Chameleon - Core
+ * %%
+ * Copyright (C) 2009 - 2014 OW2 Chameleon
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.ow2.chameleon.core.utils;
+
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks the coalescing rules of the file change set.
+ */
+public class FileChangeSetTest {
+
+    private final File a = new File("a");
+    private final File b = new File("b");
+
+    @Test
+    public void testCreateThenChange() {
+        FileChangeSet set = new FileChangeSet();
+        set.created(a);
+        set.changed(a);
+        set.changed(a);
+        assertThat(set.getCreated()).containsExactly(a);
+        assertThat(set.getChanged()).isEmpty();
+        assertThat(set.getDeleted()).isEmpty();
+    }
+
+    @Test
+    public void testCreateThenDelete() {
+        FileChangeSet set = new FileChangeSet();
+        set.created(a);
+        set.changed(a);
+        set.deleted(a);
+        assertThat(set.isEmpty()).isTrue();
+    }
+
+    @Test
+    public void testChangeThenDelete() {
+        FileChangeSet set = new FileChangeSet();
+        set.changed(a);
+        set.deleted(a);
+        assertThat(set.getDeleted()).containsExactly(a);
+        assertThat(set.getChanged()).isEmpty();
+    }
+
+    @Test
+    public void testDeleteThenCreate() {
+        FileChangeSet set = new FileChangeSet();
+        set.deleted(a);
+        set.created(a);
+        assertThat(set.getChanged()).containsExactly(a);
+        assertThat(set.getCreated()).isEmpty();
+        assertThat(set.getDeleted()).isEmpty();
+    }
+
+    @Test
+    public void testOrderAndDrain() {
+        FileChangeSet set = new FileChangeSet();
+        set.created(a);
+        set.created(b);
+        set.changed(a);
+        assertThat(set.getChanges().keySet()).containsExactly(b, a);
+
+        FileChangeSet drained = set.drain();
+        assertThat(set.isEmpty()).isTrue();
+        assertThat(drained.getCreated()).containsExactly(b, a);
+    }
+}
@@ -20,9 +20,19 @@
 package org.ow2.chameleon.core.utils;
 
 import com.google.common.collect.ImmutableMap;
+import org.apache.commons.io.FileUtils;
 import org.junit.Test;
 
 import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -77,4 +87,139 @@ public class FrameworkClassLoaderTest {
         assertThat(c).isNotNull();
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testConcurrentLoadingDefinesClassesOnce() throws Exception {
+        final FrameworkClassLoader classLoader =
+                (FrameworkClassLoader) FrameworkClassLoader.getFrameworkClassLoader(createLibs());
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Class>> results = new ArrayList<Future<Class>>();
+            for (int i = 0; i < 32; i++) {
+                final String name = i % 2 == 0 ? "org.apache.felix.framework.Felix" : "org.junit.Test";
+                results.add(executor.submit(new Callable<Class>() {
+                    @Override
+                    public Class call() throws Exception {
+                        start.await();
+                        return classLoader.loadClass(name);
+                    }
+                }));
+            }
+            start.countDown();
+            for (int i = 0; i < results.size(); i++) {
+                Class c = results.get(i).get();
+                assertThat(c).isSameAs(results.get(i % 2).get());
+            }
+            assertThat(results.get(0).get().getClassLoader()).isSameAs(classLoader);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testMissingClassesAreDelegatedToParent() throws ClassNotFoundException {
+        ClassLoader classLoader = FrameworkClassLoader.getFrameworkClassLoader(new File(""), null);
+        // The second lookup skips the 'libs' classloader.
+        assertThat(classLoader.loadClass("org.junit.Test")).isSameAs(classLoader.loadClass("org.junit.Test"));
+    }
+
+    @Test(expected = ClassNotFoundException.class)
+    public void testUnknownClass() throws ClassNotFoundException {
+        ClassLoader classLoader = FrameworkClassLoader.getFrameworkClassLoader(new File(""), null);
+        try {
+            classLoader.loadClass("org.acme.DoesNotExist");
+        } catch (ClassNotFoundException e) {
+            classLoader.loadClass("org.acme.DoesNotExist");
+        }
+    }
+
+    @Test
+    public void testFrameworkClassesAreLoadedByParentWithoutLibs() throws ClassNotFoundException {
+        ClassLoader classLoader = FrameworkClassLoader.getFrameworkClassLoader(new File(""));
+        assertThat(classLoader.loadClass("org.apache.felix.framework.Felix").getClassLoader())
+                .isSameAs(FrameworkClassLoaderTest.class.getClassLoader());
+    }
+
+    @Test
+    public void testIndexedLibsLookup() throws Exception {
+        File basedir = createLibs();
+        FrameworkClassLoader classLoader = (FrameworkClassLoader) FrameworkClassLoader.getFrameworkClassLoader(basedir);
+        assertThat(new File(basedir, "libs/" + LibsExportIndex.FILE_NAME)).isFile();
+
+        // org.jdom.Element extends org.jdom.Content, both loaded from the same jar.
+        Class c = classLoader.loadClass("org.jdom.Element");
+        assertThat(c.getClassLoader()).isSameAs(classLoader.libsClassLoader);
+        assertThat(c.getSuperclass().getClassLoader()).isSameAs(classLoader.libsClassLoader);
+        assertThat(c.getPackage()).isNotNull();
+        assertThat(c.getProtectionDomain().getCodeSource().getLocation().getPath()).endsWith("jdom-1.0.jar");
+        assertThat(classLoader.loadClass("org.aopalliance.intercept.MethodInterceptor").getClassLoader())
+                .isSameAs(classLoader.libsClassLoader);
+
+        URL url = classLoader.getResource("org/jdom/Element.class");
+        assertThat(url).isNotNull();
+        assertThat(url.toExternalForm()).startsWith("jar:").endsWith("jdom-1.0.jar!/org/jdom/Element.class");
+        assertThat(url.openStream().read()).isEqualTo(0xCA);
+        assertThat(classLoader.getResource("org/jdom/DoesNotExist.class")).isNull();
+        assertThat(classLoader.libsClassLoader.getResource("org/junit/Test.class")).isNull();
+        // Not covered by the index.
+        assertThat(classLoader.libsClassLoader.getResource("META-INF/MANIFEST.MF")).isNotNull();
+
+        try {
+            classLoader.libsClassLoader.loadClass("org.jdom.DoesNotExist");
+            org.junit.Assert.fail("ClassNotFoundException expected");
+        } catch (ClassNotFoundException e) {
+            // Expected.
+        }
+        assertThat(classLoader.loadClass("org.junit.Test").getClassLoader())
+                .isSameAs(FrameworkClassLoaderTest.class.getClassLoader());
+    }
+
+    @Test
+    public void testCloseReleasesTheLibsJars() throws Exception {
+        File basedir = createLibs();
+        FrameworkClassLoader classLoader = (FrameworkClassLoader) FrameworkClassLoader.getFrameworkClassLoader(basedir);
+        assertThat(classLoader.loadClass("org.jdom.Element").getClassLoader()).isSameAs(classLoader.libsClassLoader);
+        assertThat(classLoader.getResource("org/jdom/Element.class")).isNotNull();
+
+        classLoader.close();
+        assertThat(classLoader.libsClassLoader.getResource("org/jdom/Attribute.class")).isNull();
+        try {
+            classLoader.libsClassLoader.loadClass("org.jdom.Attribute");
+            org.junit.Assert.fail("ClassNotFoundException expected");
+        } catch (ClassNotFoundException e) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void testIndexFileCanBeDisabled() throws Exception {
+        File basedir = createLibs();
+        FrameworkClassLoader classLoader = (FrameworkClassLoader) FrameworkClassLoader.getFrameworkClassLoader(basedir,
+                ImmutableMap.of("chameleon.libs.index", "false"));
+        assertThat(new File(basedir, "libs/" + LibsExportIndex.FILE_NAME)).doesNotExist();
+        assertThat(classLoader.loadClass("org.jdom.Element").getClassLoader()).isSameAs(classLoader.libsClassLoader);
+    }
+
+    @Test
+    public void testPackagesMissingFromTheIndexAreSearchedInTheJars() throws Exception {
+        File basedir = createLibs();
+        // A stale index, not listing the packages of the jars.
+        File jdom = new File(basedir, "libs/jdom-1.0.jar");
+        File aop = new File(basedir, "libs/sub/aopalliance-1.0.jar");
+        FileUtils.writeStringToFile(new File(basedir, "libs/" + LibsExportIndex.FILE_NAME),
+                "# Chameleon libs export index v2\n"
+                        + "jdom-1.0.jar|" + jdom.length() + "|" + jdom.lastModified() + "|-1|\n"
+                        + "sub/aopalliance-1.0.jar|" + aop.length() + "|" + aop.lastModified() + "|-1|\n");
+        FrameworkClassLoader classLoader = (FrameworkClassLoader) FrameworkClassLoader.getFrameworkClassLoader(basedir);
+        assertThat(classLoader.loadClass("org.jdom.Element").getClassLoader()).isSameAs(classLoader.libsClassLoader);
+    }
+
+    private static File createLibs() throws IOException {
+        File basedir = new File("target/test-data/framework-classloader");
+        FileUtils.deleteQuietly(basedir);
+        FileUtils.copyFileToDirectory(new File(JarScannerTest.JAR_ROOT, "jdom-1.0.jar"), new File(basedir, "libs"));
+        FileUtils.copyFileToDirectory(new File(JarScannerTest.JAR_ROOT, "aopalliance-1.0.jar"),
+                new File(basedir, "libs/sub"));
+        return basedir;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * #%L
+ * OW2 Chameleon - Core
+ * %%
+ * Copyright (C) 2009 - 2014 OW2 Chameleon
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.ow2.chameleon.core.utils;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.framework.Constants;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.ops4j.pax.tinybundles.core.TinyBundles.bundle;
+
+/**
+ * Checks the jar metadata cache.
+ */
+public class JarMetadataCacheTest {
+
+    private final File directory = new File("target/test-data/metadata-cache");
+    private final File jar = new File(directory, "my-bundle-1.0.0.jar");
+    private final File cacheFile = new File(directory, JarMetadataCache.FILE_NAME);
+
+    @Before
+    public void setUp() throws IOException {
+        FileUtils.deleteQuietly(directory);
+        FileUtils.copyInputStreamToFile(bundle()
+                .set(Constants.BUNDLE_MANIFESTVERSION, "2")
+                .set(Constants.BUNDLE_SYMBOLICNAME, "my-bundle")
+                .set(Constants.BUNDLE_VERSION, "1.0.0")
+                .set(Constants.FRAGMENT_HOST, "host")
+                .add("org/acme/Foo.class", new ByteArrayInputStream(new byte[]{1, 2, 3}))
+                .build(), jar);
+    }
+
+    @Test
+    public void testMetadataExtraction() throws IOException {
+        JarMetadataCache cache = new JarMetadataCache(cacheFile, false);
+        JarMetadataCache.JarMetadata metadata = cache.get(jar);
+        assertThat(metadata.isBundle()).isTrue();
+        assertThat(metadata.isFragment()).isTrue();
+        assertThat(metadata.getSymbolicName()).isEqualTo("my-bundle");
+        assertThat(metadata.getVersion()).isEqualTo("1.0.0");
+        assertThat(metadata.getPackages()).containsExactly("org.acme");
+    }
+
+    @Test
+    public void testUnchangedJarsAreNotRead() throws IOException {
+        JarMetadataCache cache = new JarMetadataCache(cacheFile, false);
+        cache.get(jar);
+        cache.save();
+        assertThat(cacheFile).isFile();
+
+        // Corrupt the jar, keeping its length and date.
+        long date = jar.lastModified();
+        scramble(jar);
+        assertThat(jar.setLastModified(date)).isTrue();
+
+        JarMetadataCache reloaded = new JarMetadataCache(cacheFile, false);
+        reloaded.load();
+        assertThat(reloaded.size()).isEqualTo(1);
+        assertThat(reloaded.get(jar).getSymbolicName()).isEqualTo("my-bundle");
+        assertThat(BundleHelper.isBundle(jar, reloaded)).isTrue();
+        assertThat(JarScanner.scan(jar, reloaded)).containsExactly(new Pckg("org.acme", "1.0.0"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testModifiedJarsAreRead() throws IOException {
+        JarMetadataCache cache = new JarMetadataCache(cacheFile, false);
+        cache.get(jar);
+        scramble(jar);
+        assertThat(jar.setLastModified(jar.lastModified() + 10000)).isTrue();
+        cache.get(jar);
+    }
+
+    @Test
+    public void testChecksumValidation() throws IOException {
+        JarMetadataCache cache = new JarMetadataCache(cacheFile, true);
+        cache.get(jar);
+        cache.save();
+
+        // Touched but not modified.
+        assertThat(jar.setLastModified(jar.lastModified() + 10000)).isTrue();
+        JarMetadataCache reloaded = new JarMetadataCache(cacheFile, true);
+        reloaded.load();
+        assertThat(reloaded.get(jar).getSymbolicName()).isEqualTo("my-bundle");
+    }
+
+    private void scramble(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek(0);
+            raf.write(new byte[]{0, 0, 0, 0});
+            raf.seek(raf.length() - 22);
+            raf.write(new byte[]{0, 0, 0, 0});
+        } finally {
+            raf.close();
+        }
+    }
+}
@@ -19,11 +19,22 @@
  */
 package org.ow2.chameleon.core.utils;
 
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.junit.Test;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Map;
 import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -60,9 +71,11 @@ public class JarScannerTest {
         File file = new File(JAR_ROOT, "mail-1.4.7.jar");
         Set<Pckg> packages = JarScanner.scan(file);
 
+        // javax.mail is exported with the version declared in the manifest, com.sun.mail.auth is not exported.
         assertThat(packages).contains(
                 new Pckg("com.sun.mail.auth", "1.4.7"),
-                new Pckg("javax.mail", "1.4.7"));
+                new Pckg("com.sun.mail.imap", "1.4.7"),
+                new Pckg("javax.mail", "1.4.0"));
     }
 
     /**
@@ -92,6 +105,86 @@ public class JarScannerTest {
         }
     }
 
+    @Test
+    public void testCentralDirectoryMatchesJarFile() throws Exception {
+        File[] files = JAR_ROOT.listFiles();
+        assertThat(files).isNotEmpty();
+        for (File file : files) {
+            CentralDirectory directory = CentralDirectory.read(file);
+            JarFile jar = new JarFile(file);
+            try {
+                assertThat(directory.getPackages()).containsExactlyElementsOf(JarScanner.packages(jar));
+                Manifest manifest = jar.getManifest();
+                if (manifest == null) {
+                    assertThat(directory.getManifest()).isNull();
+                } else {
+                    assertThat(directory.getManifest().getMainAttributes()).isEqualTo(manifest.getMainAttributes());
+                }
+            } finally {
+                IOUtils.closeQuietly(jar);
+            }
+            for (String name : directory.getPackages()) {
+                assertThat(name).isSameAs(name.intern());
+            }
+        }
+    }
 
+    @Test
+    public void testStoredManifest() throws Exception {
+        File file = new File("target/test-data/jar-scanner/stored-1.0.jar");
+        FileUtils.deleteQuietly(file.getParentFile());
+        FileUtils.forceMkdir(file.getParentFile());
+
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().putValue("Export-Package", "org.acme.api;version=2.1");
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(file));
+        try {
+            out.setMethod(ZipEntry.STORED);
+            byte[] content = ("Manifest-Version: 1.0\r\nExport-Package: org.acme.api;version=2.1\r\n\r\n")
+                    .getBytes("UTF-8");
+            putStored(out, JarFile.MANIFEST_NAME, content);
+            putStored(out, "org/acme/api/Service.class", new byte[]{1, 2, 3});
+            putStored(out, "org/acme/impl/ServiceImpl.class", new byte[]{4, 5});
+        } finally {
+            IOUtils.closeQuietly(out);
+        }
+
+        CentralDirectory directory = CentralDirectory.read(file);
+        assertThat(directory.getManifest().getMainAttributes()).isEqualTo(manifest.getMainAttributes());
+        assertThat(JarScanner.scan(file)).containsOnly(
+                new Pckg("org.acme.api", "2.1.0"),
+                new Pckg("org.acme.impl", "1.0.0"));
+    }
 
-}
\ No newline at end of file
+    @Test(expected = IOException.class)
+    public void testScanInvalidJar() throws Exception {
+        File file = new File("target/test-data/jar-scanner/invalid-1.0.jar");
+        FileUtils.write(file, "this is not a jar file");
+        JarScanner.scan(file);
+    }
+
+    @Test
+    public void testExportPackageParsing() {
+        Map<String, String> exports = JarScanner.exports("org.acme.a;org.acme.b;uses:=\"org.acme.c,org.acme.d\";"
+                + "version=\"1.2\", org.acme.c, org.acme.d;version=\"[1,2)\",org.acme.e;version=3.0.0.beta;x=\"a;b\"");
+        assertThat(exports).hasSize(4)
+                .containsEntry("org.acme.a", "1.2.0")
+                .containsEntry("org.acme.b", "1.2.0")
+                .containsEntry("org.acme.c", "0.0.0")
+                .containsEntry("org.acme.e", "3.0.0.beta");
+        assertThat(JarScanner.exports((String) null)).isEmpty();
+    }
+
+    private static void putStored(JarOutputStream out, String name, byte[] content) throws IOException {
+        JarEntry entry = new JarEntry(name);
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        entry.setSize(content.length);
+        entry.setCompressedSize(content.length);
+        entry.setCrc(crc.getValue());
+        out.putNextEntry(entry);
+        out.write(content);
+        out.closeEntry();
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * #%L
+ * OW2 Chameleon - Core
+ * %%
+ * Copyright (C) 2009 - 2014 OW2 Chameleon
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.ow2.chameleon.core.utils;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Dictionary;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class JsonConfigurationParserTest {
+
+    private final File file = new File("target/test-data/json-parser/config.json");
+
+    @Test
+    public void testTypedValues() throws IOException {
+        FileUtils.writeStringToFile(file, "{\n"
+                + "  \"name\": \"my \\\"app\\\" \\u00e9\",\n"
+                + "  \"count\": 12,\n"
+                + "  \"ratio\": 0.5,\n"
+                + "  \"enabled\": true,\n"
+                + "  \"ignored\": null,\n"
+                + "  \"port:Integer\": 8080,\n"
+                + "  \"timeout:Long\": \"30\",\n"
+                + "  \"tags\": [\"a\", \"b\"],\n"
+                + "  \"weights\": [1, 2.5],\n"
+                + "  \"ports:Integer[]\": [80, 443],\n"
+                + "  \"empty\": []\n"
+                + "}", "UTF-8");
+        Dictionary<String, Object> properties = new JsonConfigurationParser().parse(file);
+        assertThat(properties.size()).isEqualTo(10);
+        assertThat(properties.get("name")).isEqualTo("my \"app\" \u00e9");
+        assertThat(properties.get("count")).isEqualTo(12L);
+        assertThat(properties.get("ratio")).isEqualTo(0.5);
+        assertThat(properties.get("enabled")).isEqualTo(true);
+        assertThat(properties.get("ignored")).isNull();
+        assertThat(properties.get("port")).isEqualTo(8080);
+        assertThat(properties.get("timeout")).isEqualTo(30L);
+        assertThat((String[]) properties.get("tags")).containsExactly("a", "b");
+        assertThat((Double[]) properties.get("weights")).containsExactly(1.0, 2.5);
+        assertThat((Integer[]) properties.get("ports")).containsExactly(80, 443);
+        assertThat((String[]) properties.get("empty")).isEmpty();
+    }
+
+    @Test
+    public void testMalformedFiles() throws IOException {
+        assertMalformed("{\"a\": 1");
+        assertMalformed("{\"a\": {\"b\": 1}}");
+        assertMalformed("{\"a\": [1, \"b\"]}");
+        assertMalformed("{\"a:Integer\": \"x\"}");
+        assertMalformed("{\"a\": 1} 2");
+        assertMalformed("[1]");
+    }
+
+    private void assertMalformed(String content) throws IOException {
+        FileUtils.writeStringToFile(file, content, "UTF-8");
+        try {
+            new JsonConfigurationParser().parse(file);
+            fail("IOException expected for " + content);
+        } catch (IOException e) {
+            assertThat(e.getMessage()).contains(file.getAbsolutePath());
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * #%L
+ * OW2 Chameleon - Core
+ * %%
+ * Copyright (C) 2009 - 2014 OW2 Chameleon
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.ow2.chameleon.core.utils;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks the export index of the libs directory.
+ */
+public class LibsExportIndexTest {
+
+    private static final File LIBS = new File("target/test/libs-index");
+
+    @Before
+    public void setUp() throws Exception {
+        FileUtils.deleteQuietly(LIBS);
+        FileUtils.copyFileToDirectory(new File(JarScannerTest.JAR_ROOT, "aopalliance-1.0.jar"), LIBS);
+        FileUtils.copyFileToDirectory(new File(JarScannerTest.JAR_ROOT, "jdom-1.0.jar"), new File(LIBS, "sub"));
+    }
+
+    @Test
+    public void testExportsAreIndexed() throws Exception {
+        LibsExportIndex index = new LibsExportIndex(LIBS);
+        index.load();
+        String exports = index.getExports();
+        assertThat(Arrays.asList(exports.split(","))).contains("org.aopalliance.aop;version=1.0.0",
+                "org.aopalliance.intercept;version=1.0.0", "org.jdom;version=1.0.0").hasSize(9);
+        index.save();
+        assertThat(index.getFile()).isFile();
+
+        // The second computation reads the index, even if the jar is not readable anymore.
+        File aop = new File(LIBS, "aopalliance-1.0.jar");
+        long date = aop.lastModified();
+        byte[] content = FileUtils.readFileToByteArray(aop);
+        Arrays.fill(content, (byte) 0);
+        FileUtils.writeByteArrayToFile(aop, content);
+        assertThat(aop.setLastModified(date)).isTrue();
+        LibsExportIndex reloaded = new LibsExportIndex(LIBS);
+        reloaded.load();
+        assertThat(reloaded.size()).isEqualTo(2);
+        assertThat(reloaded.getExports()).isEqualTo(exports);
+    }
+
+    @Test
+    public void testModifiedAndRemovedJars() throws Exception {
+        LibsExportIndex index = new LibsExportIndex(LIBS);
+        index.getExports();
+        index.save();
+
+        FileUtils.forceDelete(new File(LIBS, "sub"));
+        FileUtils.copyFile(new File(JarScannerTest.JAR_ROOT, "mail-1.4.7.jar"), new File(LIBS, "aopalliance-1.0.jar"));
+        LibsExportIndex reloaded = new LibsExportIndex(LIBS);
+        reloaded.load();
+        String exports = reloaded.getExports();
+        assertThat(reloaded.size()).isEqualTo(1);
+        assertThat(exports).contains("com.sun.mail.auth;version=1.0.0").doesNotContain("org.jdom");
+    }
+
+    @Test
+    public void testPortableIndex() throws Exception {
+        File file = new File("target/test/libs-export.index");
+        LibsExportIndex.main(new String[]{LIBS.getAbsolutePath(), file.getAbsolutePath()});
+        assertThat(file).isFile();
+
+        // The dates are not checked.
+        for (File jar : FileUtils.listFiles(LIBS, new String[]{"jar"}, true)) {
+            assertThat(jar.setLastModified(jar.lastModified() - 60000)).isTrue();
+        }
+        LibsExportIndex index = new LibsExportIndex(LIBS, file);
+        index.load();
+        assertThat(index.getExports()).contains("org.jdom;version=1.0.0");
+        index.save();
+        assertThat(index.size()).isEqualTo(2);
+
+        // The entries have been confirmed and stamped, so the index is not rewritten anymore.
+        long written = file.lastModified() - 60000;
+        assertThat(file.setLastModified(written)).isTrue();
+        index = new LibsExportIndex(LIBS, file);
+        index.load();
+        assertThat(index.getExports()).contains("org.jdom;version=1.0.0");
+        index.save();
+        assertThat(file.lastModified()).isEqualTo(written);
+    }
+
+    @Test
+    public void testPortableEntryOfAJarReplacedByAJarOfTheSameLength() throws Exception {
+        File libs = new File("target/test/libs-replaced");
+        FileUtils.deleteQuietly(libs);
+        File jar = new File(libs, "lib.jar");
+        createJar(jar, "aaa/Foo.class");
+        long length = jar.length();
+        LibsExportIndex.main(new String[]{libs.getAbsolutePath()});
+
+        createJar(jar, "bbb/Foo.class");
+        assertThat(jar.length()).isEqualTo(length);
+        LibsExportIndex index = new LibsExportIndex(libs);
+        index.load();
+        assertThat(index.getExports()).isEqualTo("bbb;version=0.0.0");
+        assertThat(index.getPackages(jar)).containsExactly("bbb");
+    }
+
+    private static void createJar(File file, String entry) throws IOException {
+        file.getParentFile().mkdirs();
+        JarOutputStream stream = new JarOutputStream(new FileOutputStream(file));
+        try {
+            stream.putNextEntry(new JarEntry(entry));
+            stream.write(new byte[]{(byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE});
+            stream.closeEntry();
+        } finally {
+            stream.close();
+        }
+    }
+
+    @Test
+    public void testCorruptedIndex() throws Exception {
+        FileUtils.writeStringToFile(new File(LIBS, LibsExportIndex.FILE_NAME), "garbage");
+        LibsExportIndex index = new LibsExportIndex(LIBS);
+        index.load();
+        assertThat(index.size()).isEqualTo(0);
+        assertThat(index.getExports()).contains("org.jdom;version=1.0.0");
+    }
+}
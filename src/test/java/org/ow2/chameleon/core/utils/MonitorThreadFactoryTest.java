@@ -0,0 +1,55 @@
+/*
+ * #%L
+ * OW2 Chameleon - Core
+ * %%
+ * Copyright (C) 2009 - 2014 OW2 Chameleon
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.ow2.chameleon.core.utils;
+
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks the names and the kind of the threads created by the {@link MonitorThreadFactory}.
+ */
+public class MonitorThreadFactoryTest {
+
+    private static final Runnable NOTHING = new Runnable() {
+        @Override
+        public void run() {
+            // Nothing.
+        }
+    };
+
+    @Test
+    public void testDirectoryMonitorThread() {
+        Thread thread = new MonitorThreadFactory(new File("application")).newThread(NOTHING);
+        assertThat(thread.getName()).isEqualTo("monitor-application");
+    }
+
+    @Test
+    public void testPoolThreadsAreNumberedDaemonThreads() {
+        MonitorThreadFactory factory = new MonitorThreadFactory("scan");
+        Thread first = factory.newThread(NOTHING);
+        Thread second = factory.newThread(NOTHING);
+        assertThat(first.getName()).isEqualTo("monitor-scan-1");
+        assertThat(second.getName()).isEqualTo("monitor-scan-2");
+        assertThat(first.isDaemon()).isTrue();
+    }
+}
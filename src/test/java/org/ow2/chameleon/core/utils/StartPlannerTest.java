@@ -0,0 +1,131 @@
+/*
+ * #%L
+ * OW2 Chameleon - Core
+ * %%
+ * Copyright (C) 2009 - 2014 OW2 Chameleon
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.ow2.chameleon.core.utils;
+
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.wiring.BundleWire;
+import org.osgi.framework.wiring.BundleWiring;
+import org.osgi.framework.wiring.FrameworkWiring;
+
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+/**
+ * Checks the start planner.
+ */
+public class StartPlannerTest {
+
+    @Test
+    public void testParseStartLevels() {
+        assertThat(StartPlanner.parseStartLevels(null)).isEmpty();
+        assertThat(StartPlanner.parseStartLevels(" ")).isEmpty();
+        Map<String, Integer> levels = StartPlanner.parseStartLevels("a=0, b = 3,");
+        assertThat(levels).hasSize(2).containsEntry("a", 0).containsEntry("b", 3);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidStartLevel() {
+        StartPlanner.parseStartLevels("a=high");
+    }
+
+    @Test
+    public void testGetStartLevel() {
+        StartPlanner planner = new StartPlanner(Collections.singletonMap("configured", 5), 1);
+        assertThat(planner.getStartLevel(bundle("configured", "2"))).isEqualTo(5);
+        assertThat(planner.getStartLevel(bundle("header", "2"))).isEqualTo(2);
+        assertThat(planner.getStartLevel(bundle("default", null))).isEqualTo(StartPlanner.DEFAULT_START_LEVEL);
+        assertThat(planner.getStartLevel(bundle("invalid", "x"))).isEqualTo(StartPlanner.DEFAULT_START_LEVEL);
+    }
+
+    @Test
+    public void testPlanByLevelThenDependencies() {
+        Bundle api = bundle("api", null);
+        Bundle impl = bundle("impl", null);
+        Bundle early = bundle("early", "0");
+        wire(api);
+        wire(impl, api);
+        wire(early);
+
+        List<List<Bundle>> waves = new StartPlanner().plan(Arrays.asList(impl, api, early));
+        assertThat(waves).hasSize(3);
+        assertThat(waves.get(0)).containsExactly(early);
+        assertThat(waves.get(1)).containsExactly(api);
+        assertThat(waves.get(2)).containsExactly(impl);
+    }
+
+    @Test
+    public void testStartSkipsUnresolvedBundles() throws Exception {
+        Bundle api = bundle("api", null);
+        Bundle impl = bundle("impl", null);
+        Bundle unresolved = bundle("unresolved", null);
+        Bundle required = bundle("required", null);
+        Bundle active = bundle("active", null);
+        wire(api);
+        wire(impl, api);
+        when(active.getState()).thenReturn(Bundle.ACTIVE);
+
+        BundleContext context = mock(BundleContext.class);
+        Bundle system = mock(Bundle.class);
+        FrameworkWiring wiring = mock(FrameworkWiring.class);
+        when(context.getBundle(0L)).thenReturn(system);
+        when(system.adapt(FrameworkWiring.class)).thenReturn(wiring);
+
+        new StartPlanner(Collections.<String, Integer>emptyMap(), 4).start(context,
+                Arrays.asList(impl, unresolved, api, required, active), Collections.singleton(required));
+
+        verify(wiring).resolveBundles(Arrays.asList(impl, unresolved, api, required));
+        verify(api).start();
+        verify(impl).start();
+        verify(required).start();
+        verify(unresolved, never()).start();
+        verify(active, never()).start();
+    }
+
+    private static Bundle bundle(String name, String level) {
+        Bundle bundle = mock(Bundle.class);
+        when(bundle.getSymbolicName()).thenReturn(name);
+        when(bundle.getState()).thenReturn(Bundle.INSTALLED);
+        Dictionary<String, String> headers = new Hashtable<String, String>();
+        if (level != null) {
+            headers.put(StartPlanner.START_LEVEL_HEADER, level);
+        }
+        when(bundle.getHeaders()).thenReturn(headers);
+        when(bundle.getHeaders("")).thenReturn(headers);
+        return bundle;
+    }
+
+    private static void wire(Bundle bundle, Bundle... providers) {
+        BundleWiring wiring = mock(BundleWiring.class);
+        List<BundleWire> wires = new ArrayList<BundleWire>();
+        for (Bundle provider : providers) {
+            BundleWiring providerWiring = mock(BundleWiring.class);
+            when(providerWiring.getBundle()).thenReturn(provider);
+            BundleWire wire = mock(BundleWire.class);
+            when(wire.getProviderWiring()).thenReturn(providerWiring);
+            wires.add(wire);
+        }
+        when(wiring.getRequiredWires(null)).thenReturn(wires);
+        when(bundle.adapt(BundleWiring.class)).thenReturn(wiring);
+    }
+}
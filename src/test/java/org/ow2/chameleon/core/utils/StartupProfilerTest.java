@@ -0,0 +1,77 @@
+/*
+ * #%L
+ * OW2 Chameleon - Core
+ * %%
+ * Copyright (C) 2009 - 2014 OW2 Chameleon
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.ow2.chameleon.core.utils;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks the startup profiler.
+ */
+public class StartupProfilerTest {
+
+    @Test
+    public void testProfilerDisabled() {
+        StartupProfiler.Span span = StartupProfiler.begin(null, "nothing", StartupProfiler.PHASE);
+        span.end();
+        assertThat(span.getName()).isNull();
+    }
+
+    @Test
+    public void testSpans() throws Exception {
+        StartupProfiler profiler = new StartupProfiler();
+        StartupProfiler.Span phase = StartupProfiler.begin(profiler, "configuration", StartupProfiler.PHASE);
+        StartupProfiler.Span install = StartupProfiler.begin(profiler, "my \"bundle\".jar", StartupProfiler.INSTALL);
+        Thread.sleep(5);
+        install.end();
+        phase.end();
+        // Ending twice has no effect.
+        phase.end();
+
+        assertThat(profiler.getSpans()).hasSize(2);
+        assertThat(profiler.getSpans().get(0).getName()).isEqualTo("my \"bundle\".jar");
+        assertThat(profiler.getSpans().get(1).getDuration())
+                .isGreaterThanOrEqualTo(profiler.getSpans().get(0).getDuration());
+
+        StringWriter writer = new StringWriter();
+        profiler.writeTrace(writer);
+        String trace = writer.toString();
+        assertThat(trace).startsWith("{\"traceEvents\":[")
+                .contains("\"name\":\"configuration\",\"cat\":\"phase\",\"ph\":\"X\"")
+                .contains("\"name\":\"my \\\"bundle\\\".jar\"")
+                .contains("\"name\":\"thread_name\",\"ph\":\"M\"");
+
+        String summary = profiler.getSummary();
+        assertThat(summary).contains("phase").contains("bundle install").contains("configuration");
+    }
+
+    @Test
+    public void testComplete() {
+        StartupProfiler profiler = new StartupProfiler();
+        StartupProfiler.begin(profiler, "phase", StartupProfiler.PHASE).end();
+        profiler.complete();
+        // Spans begun after the completion are ignored.
+        StartupProfiler.begin(profiler, "late", StartupProfiler.PHASE).end();
+        assertThat(profiler.getSpans()).hasSize(1);
+    }
+}